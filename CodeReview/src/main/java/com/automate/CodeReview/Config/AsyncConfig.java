@@ -4,6 +4,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 public class AsyncConfig {
@@ -17,4 +18,86 @@ public class AsyncConfig {
         ex.initialize();
         return ex;
     }
+
+    /** worker pool ของ scan job: ขนาดคงที่ งานถูกส่งเข้ามาผ่าน ScanGovernor (คิวจริง/ลำดับ/เพดานอยู่ที่นั่น) */
+    @Bean(name = "scanExecutor")
+    public ThreadPoolTaskExecutor scanExecutor(ScanProperties scanProperties) {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(scanProperties.getWorkerPoolSize());
+        ex.setMaxPoolSize(scanProperties.getWorkerPoolSize());
+        ex.setQueueCapacity(scanProperties.getQueueCapacity());
+        ex.setThreadNamePrefix("scan-worker-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+
+    /** scanner ของ module รองใน monorepo: ต่อ scan ใช้ได้ไม่เกิน scan.modules.parallelism (เต็ม → รันบน scan worker เอง) */
+    @Bean(name = "scanModuleExecutor")
+    public ThreadPoolTaskExecutor scanModuleExecutor(ScanProperties scanProperties) {
+        int threads = scanProperties.getWorkerPoolSize() * scanProperties.getModules().getParallelism();
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(threads);
+        ex.setMaxPoolSize(threads);
+        ex.setQueueCapacity(0);
+        ex.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        ex.setThreadNamePrefix("scan-module-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+
+    /** transport ของ git (clone/fetch/ls-remote): จำกัดจำนวน transfer พร้อมกัน */
+    @Bean(name = "gitTransportExecutor")
+    public ThreadPoolTaskExecutor gitTransportExecutor(ScanProperties scanProperties) {
+        ScanProperties.Git git = scanProperties.getGit();
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(git.getTransportThreads());
+        ex.setMaxPoolSize(git.getTransportThreads());
+        ex.setQueueCapacity(git.getTransportQueueCapacity());
+        ex.setThreadNamePrefix("git-transport-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+
+    /** ส่ง log สดของ scan ให้ SSE client (client ช้าถือ thread ได้ครั้งละไม่เกิน 1 งาน) */
+    @Bean(name = "scanLogStreamExecutor")
+    public ThreadPoolTaskExecutor scanLogStreamExecutor(ScanProperties scanProperties) {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(scanProperties.getLogs().getStreamSendThreads());
+        ex.setMaxPoolSize(scanProperties.getLogs().getStreamSendThreads());
+        ex.setQueueCapacity(1000);
+        ex.setThreadNamePrefix("scan-log-sse-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+
+    /** WorkspaceManager: ลบ/วัดขนาด working copy ทีละงาน (disk I/O ไม่แย่งกันเอง ไม่อยู่บน request/scan thread) */
+    @Bean(name = "workspaceExecutor")
+    public ThreadPoolTaskExecutor workspaceExecutor(ScanProperties scanProperties) {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(1);
+        ex.setMaxPoolSize(1);
+        ex.setQueueCapacity(scanProperties.getWorkspace().getQueueCapacity());
+        ex.setThreadNamePrefix("workspace-io-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+
+    /** ScanReconciler: รอบละ 1 งาน ไม่ถือ thread ของ @Scheduled ตอนไล่ backlog ยาว (รอบซ้อนถูกทิ้ง) */
+    @Bean(name = "scanReconcileExecutor")
+    public ThreadPoolTaskExecutor scanReconcileExecutor() {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(1);
+        ex.setMaxPoolSize(1);
+        ex.setQueueCapacity(0);
+        ex.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        ex.setThreadNamePrefix("scan-reconcile-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
 }
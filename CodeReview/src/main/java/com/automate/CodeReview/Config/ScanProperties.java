@@ -0,0 +1,323 @@
+package com.automate.CodeReview.Config;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Validated
+@Component
+@ConfigurationProperties("scan")  // ผูกกับคีย์ prefix "scan"
+public class ScanProperties {
+
+    /** จำนวน worker ที่รัน scan พร้อมกัน (= เพดาน global ของ ScanGovernor) */
+    @Min(1) @Max(64)
+    private int workerPoolSize = 2;
+
+    /** จำนวน scan ที่รอคิวได้สูงสุดรวมทุกคน (เกินนี้ตอบ 429) */
+    @PositiveOrZero
+    private int queueCapacity = 20;
+
+    /** -T ของ Maven ตอน analysis profile = COMPILE (เช่น 1C = 1 thread ต่อ core, 4 = 4 threads) */
+    @NotBlank
+    private String mavenThreads = "1C";
+
+    /** โฟลเดอร์ working copy ของแต่ละโปรเจกต์ (clone + สคริปต์ scan) */
+    @NotBlank
+    private String workspaceDir = "C:/gitpools";
+
+    /** ปลายทางของ clone แบบครั้งเดียวผ่าน /clone */
+    @NotBlank
+    private String clonedProjectsDir = "C:/cloned-projects";
+
+    /** โควตาพื้นที่ของ working copy ใต้ workspaceDir + การลบเบื้องหลัง (WorkspaceManager) */
+    @Valid
+    private Workspace workspace = new Workspace();
+
+    /** สคริปต์ build + sonar ตาม OS และการฆ่า process ตอน timeout */
+    @Valid
+    private Runner runner = new Runner();
+
+    /** backstop polling หา analysisId กรณี webhook ไม่มา */
+    @Valid
+    private Completion completion = new Completion();
+
+    /** bare mirror ที่ใช้ร่วมกันระหว่างโปรเจกต์/scan (key = URL ที่ normalize แล้ว) */
+    @Valid
+    private Mirror mirror = new Mirror();
+
+    /** ไฟล์ log ของ scan + buffer ของ appender */
+    @Valid
+    private Logs logs = new Logs();
+
+    /** git engine (JGit) */
+    @Valid
+    private Git git = new Git();
+
+    /** cache ของ build (maven repo, npm cache, sonar cache, snapshot node_modules) ใช้ร่วมกันทุก scan */
+    @Valid
+    private Cache cache = new Cache();
+
+    /** admission control: จำกัดต่อ user/โปรเจกต์ + ดู CPU/หน่วยความจำก่อนปล่อย scan */
+    @Valid
+    private Governor governor = new Governor();
+
+    /** differential scan: วิเคราะห์เฉพาะไฟล์ที่เปลี่ยนจาก scan สำเร็จล่าสุด แล้วรวม issue กับของเดิม */
+    @Valid
+    private Diff diff = new Diff();
+
+    /** monorepo: หา module ที่ build ได้ทั้งหมด แล้ว analyse แยกกันพร้อมกันได้ไม่เกิน parallelism ต่อ scan */
+    @Valid
+    private Modules modules = new Modules();
+
+    /** ตามปิด scan ที่ค้าง RUNNING/QUEUED/PENDING (แอปล่มกลางทาง, webhook หาย) จากผลจริงใน SonarQube CE */
+    @Valid
+    private Reconcile reconcile = new Reconcile();
+
+    @Data
+    public static class Completion {
+        @Positive
+        private long pollInitialDelayMs = 15000;
+
+        @Positive
+        private long pollMaxDelayMs = 120000;
+
+        @PositiveOrZero
+        private int pollMaxAttempts = 8;
+    }
+
+    @Data
+    public static class Mirror {
+        private boolean enabled = true;
+
+        @NotBlank
+        private String directory = "C:/gitpools/.mirrors";
+
+        /** refresh เบื้องหลัง (ms) */
+        @Positive
+        private long refreshIntervalMs = 600000;
+
+        /** git gc + ลบ mirror ที่ไม่ได้ใช้ */
+        @NotBlank
+        private String gcCron = "0 30 3 * * *";
+
+        @Positive
+        private int maxIdleDays = 30;
+    }
+
+    @Data
+    public static class Git {
+        /** จำนวน clone/fetch/ls-remote ที่วิ่งพร้อมกันได้ */
+        @Min(1) @Max(32)
+        private int transportThreads = 4;
+
+        @PositiveOrZero
+        private int transportQueueCapacity = 50;
+
+        /** เวลารวมสูงสุดต่อคำสั่ง (ms) */
+        @Positive
+        private long operationTimeoutMs = 900000;
+
+        /** read timeout ของ network (วินาที) */
+        @Positive
+        private int ioTimeoutSeconds = 120;
+
+        /** โปรเจกต์ที่เปิด partialClone: blob ที่ใหญ่กว่านี้ไม่โหลดและไม่ checkout (KB) */
+        @Positive
+        private long partialBlobLimitKb = 1024;
+
+        /** โปรเจกต์ที่เปิด sparseCheckout: glob ที่ไม่ checkout เพิ่มจาก sonar.exclusions มาตรฐาน */
+        private List<String> sparseExclusions = new ArrayList<>();
+    }
+
+    @Data
+    public static class Cache {
+        private boolean enabled = true;
+
+        @NotBlank
+        private String directory = "C:/scan-cache";
+
+        /** เพดานพื้นที่รวมของ cache ทั้งหมด (MB) เกินแล้วลบ entry ที่ไม่ได้ใช้นานสุดก่อน */
+        @Positive
+        private long maxSizeMb = 20480;
+
+        /** รอบตรวจขนาด + evict */
+        @NotBlank
+        private String evictCron = "0 0 * * * *";
+    }
+
+    @Data
+    public static class Governor {
+        /** scan ที่รันพร้อมกันได้ต่อ user (คนที่กด scan) */
+        @Min(1)
+        private int maxPerUser = 1;
+
+        /** scan ที่รันพร้อมกันได้ต่อโปรเจกต์ */
+        @Min(1)
+        private int maxPerProject = 1;
+
+        /** scan ที่ค้างคิวได้ต่อ user (เกินนี้ตอบ 429) */
+        @Min(1)
+        private int maxQueuedPerUser = 10;
+
+        /** ไม่ปล่อย scan เพิ่มถ้า CPU ทั้งเครื่องเกินนี้ (0-1) */
+        @DecimalMin("0.1") @DecimalMax("1.0")
+        private double maxCpuLoad = 0.85;
+
+        /** ไม่ปล่อย scan เพิ่มถ้าหน่วยความจำว่างของเครื่องต่ำกว่านี้ (MB) */
+        @PositiveOrZero
+        private long minFreeMemoryMb = 2048;
+
+        /** หลังปล่อย scan ให้รอ CPU/หน่วยความจำสะท้อนโหลดใหม่ก่อนปล่อยตัวถัดไป (ms) */
+        @PositiveOrZero
+        private long admissionSettleMs = 10000;
+
+        /** รอบตรวจคิวซ้ำ (กรณีติดเพราะ CPU/หน่วยความจำ) */
+        @Positive
+        private long recheckIntervalMs = 5000;
+    }
+
+    @Data
+    public static class Diff {
+        /** false = ขอ diff มาก็ scan เต็มเสมอ */
+        private boolean enabled = true;
+
+        /** ไฟล์เปลี่ยนเกินนี้ scan เต็มแทน (diff ใหญ่แล้วไม่คุ้ม + inclusions ยาวเกิน) */
+        @Positive
+        private int maxFiles = 500;
+
+        /** ความยาวรวมของ sonar.inclusions ที่ส่งผ่าน env (_OPTS) ได้ (Windows จำกัด env ไว้ 32767 ตัวอักษร) */
+        @Min(1024) @Max(30000)
+        private int maxInclusionChars = 16000;
+    }
+
+    @Data
+    public static class Reconcile {
+        private boolean enabled = true;
+
+        /** รอบตรวจ (ms) นอกจากตอน start แอป */
+        @Positive
+        private long intervalMs = 600000;
+
+        /** scan ที่เริ่มหลังแอป start ถือว่าค้างเมื่อนานเกินนี้ (ควรเกิน scan.runner.timeout-minutes + เวลา CE) */
+        @Positive
+        private int staleAfterMinutes = 60;
+
+        /** จำนวน scan ต่อ query */
+        @Min(1) @Max(500)
+        private int batchSize = 50;
+
+        /** เพดานต่อรอบ ที่เหลือไปรอบถัดไป */
+        @Min(1)
+        private int maxPerRun = 200;
+
+        /** ระยะห่างขั้นต่ำระหว่างการเรียก SonarQube ของ reconciler (ms) */
+        @PositiveOrZero
+        private long minRequestIntervalMs = 500;
+    }
+
+    @Data
+    public static class Modules {
+        /** จำนวน scanner ที่รันพร้อมกันใน scan เดียว */
+        @Min(1) @Max(16)
+        private int parallelism = 2;
+
+        /** เกินนี้ตัด module ท้าย ๆ ทิ้ง (เรียงตามชนิด/ความลึก) */
+        @Min(1)
+        private int maxModules = 10;
+
+        /** ความลึกของโฟลเดอร์ที่ค้นหา pom.xml / build.gradle / angular.json / package.json */
+        @Min(1) @Max(10)
+        private int maxDepth = 4;
+    }
+
+    @Data
+    public static class Workspace {
+        /** เพดานขนาดรวมของ working copy ทุกโปรเจกต์ (MB) เกินแล้ว evict ตัวที่ไม่ได้ใช้นานสุด (scan ถัดไป clone ใหม่) */
+        @Positive
+        private long maxSizeMb = 51200;
+
+        /** รอบตรวจโควตา + เก็บกวาด .trash ที่ลบค้าง */
+        @NotBlank
+        private String evictCron = "0 15 * * * *";
+
+        /** คิวงานลบ/วัดขนาดที่รอได้ เกินนี้ค้างไว้ใน .trash ให้รอบ sweep ลบ */
+        @Positive
+        private int queueCapacity = 1000;
+    }
+
+    @Data
+    public static class Runner {
+        /** auto = ดูจาก os.name, windows = run_sonar.bat ผ่าน cmd.exe, posix = run_sonar.sh ผ่าน bash */
+        @Pattern(regexp = "auto|windows|posix")
+        private String os = "auto";
+
+        /** เวลาสูงสุดของสคริปต์ต่อ module (นาที) */
+        @Min(1)
+        private int timeoutMinutes = 30;
+
+        /** timeout/ยกเลิก: ส่ง TERM ให้ทั้งต้นไม้ก่อน รอเท่านี้แล้วค่อย KILL (ms) */
+        @PositiveOrZero
+        private long killGraceMs = 5000;
+    }
+
+    @Data
+    public static class Logs {
+        @NotBlank
+        private String directory = "C:/scan-logs";
+
+        /** จำนวนบรรทัดที่พักใน ring buffer ได้ (ปัดขึ้นเป็นกำลังของ 2) เต็มแล้วทิ้ง+นับ dropped */
+        @Min(64)
+        private int ringCapacity = 8192;
+
+        /** บรรทัดที่ยาวกว่านี้ถูกตัด (คุมหน่วยความจำสูงสุดของ ring) */
+        @Min(80)
+        private int maxLineLength = 2000;
+
+        @Positive
+        private long flushIntervalMs = 500;
+
+        @Positive
+        private long flushBytes = 65536;
+
+        /** จำนวนบรรทัดต่อ 1 จุดใน index ตำแหน่งบรรทัดของ log (ยิ่งน้อยยิ่งกระโดดแม่น แต่กินหน่วยความจำมากขึ้น) */
+        @Min(16)
+        private int indexStride = 1000;
+
+        /** จำนวนไฟล์ log ที่เก็บ index ไว้ (LRU) */
+        @Min(1)
+        private int indexCacheSize = 64;
+
+        /** จำนวนบรรทัดต่อการอ่าน 1 ครั้งเมื่อไม่ระบุ limit / สูงสุดที่ยอมให้ขอ */
+        @Min(1)
+        private int readDefaultLines = 1000;
+
+        @Min(1)
+        private int readMaxLines = 10000;
+
+        /** ขนาดสูงสุดต่อการอ่าน 1 ครั้ง (byte) */
+        @Positive
+        private long readMaxBytes = 2 * 1024 * 1024;
+
+        /** ช่วงเวลารวมบรรทัดเป็นก้อนก่อนส่ง SSE log สด */
+        @Min(50)
+        private long streamBatchMs = 200;
+
+        /** จำนวนบรรทัดล่าสุดที่เก็บไว้ให้ผู้ subscribe ที่มาทีหลัง / client ที่ช้า (ต่อ scan) */
+        @Min(100)
+        private int streamReplayLines = 2000;
+
+        /** บรรทัดสูงสุดต่อ 1 event */
+        @Min(1)
+        private int streamMaxBatchLines = 500;
+
+        @Min(1)
+        private int streamSendThreads = 4;
+    }
+}
@@ -0,0 +1,27 @@
+package com.automate.CodeReview.Config;
+
+import com.automate.CodeReview.Service.runner.PosixScanRunner;
+import com.automate.CodeReview.Service.runner.ScanRunner;
+import com.automate.CodeReview.Service.runner.WindowsScanRunner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Locale;
+
+@Slf4j
+@Configuration
+public class ScanRunnerConfig {
+
+    /** scan.runner.os=auto → Windows ใช้ .bat เดิม นอกนั้น (Linux/macOS) ใช้ .sh */
+    @Bean
+    public ScanRunner scanRunner(ScanProperties scanProperties) {
+        String os = scanProperties.getRunner().getOs();
+        if ("auto".equals(os)) {
+            os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows") ? "windows" : "posix";
+        }
+        ScanRunner runner = "windows".equals(os) ? new WindowsScanRunner() : new PosixScanRunner();
+        log.info("Scan runner: {} (script {})", runner.name(), runner.scriptFileName());
+        return runner;
+    }
+}
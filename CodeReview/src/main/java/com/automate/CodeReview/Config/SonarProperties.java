@@ -35,6 +35,21 @@ public class SonarProperties {
     @Positive
     private int batchConcurrency = 8;
 
+    /** จำนวนแถวต่อ JDBC batch ตอนเขียน issue ที่ import จาก Sonar (IssueBulkWriter) */
+    @Min(1) @Max(10000)
+    private int importBatchSize = 1000;
+
+    /** /api/issues/search เลื่อนหน้าได้ไม่เกินจำนวนนี้ (ของ Sonar คือ 10,000) เกินแล้วต้องแบ่ง query เป็นช่วง */
+    @Min(1) @Max(10000)
+    private int issueSearchWindow = 10000;
+
+    /** จำนวนช่วง (slice) ที่ดึง issue จาก Sonar พร้อมกันตอน import */
+    @Min(1) @Max(32)
+    private int issueSliceConcurrency = 4;
+
+    /** import เฉพาะ issue ที่เปลี่ยนตั้งแต่ analysis ของ scan ก่อนหน้า (false = ดึงทั้งหมดทุกครั้ง) */
+    private boolean incrementalImport = true;
+
     private String metricsCsv;
 
     private List<String> ratingMetrics = List.of(
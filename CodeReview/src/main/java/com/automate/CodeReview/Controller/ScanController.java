@@ -1,14 +1,25 @@
 package com.automate.CodeReview.Controller;
 
+import com.automate.CodeReview.Models.IssueImportStatsModel;
+import com.automate.CodeReview.Models.ScanGovernorModel;
+import com.automate.CodeReview.Models.ScanJobModel;
 import com.automate.CodeReview.Models.ScanLogModel;
 import com.automate.CodeReview.Models.ScanModel;
+import com.automate.CodeReview.Models.ScanStageTimingModel;
+import com.automate.CodeReview.Models.WorkspaceStatsModel;
 import com.automate.CodeReview.dto.request.ScanRequest;
+import com.automate.CodeReview.Service.issues.IssueBulkWriter;
+import com.automate.CodeReview.Service.ScanGovernor;
+import com.automate.CodeReview.Service.ScanJobService;
 import com.automate.CodeReview.Service.ScanService;
+import com.automate.CodeReview.Service.ScanTimelineService;
+import com.automate.CodeReview.Service.WorkspaceManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -18,26 +29,80 @@ import java.util.UUID;
 public class ScanController {
 
     private final ScanService scanService;
+    private final ScanJobService scanJobService;
+    private final ScanGovernor scanGovernor;
+    private final ScanTimelineService scanTimelineService;
+    private final WorkspaceManager workspaceManager;
+    private final IssueBulkWriter issueBulkWriter;
 
-    public ScanController(ScanService scanService ) {
+    public ScanController(ScanService scanService, ScanJobService scanJobService, ScanGovernor scanGovernor,
+                          ScanTimelineService scanTimelineService, WorkspaceManager workspaceManager,
+                          IssueBulkWriter issueBulkWriter) {
         this.scanService = scanService;
-
+        this.scanJobService = scanJobService;
+        this.scanGovernor = scanGovernor;
+        this.scanTimelineService = scanTimelineService;
+        this.workspaceManager = workspaceManager;
+        this.issueBulkWriter = issueBulkWriter;
     }
 
     @PostMapping("/{projectId}")
-    public ResponseEntity<Map<String, Object>> scanProject(
+    public ResponseEntity<ScanJobModel> scanProject(
             @PathVariable UUID projectId,
-            @RequestBody ScanRequest request) {
+            @RequestBody ScanRequest request,
+            Authentication authentication) {
 
         log.info("Received scan request for project: {}", projectId);
 
-        Map<String, Object> result = scanService.startScan(
+        // เข้าคิวแล้วตอบ 202 ทันที ไม่ถือ request thread ระหว่าง clone/build/sonar
+        ScanJobModel job = scanJobService.submit(
                 projectId,
                 request.getUsername(),
-                request.getPassword()
+                request.getPassword(),
+                request.isForce(),
+                request.isDiff(),
+                authentication != null ? authentication.getName() : "anonymous"
         );
 
-        return ResponseEntity.ok(result);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    /** สถานะคิว/admission control (queue depth, เวลารอ, จำนวนที่ถูกปฏิเสธ, CPU/หน่วยความจำล่าสุด) */
+    @GetMapping("/governor")
+    public ResponseEntity<ScanGovernorModel> getGovernorStats() {
+        return ResponseEntity.ok(scanGovernor.snapshot());
+    }
+
+    /** working copy: ขนาดรวมเทียบโควตา, จำนวนที่ใช้อยู่, คิวลบ และ byte ที่ได้คืนจากการลบ/evict */
+    @GetMapping("/workspaces")
+    public ResponseEntity<WorkspaceStatsModel> getWorkspaceStats() {
+        return ResponseEntity.ok(workspaceManager.snapshot());
+    }
+
+    /** import issue จาก Sonar: จำนวนแถว/batch ที่เขียน และ throughput (แถว/วินาที) สะสม + ครั้งล่าสุด */
+    @GetMapping("/issue-import")
+    public ResponseEntity<IssueImportStatsModel> getIssueImportStats() {
+        return ResponseEntity.ok(issueBulkWriter.snapshot());
+    }
+
+    /** p50/p95/p99 ของแต่ละขั้น (queue/clone/detect/build/upload/ce/webhook) ต่อชนิดโปรเจกต์ ย้อนหลัง windowHours */
+    @GetMapping("/timings")
+    public ResponseEntity<List<ScanStageTimingModel>> getStageTimings(
+            @RequestParam(defaultValue = "24") int windowHours,
+            @RequestParam(required = false) String projectType) {
+        return ResponseEntity.ok(scanTimelineService.stats(Duration.ofHours(Math.max(1, windowHours)), projectType));
+    }
+
+    @GetMapping("/{scanId}/status")
+    public ResponseEntity<ScanJobModel> getScanStatus(@PathVariable UUID scanId) {
+        return ResponseEntity.ok(scanJobService.getStatus(scanId));
+    }
+
+    /** หยุด scan ที่รอคิว/กำลังรัน: ฆ่า process ทั้งต้นไม้ สถานะ → CANCELLED (job เป็น CANCELLING จน worker คืน slot) */
+    @DeleteMapping("/{scanId}/run")
+    public ResponseEntity<ScanJobModel> cancelScan(@PathVariable UUID scanId, Authentication authentication) {
+        return ResponseEntity.ok(scanJobService.cancel(scanId,
+                authentication != null ? authentication.getName() : "anonymous"));
     }
 
     @GetMapping("/getProject/{userId}")
@@ -56,8 +121,12 @@ public class ScanController {
     }
 
     @GetMapping("/{scanId}/log")
-    public ResponseEntity<ScanLogModel> getScanLogById(@PathVariable UUID scanId) {
-        ScanLogModel log = scanService.getScanLogById(scanId);
+    public ResponseEntity<ScanLogModel> getScanLogById(@PathVariable UUID scanId,
+                                                       @RequestParam(required = false) Long offset,
+                                                       @RequestParam(required = false) Long fromLine,
+                                                       @RequestParam(required = false) Integer tail,
+                                                       @RequestParam(required = false) Integer limit) {
+        ScanLogModel log = scanService.getScanLogById(scanId, offset, fromLine, tail, limit);
         return ResponseEntity.ok(log);
     }
 
@@ -9,6 +9,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.time.Instant;
 
 @RestController
 @RequestMapping("/api/sonar")
@@ -80,7 +81,7 @@ public class SonarWebhookController {
 
 
         // 5) ทำงานต่อ async ตามของคุณ
-        sonarWebhookService.processAsync(payload, projectKey, deliveryId);
+        sonarWebhookService.processAsync(payload, projectKey, deliveryId, Instant.now());
         return ResponseEntity.ok().build();
     }
 
@@ -1,5 +1,6 @@
 package com.automate.CodeReview.Controller;
 
+import com.automate.CodeReview.Service.scanlog.ScanLogStreamService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -8,7 +9,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Slf4j
 @RestController
@@ -16,6 +19,11 @@ import java.util.concurrent.ConcurrentHashMap;
 @CrossOrigin(origins = "http://localhost:4200")
 public class SseController {
     private final Map<String, List<SseEmitter>> emitterMap = new ConcurrentHashMap<>();
+    private final ScanLogStreamService scanLogStream;
+
+    public SseController(ScanLogStreamService scanLogStream) {
+        this.scanLogStream = scanLogStream;
+    }
 
     @GetMapping("/subscribe")
     public SseEmitter subscribe(@RequestParam String repoId) {
@@ -23,7 +31,7 @@ public class SseController {
         log.info("🔥 SSE SUBSCRIBE repoId={}", repoId);   // 👈 เพิ่มบรรทัดนี้
 
         // ให้ repoId มีได้หลาย emitter
-        emitterMap.computeIfAbsent(repoId, k -> new ArrayList<>())
+        emitterMap.computeIfAbsent(repoId, k -> new CopyOnWriteArrayList<>())
                 .add(emitter);
 
         emitter.onCompletion(() -> removeEmitter(repoId, emitter));
@@ -32,6 +40,13 @@ public class SseController {
         return emitter;
     }
 
+    /** log สดของ scan ที่กำลังรัน (event: scan-log / scan-log-skipped / scan-log-end) */
+    @GetMapping("/scan-log/{scanId}")
+    public SseEmitter subscribeScanLog(@PathVariable UUID scanId,
+                                       @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return scanLogStream.subscribe(scanId, lastEventId);
+    }
+
 
     public void send(String key, Object data) {
         List<SseEmitter> emitters = emitterMap.get(key);
@@ -40,12 +55,27 @@ public class SseController {
             return;
         }
 
+        int removed = broadcast(key, emitters, "scan-complete", data);
+        log.info("SSE sent: key={}, alive={}, removed={}", key,
+                emitters.size(), removed);
+    }
+
+    /** ส่ง event อื่น (เช่น scan-progress) แบบเงียบ: ไม่มีคน subscribe ก็ข้ามไป */
+    public void sendEvent(String key, String eventName, Object data) {
+        List<SseEmitter> emitters = emitterMap.get(key);
+        if (emitters == null || emitters.isEmpty()) {
+            return;
+        }
+        broadcast(key, emitters, eventName, data);
+    }
+
+    private int broadcast(String key, List<SseEmitter> emitters, String eventName, Object data) {
         List<SseEmitter> dead = new ArrayList<>();
 
         for (SseEmitter emitter : emitters) {
             try {
                 emitter.send(SseEmitter.event()
-                        .name("scan-complete")
+                        .name(eventName)
                         .data(data));
             } catch (IOException e) {
                 log.warn("SSE connection dead for key={}, marking emitter dead", key);
@@ -57,9 +87,7 @@ public class SseController {
         if (emitters.isEmpty()) {
             emitterMap.remove(key);
         }
-
-        log.info("SSE sent: key={}, alive={}, removed={}", key,
-                emitters.size(), dead.size());
+        return dead.size();
     }
 
     private void removeEmitter(String key, SseEmitter emitter) {
@@ -0,0 +1,27 @@
+package com.automate.CodeReview.Models;
+
+import lombok.*;
+
+import java.util.UUID;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class IssueImportStatsModel {
+    private int batchSize;              // sonar.import-batch-size
+
+    // ตัวนับสะสมตั้งแต่ start
+    private long imports;               // จำนวนครั้งที่ import (scan / module)
+    private long rows;                  // แถวที่เขียน (insert + update)
+    private long batches;
+    private long writeMs;               // เวลารวมที่ใช้เขียน DB
+    private double rowsPerSecond;       // rows / writeMs
+
+    private Last last;                  // import ล่าสุด (null = ยังไม่มี)
+
+    /** เวลารวมนับตั้งแต่เริ่ม import (รวมเวลาดึงจาก Sonar) */
+    public record Last(UUID scanId, int rows, long totalMs, double rowsPerSecond) {
+    }
+}
@@ -1,5 +1,6 @@
 package com.automate.CodeReview.Models;
 
+import com.automate.CodeReview.entity.AnalysisProfile;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -29,6 +30,12 @@ public class  RepositoryModel {
 
     private String sonarProjectKey;
 
+    private AnalysisProfile analysisProfile;    // FULL / COMPILE (null ตอน update = ไม่เปลี่ยน)
+
+    private Boolean partialClone;               // ไม่โหลด blob ใหญ่ (null ตอน update = ไม่เปลี่ยน)
+
+    private Boolean sparseCheckout;             // ไม่ checkout ไฟล์ที่ Sonar exclude (null ตอน update = ไม่เปลี่ยน)
+
     private LocalDateTime createdAt;
 
     private LocalDateTime updatedAt;
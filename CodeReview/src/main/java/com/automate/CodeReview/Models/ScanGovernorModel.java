@@ -0,0 +1,36 @@
+package com.automate.CodeReview.Models;
+
+import lombok.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanGovernorModel {
+    private int running;
+    private int queued;                 // queue depth รวมทุก user
+    private int maxConcurrent;
+    private int maxPerUser;
+    private int maxPerProject;
+    private int queueCapacity;
+    private Map<String, Integer> queuedByUser = new LinkedHashMap<>();
+    private Map<String, Integer> runningByUser = new LinkedHashMap<>();
+
+    // ตัวนับสะสมตั้งแต่ start
+    private long submitted;
+    private long admitted;
+    private long rejectedQueueFull;
+    private long rejectedUserQueueFull;
+    private long resourceDeferrals;     // รอบที่ปล่อยไม่ได้เพราะ CPU/หน่วยความจำ/settle
+
+    // เวลารอคิว (ms)
+    private long avgWaitMs;
+    private long maxWaitMs;
+    private long oldestWaitMs;          // ตัวที่รอนานสุดในคิวตอนนี้
+
+    private double cpuLoad;             // ค่าล่าสุดที่ใช้ตัดสิน (-1 = อ่านไม่ได้/ยังไม่เคยอ่าน)
+    private long freeMemoryMb;
+}
@@ -0,0 +1,23 @@
+package com.automate.CodeReview.Models;
+
+import lombok.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanJobModel {
+    private UUID scanId;
+    private UUID projectId;
+    private String status;              // QUEUED / RUNNING / CANCELLING / COMPLETED / FAILED ...
+    private boolean merged;             // true = มี scan ของโปรเจกต์นี้อยู่ในคิวแล้ว ใช้ตัวเดิม
+    private Integer queuePosition;      // ลำดับในคิวของ user ที่กด scan (เฉพาะตอน QUEUED)
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+    private Integer killedProcesses;    // ตอบจาก cancel: จำนวน process (รวมลูกหลาน) ที่ถูกฆ่า
+    private Long cancelMs;              // ตอบจาก cancel: เวลาตั้งแต่สั่งจน process ตายหมด
+}
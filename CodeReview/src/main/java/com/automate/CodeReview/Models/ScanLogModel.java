@@ -13,4 +13,11 @@ import java.util.UUID;
 public class ScanLogModel {
     private UUID scanId;
     private List<String> lines = new ArrayList<>();
+    private long offset;            // byte เริ่มต้นของ lines
+    private long nextOffset;        // cursor สำหรับอ่านต่อ (?offset=)
+    private long fromLine;          // เลขบรรทัด (เริ่ม 0) ของ lines[0]
+    private long nextLine;
+    private long totalLines;        // บรรทัดที่เขียนจบแล้ว ณ ตอนอ่าน
+    private long fileSize;
+    private boolean eof;            // true = ยังไม่มีบรรทัดใหม่หลัง nextOffset
 }
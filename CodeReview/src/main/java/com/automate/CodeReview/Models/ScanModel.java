@@ -2,6 +2,7 @@ package com.automate.CodeReview.Models;
 
 import lombok.*;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -27,6 +28,19 @@ public class ScanModel {
     private String securityReviewGate;
     private Map<String, Object> metrics;           // เก็บเป็น JSON string ตาม entity
     private String logFilePath;
+    private String commitSha;
+    private UUID carriedFromScanId;         // != null = ไม่ได้ scan ใหม่ ยกผลมาจาก scan นี้
+    private Map<String, Object> buildCache;         // hit/miss ของ build cache
+    private String analysisProfile;
+    private Long buildMs;                           // เวลา build ก่อนส่ง Sonar
+    private Map<String, Object> cloneStats;         // ขนาดที่โหลด/checkout + เวลา clone (partial/sparse)
+    private String scanMode;                        // FULL / DIFF
+    private UUID baseScanId;                        // DIFF: issue ของไฟล์ที่ไม่เปลี่ยนมาจาก scan นี้
+    private Integer changedFileCount;
+    private List<Map<String, Object>> modules;      // monorepo: ผลต่อ module
+    private String cancelledBy;
+    private Long cancelMs;                          // CANCELLED: เวลาตั้งแต่สั่งจน process ตายหมด
+    private List<Map<String, Object>> timeline;     // เวลาแต่ละขั้น (queue/clone/detect/build/upload/ce/webhook)
     private LocalDateTime startedAt;
     private LocalDateTime completedAt;
     private String output;
@@ -0,0 +1,18 @@
+package com.automate.CodeReview.Models;
+
+import lombok.*;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanStageTimingModel {
+    private String stage;               // queue / clone / detect / build / upload / ce / webhook
+    private String projectType;         // ชนิดของ module หลัก (MAVEN / ANGULAR / NODE)
+    private long samples;
+    private long p50Ms;
+    private long p95Ms;
+    private long p99Ms;
+    private long maxMs;
+}
@@ -0,0 +1,23 @@
+package com.automate.CodeReview.Models;
+
+import lombok.*;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class WorkspaceStatsModel {
+    private int workspaces;             // working copy ใน index
+    private int leased;                 // ที่มี scan/clone ใช้อยู่ (evict ไม่ได้)
+    private long totalBytes;
+    private long quotaBytes;
+    private int pendingDeletes;         // อยู่ในคิวลบ (.trash)
+
+    // ตัวนับสะสมตั้งแต่ start
+    private long reclaimedBytes;
+    private long deletedDirs;
+    private long evictedDirs;
+    private long deleteFailures;        // ลบไม่หมด (ค้างใน .trash รอรอบถัดไป)
+    private long deleteMs;              // เวลารวมที่ใช้ลบบน thread เบื้องหลัง
+}
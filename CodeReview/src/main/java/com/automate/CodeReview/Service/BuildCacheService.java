@@ -0,0 +1,434 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * cache ของ build ที่ใช้ร่วมกันทุก scan (อยู่ใต้ scan.cache.directory)
+ * - maven/   : local repository (-Dmaven.repo.local)
+ * - npm/     : npm cache (npm_config_cache)
+ * - sonar/   : SONAR_USER_HOME (plugin cache ของ scanner)
+ * - node_modules/<hash>/ : snapshot node_modules ตาม hash ของ lockfile คืนกลับด้วย hardlink (ข้าม volume → copy)
+ * แต่ละ entry มี marker last-used ใช้ evict แบบ LRU เมื่อขนาดรวมเกิน maxSizeMb
+ * (cache กลาง maven/npm/sonar ลบได้เฉพาะตอนไม่มี scan ใช้งานอยู่)
+ */
+@Slf4j
+@Service
+public class BuildCacheService {
+
+    private static final String LAST_USED_MARKER = "last-used";
+    private static final String COMPLETE_MARKER = "complete";
+    /** อยู่ใน node_modules ของ workspace: hash ของ lockfile ที่ใช้ติดตั้ง */
+    private static final String KEY_MARKER = ".scan-cache-key";
+    private static final List<String> LOCKFILES =
+            List.of("package-lock.json", "npm-shrinkwrap.json", "yarn.lock", "pnpm-lock.yaml");
+    private static final List<String> SHARED = List.of("maven", "npm", "sonar");
+
+    private final ScanProperties.Cache props;
+    /**
+     * session ถือ read ตลอด build, evict ลบ maven/npm/sonar กลางเฉพาะตอนได้ write (tryWriteLock ไม่รอ)
+     * ใช้ StampedLock เพราะ session อาจ close คนละ thread กับที่ prepare (read lock ของ RW lock ผูก thread)
+     */
+    private final StampedLock sharedLock = new StampedLock();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    public BuildCacheService(ScanProperties scanProperties) {
+        this.props = scanProperties.getCache();
+    }
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    /**
+     * เตรียม cache ก่อนรัน script: คืน env ที่ต้องส่งให้ process + ผล hit/miss
+     * ผู้เรียกต้อง close() เสมอ และเรียก commit() เมื่อ build สำเร็จ (เก็บ snapshot node_modules)
+     */
+    public Session prepare(String clonePath, String projectType) {
+        Session session = new Session();
+        if (!props.isEnabled()) {
+            return session;
+        }
+        session.readStamp = sharedLock.readLock();   // รอถ้า evict กำลังลบ cache กลางอยู่
+        Path root = root();
+        try {
+            Path maven = shared(root, "maven", session);
+            Path npm = shared(root, "npm", session);
+            Path sonar = shared(root, "sonar", session);
+
+            String repoLocal = "-Dmaven.repo.local=" + slash(maven.resolve("repository"));
+            String sonarHome = "-Dsonar.userHome=" + slash(sonar);
+            session.env.put("MAVEN_OPTS", repoLocal + " " + sonarHome);
+            session.env.put("SONAR_SCANNER_OPTS", sonarHome);
+            session.env.put("SONAR_USER_HOME", slash(sonar));
+            session.env.put("npm_config_cache", slash(npm));
+
+            if ("ANGULAR".equals(projectType) || "NODE".equals(projectType)) {
+                prepareNodeModules(root, Paths.get(clonePath), session);
+            }
+        } catch (IOException e) {
+            // cache ใช้ไม่ได้ไม่ควรทำให้ scan ล้ม: build แบบไม่มี cache ตามเดิม
+            log.warn("Build cache unavailable, building without it: {}", e.getMessage());
+            session.env.clear();
+            session.report.put("error", e.getMessage());
+        }
+        return session;
+    }
+
+    /** ลบ entry ที่ไม่ได้ใช้นานสุดจนขนาดรวมไม่เกินโควตา คืนจำนวนที่ลบ */
+    public int evict() {
+        Path root = root();
+        if (!props.isEnabled() || !Files.isDirectory(root)) {
+            return 0;
+        }
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        for (String name : SHARED) {
+            Path dir = root.resolve(name);
+            if (Files.isDirectory(dir)) {
+                Entry e = new Entry(dir, true, lastUsed(dir), sizeOf(dir));
+                entries.add(e);
+                total += e.size;
+            }
+        }
+        for (Path snap : listSnapshots(root)) {
+            Entry e = new Entry(snap, false, lastUsed(snap), sizeOf(snap));
+            entries.add(e);
+            total += e.size;
+        }
+
+        long quota = props.getMaxSizeMb() * 1024L * 1024L;
+        if (total <= quota) {
+            log.debug("Build cache size {} MB within quota {} MB", total >> 20, props.getMaxSizeMb());
+            return 0;
+        }
+
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+        int evicted = 0;
+        for (Entry e : entries) {
+            if (total <= quota) {
+                break;
+            }
+            long writeStamp = 0;
+            if (e.shared && (writeStamp = sharedLock.tryWriteLock()) == 0) {
+                continue;   // มี build ใช้ repo/cache กลางอยู่
+            }
+            try {
+                FileSystemUtils.deleteRecursively(e.dir);
+                total -= e.size;
+                reclaimedBytes.addAndGet(e.size);
+                evicted++;
+                log.info("Evicted build cache {} ({} MB, last used {})", e.dir.getFileName(), e.size >> 20, e.lastUsed);
+            } catch (IOException ex) {
+                log.warn("Cannot evict build cache {}: {}", e.dir, ex.getMessage());
+            } finally {
+                if (writeStamp != 0) {
+                    sharedLock.unlockWrite(writeStamp);
+                }
+            }
+        }
+        if (total > quota) {
+            log.warn("Build cache still {} MB over quota {} MB (shared caches in use)", total >> 20, props.getMaxSizeMb());
+        }
+        return evicted;
+    }
+
+    public long reclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    // ---------- node_modules ----------
+
+    private void prepareNodeModules(Path root, Path clonePath, Session session) throws IOException {
+        Path projectDir = findPackageDir(clonePath);
+        if (projectDir == null) {
+            session.report.put("nodeModules", "NONE");
+            return;
+        }
+        String key = lockfileKey(projectDir);
+        Path nodeModules = projectDir.resolve("node_modules");
+        session.nodeModules = nodeModules;
+        session.nodeKey = key;
+
+        // workspace ถาวร: node_modules เดิมติดตั้งจาก lockfile เดียวกัน → ใช้ได้เลย
+        if (key.equals(readKey(nodeModules))) {
+            session.report.put("nodeModules", "HIT");
+            touch(root.resolve("node_modules").resolve(key));
+            return;
+        }
+
+        Path snapshot = root.resolve("node_modules").resolve(key);
+        if (Files.exists(snapshot.resolve(COMPLETE_MARKER))) {
+            FileSystemUtils.deleteRecursively(nodeModules);
+            try {
+                linkTree(snapshot.resolve("node_modules"), nodeModules);
+                touch(snapshot);
+                session.report.put("nodeModules", "RESTORED");
+                return;
+            } catch (IOException e) {
+                // snapshot ถูก evict ระหว่างคืน ฯลฯ → ติดตั้งใหม่ (node_modules ครึ่ง ๆ จะทำให้ script ข้าม npm install)
+                log.warn("Cannot restore node_modules snapshot {}: {}", key, e.getMessage());
+            }
+        }
+
+        // ไม่มี snapshot: ลบของเก่าที่ไม่ตรง lockfile ให้ script รัน npm install ใหม่ แล้วเก็บ snapshot ตอน commit
+        FileSystemUtils.deleteRecursively(nodeModules);
+        session.snapshotOnCommit = true;
+        session.report.put("nodeModules", "MISS");
+    }
+
+    private void snapshotNodeModules(Session session) {
+        Path nodeModules = session.nodeModules;
+        if (nodeModules == null || !Files.isDirectory(nodeModules)) {
+            return;
+        }
+        Path snapshots = root().resolve("node_modules");
+        Path target = snapshots.resolve(session.nodeKey);
+        Path tmp = snapshots.resolve(session.nodeKey + ".tmp-" + UUID.randomUUID());
+        try {
+            Files.writeString(nodeModules.resolve(KEY_MARKER), session.nodeKey, StandardCharsets.UTF_8);
+            if (Files.exists(target.resolve(COMPLETE_MARKER))) {
+                return;     // scan อื่นเก็บ hash นี้ไปก่อนแล้ว
+            }
+            linkTree(nodeModules, tmp.resolve("node_modules"));
+            Files.createFile(tmp.resolve(COMPLETE_MARKER));
+            touch(tmp);
+            FileSystemUtils.deleteRecursively(target);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved node_modules snapshot {}", session.nodeKey);
+        } catch (IOException e) {
+            log.warn("Cannot snapshot node_modules {}: {}", session.nodeKey, e.getMessage());
+        } finally {
+            try {
+                FileSystemUtils.deleteRecursively(tmp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** โฟลเดอร์ที่มี package.json: ราก หรือโฟลเดอร์แรกที่เจอ (ลึกไม่เกิน 3, ข้าม node_modules) */
+    private static @Nullable Path findPackageDir(Path clonePath) throws IOException {
+        if (Files.exists(clonePath.resolve("package.json"))) {
+            return clonePath;
+        }
+        try (Stream<Path> walk = Files.walk(clonePath, 3)) {
+            return walk.filter(p -> p.getFileName().toString().equals("package.json"))
+                    .filter(p -> !p.toString().contains("node_modules"))
+                    .map(Path::getParent)
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+
+    /** sha256 ของ lockfile (ไม่มี → package.json) + OS (native module ผูกกับแพลตฟอร์ม) */
+    private static String lockfileKey(Path projectDir) throws IOException {
+        Path source = projectDir.resolve("package.json");
+        for (String name : LOCKFILES) {
+            Path lock = projectDir.resolve(name);
+            if (Files.exists(lock)) {
+                source = lock;
+                break;
+            }
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update((System.getProperty("os.name") + "/" + System.getProperty("os.arch") + "\n").getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = Files.newInputStream(source)) {
+                byte[] buf = new byte[8192];
+                for (int n; (n = in.read(buf)) > 0; ) {
+                    md.update(buf, 0, n);
+                }
+            }
+            return HexFormat.of().formatHex(md.digest()).substring(0, 32);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static @Nullable String readKey(Path nodeModules) {
+        try {
+            Path marker = nodeModules.resolve(KEY_MARKER);
+            return Files.exists(marker) ? Files.readString(marker, StandardCharsets.UTF_8).trim() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** สร้างโครงสร้างเดียวกันที่ target โดย hardlink ไฟล์ (ไม่ได้ → copy), symlink สร้างใหม่ชี้ที่เดิม */
+    private static void linkTree(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path dest = target.resolve(source.relativize(file));
+                if (attrs.isSymbolicLink()) {
+                    Files.createSymbolicLink(dest, Files.readSymbolicLink(file));
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    Files.createLink(dest, file);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file, dest, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // ---------- helpers ----------
+
+    private Path root() {
+        return Paths.get(props.getDirectory());
+    }
+
+    /** โฟลเดอร์ cache กลาง: มีของอยู่แล้ว = HIT */
+    private Path shared(Path root, String name, Session session) throws IOException {
+        Path dir = root.resolve(name);
+        boolean warm;
+        try (Stream<Path> list = Files.exists(dir) ? Files.list(dir) : Stream.empty()) {
+            warm = list.anyMatch(p -> !p.getFileName().toString().equals(LAST_USED_MARKER));
+        }
+        Files.createDirectories(dir);
+        touch(dir);
+        session.report.put(name, warm ? "HIT" : "MISS");
+        return dir;
+    }
+
+    private List<Path> listSnapshots(Path root) {
+        List<Path> out = new ArrayList<>();
+        Path dir = root.resolve("node_modules");
+        if (!Files.isDirectory(dir)) {
+            return out;
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                if (Files.isDirectory(p)) out.add(p);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot list node_modules snapshots: {}", e.getMessage());
+        }
+        return out;
+    }
+
+    private static void touch(Path dir) {
+        try {
+            if (!Files.isDirectory(dir)) {
+                return;
+            }
+            Path marker = dir.resolve(LAST_USED_MARKER);
+            if (!Files.exists(marker)) {
+                Files.createFile(marker);
+            }
+            Files.setLastModifiedTime(marker, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Cannot touch cache marker {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private static Instant lastUsed(Path dir) {
+        try {
+            Path marker = dir.resolve(LAST_USED_MARKER);
+            return Files.getLastModifiedTime(Files.exists(marker) ? marker : dir).toInstant();
+        } catch (IOException e) {
+            return Instant.now();
+        }
+    }
+
+    private static long sizeOf(Path dir) {
+        AtomicLong size = new AtomicLong();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size.addAndGet(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.debug("Cannot size {}: {}", dir, e.getMessage());
+        }
+        return size.get();
+    }
+
+    private static String slash(Path p) {
+        return p.toAbsolutePath().toString().replace('\\', '/');
+    }
+
+    private record Entry(Path dir, boolean shared, Instant lastUsed, long size) {
+    }
+
+    /** cache ของ scan หนึ่งรอบ */
+    public final class Session implements AutoCloseable {
+        private final Map<String, String> env = new LinkedHashMap<>();
+        private final Map<String, Object> report = new LinkedHashMap<>();
+        private @Nullable Path nodeModules;
+        private String nodeKey;
+        private boolean snapshotOnCommit;
+        private long readStamp;             // 0 = ไม่ได้ถือ sharedLock
+
+        /** env ที่ต้องส่งให้ process (ค่า *_OPTS ต่อท้ายของเดิม) */
+        public Map<String, String> env() {
+            return env;
+        }
+
+        /** ผล hit/miss ต่อ cache เช่น {maven=HIT, npm=MISS, sonar=HIT, nodeModules=RESTORED} */
+        public Map<String, Object> report() {
+            return report;
+        }
+
+        /** build สำเร็จ: เก็บ node_modules ที่เพิ่งติดตั้งเป็น snapshot ของ hash นี้ */
+        public void commit() {
+            if (snapshotOnCommit) {
+                snapshotNodeModules(this);
+                snapshotOnCommit = false;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (readStamp != 0) {
+                sharedLock.unlockRead(readStamp);
+                readStamp = 0;
+            }
+        }
+    }
+}
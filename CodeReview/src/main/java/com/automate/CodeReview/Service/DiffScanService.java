@@ -0,0 +1,276 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.Service.git.GitDiff;
+import com.automate.CodeReview.Service.git.GitEngine;
+import com.automate.CodeReview.Service.scanlog.ScanLogAppender;
+import com.automate.CodeReview.entity.ScansEntity;
+import com.automate.CodeReview.exception.GitOperationException;
+import com.automate.CodeReview.repository.ScansRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * differential scan: วิเคราะห์เฉพาะไฟล์ที่เปลี่ยนตั้งแต่ commit ของ scan สำเร็จล่าสุด
+ * - plan(): git diff base..HEAD ใน working copy → sonar.inclusions / sonar.test.inclusions
+ *   (ไม่มี base, config เปลี่ยน, หา commit base ไม่เจอ, เปลี่ยนเยอะเกิน → null = scan เต็ม)
+ * - mergeIssues(): Sonar ปิด issue ของไฟล์ที่ไม่อยู่ใน analysis รอบนี้ หลัง import issue (webhook)
+ *   จึงแทน issue ของไฟล์ที่ไม่ได้วิเคราะห์ด้วยของ base scan ให้ scan ใหม่มีชุด issue ครบทั้ง repo
+ */
+@Slf4j
+@Service
+public class DiffScanService {
+
+    public static final String MODE_FULL = "FULL";
+    public static final String MODE_DIFF = "DIFF";
+
+    /** โฟลเดอร์ที่มีไฟล์เหล่านี้ = base dir ของ module ที่ Sonar ใช้เทียบ inclusions */
+    private static final List<String> MODULE_MANIFESTS = List.of("pom.xml", "package.json");
+    private static final Set<String> OPEN_STATUSES = Set.of("OPEN", "CONFIRMED", "REOPENED");
+    /** metric ที่นับจาก issue ได้ (ที่เหลือ เช่น coverage/duplication ยกจาก base) */
+    private static final Map<String, String> COUNT_METRICS = Map.of(
+            "BUG", "bugs",
+            "VULNERABILITY", "vulnerabilities",
+            "CODE_SMELL", "code_smells");
+
+    private static final String SELECT_ISSUES_SQL =
+            "SELECT issues_id, issue_key, type, status, component FROM issues WHERE scan_id = ?";
+    private static final String COPY_ISSUE_SQL = """
+            INSERT INTO issues (issues_id, scan_id, issue_key, type, severity, component, message, status, created_at)
+            SELECT gen_random_uuid(), ?, issue_key, type, severity, component, message, status, now()
+            FROM issues WHERE issues_id = ?
+            """;
+    private static final RowMapper<IssueRow> ISSUE_ROW = (rs, i) -> new IssueRow(
+            rs.getObject("issues_id", UUID.class),
+            rs.getString("issue_key"),
+            rs.getString("type"),
+            rs.getString("status"),
+            rs.getString("component"));
+
+    private final ScansRepository scansRepository;
+    private final GitEngine gitEngine;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ScanProperties.Diff props;
+
+    public DiffScanService(ScansRepository scansRepository, GitEngine gitEngine, JdbcTemplate jdbcTemplate,
+                           ObjectMapper objectMapper, ScanProperties scanProperties) {
+        this.scansRepository = scansRepository;
+        this.gitEngine = gitEngine;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.props = scanProperties.getDiff();
+    }
+
+    /**
+     * วางแผน diff scan ของ workspace ที่ checkout headCommit แล้ว
+     * คืน null (พร้อมเหตุผลใน scan log) ถ้าต้อง scan เต็ม
+     */
+    public @Nullable Plan plan(UUID projectId, Path workspace, @Nullable String headCommit, String configHash,
+                               ScanLogAppender scanLog) {
+        if (!props.isEnabled()) {
+            return fullScan(scanLog, "differential scan is disabled (scan.diff.enabled)");
+        }
+        ScansEntity base = scansRepository
+                .findFirstByProject_ProjectIdAndStatusAndCommitShaIsNotNullOrderByCompletedAtDesc(projectId, "SUCCESS")
+                .orElse(null);
+        if (base == null) {
+            return fullScan(scanLog, "no previous successful scan to diff against");
+        }
+        if (!configHash.equals(base.getConfigHash())) {
+            return fullScan(scanLog, "scan config changed since scan " + base.getScanId());
+        }
+        if (headCommit == null || headCommit.equals(base.getCommitSha())) {
+            return fullScan(scanLog, "commit unchanged since scan " + base.getScanId());
+        }
+
+        long started = System.nanoTime();
+        GitDiff diff;
+        try {
+            diff = gitEngine.diff(workspace, base.getCommitSha(), headCommit);
+        } catch (GitOperationException e) {
+            return fullScan(scanLog, "cannot diff against " + base.getCommitSha() + " (" + e.getReason() + ")");
+        }
+        long diffMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        if (diff.changed().isEmpty()) {
+            return fullScan(scanLog, "no added/modified files since " + base.getCommitSha()
+                    + " (" + diff.deleted().size() + " deleted)");
+        }
+        if (diff.changed().size() + diff.deleted().size() > props.getMaxFiles()) {
+            return fullScan(scanLog, (diff.changed().size() + diff.deleted().size())
+                    + " files changed, more than scan.diff.max-files=" + props.getMaxFiles());
+        }
+
+        Set<String> patterns = new LinkedHashSet<>();
+        for (String path : diff.changed()) {
+            patterns.add(inclusionPattern(workspace, path));
+        }
+        String inclusions = String.join(",", patterns);
+        if (inclusions.length() > props.getMaxInclusionChars()) {
+            return fullScan(scanLog, "inclusion list too long (" + inclusions.length() + " chars)");
+        }
+
+        List<String> analyzed = new ArrayList<>(diff.changed());
+        analyzed.addAll(diff.deleted());
+        scanLog.append(String.format("[diff] %d changed, %d deleted since %s (scan %s), diff took %d ms",
+                diff.changed().size(), diff.deleted().size(), base.getCommitSha(), base.getScanId(), diffMs));
+        log.info("Differential scan for project {}: {} changed, {} deleted since scan {} ({} ms)",
+                projectId, diff.changed().size(), diff.deleted().size(), base.getScanId(), diffMs);
+        return new Plan(base.getScanId(), base.getCommitSha(), analyzed, inclusions);
+    }
+
+    /**
+     * รวม issue ของ DIFF scan กับ base scan (เรียกหลัง import issue ของ scan นี้เสร็จ)
+     * - issue ของไฟล์ที่ถูกแก้/ลบ → ใช้ของ scan ใหม่
+     * - ไฟล์อื่น → copy จาก base (ของ scan ใหม่ในไฟล์เหล่านั้นคือ issue ที่ Sonar ปิดเพราะไม่ได้วิเคราะห์ ทิ้ง)
+     * - metrics: ยกจาก base แล้วนับ bugs/vulnerabilities/code_smells ใหม่จากชุดที่รวมแล้ว
+     */
+    @Transactional
+    public void mergeIssues(ScansEntity scan) {
+        if (!MODE_DIFF.equals(scan.getScanMode()) || scan.getBaseScanId() == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        Set<String> analyzed = pathSuffixes(scan.getChangedFiles());
+
+        List<Object[]> stale = new ArrayList<>();
+        Set<String> keptKeys = new HashSet<>();
+        List<IssueRow> merged = new ArrayList<>();
+        for (IssueRow row : jdbcTemplate.query(SELECT_ISSUES_SQL, ISSUE_ROW, scan.getScanId())) {
+            if (isAnalyzed(row.component(), analyzed)) {
+                keptKeys.add(row.issueKey());
+                merged.add(row);
+            } else {
+                stale.add(new Object[]{row.issueId()});
+            }
+        }
+        List<Object[]> carried = new ArrayList<>();
+        for (IssueRow row : jdbcTemplate.query(SELECT_ISSUES_SQL, ISSUE_ROW, scan.getBaseScanId())) {
+            if (!isAnalyzed(row.component(), analyzed) && !keptKeys.contains(row.issueKey())) {
+                carried.add(new Object[]{scan.getScanId(), row.issueId()});
+                merged.add(row);
+            }
+        }
+
+        jdbcTemplate.batchUpdate("DELETE FROM issues WHERE issues_id = ?", stale);
+        jdbcTemplate.batchUpdate(COPY_ISSUE_SQL, carried);
+        mergeMetrics(scan, merged);
+
+        log.info("Merged issues of differential scan {}: {} from this analysis, {} carried from scan {}, {} dropped ({} ms)",
+                scan.getScanId(), keptKeys.size(), carried.size(), scan.getBaseScanId(), stale.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // ---------- internals ----------
+
+    private void mergeMetrics(ScansEntity scan, List<IssueRow> merged) {
+        Map<String, Object> metrics = scansRepository.findById(scan.getBaseScanId())
+                .map(ScansEntity::getMetrics)
+                .map(m -> (Map<String, Object>) new LinkedHashMap<>(m))
+                .orElse(null);
+        if (metrics == null) {
+            return;     // base ไม่มี metrics → ใช้ของ Sonar (บางส่วน) ไปตามเดิม
+        }
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (IssueRow row : merged) {
+            String metric = COUNT_METRICS.get(row.type());
+            if (metric != null && row.status() != null && OPEN_STATUSES.contains(row.status())) {
+                counts.merge(metric, 1, Integer::sum);
+            }
+        }
+        for (String metric : COUNT_METRICS.values()) {
+            if (metrics.containsKey(metric)) {
+                metrics.put(metric, String.valueOf(counts.getOrDefault(metric, 0)));
+            }
+        }
+        try {
+            jdbcTemplate.update("UPDATE scans SET metrics = CAST(? AS jsonb) WHERE scan_id = ?",
+                    objectMapper.writeValueAsString(metrics), scan.getScanId());
+            scan.setMetrics(metrics);
+        } catch (JsonProcessingException e) {
+            log.warn("Cannot merge metrics of differential scan {}: {}", scan.getScanId(), e.getMessage());
+        }
+    }
+
+    private static @Nullable Plan fullScan(ScanLogAppender scanLog, String reason) {
+        scanLog.append("[diff] full scan: " + reason);
+        return null;
+    }
+
+    /**
+     * pattern ของไฟล์สำหรับ sonar.inclusions: Sonar เทียบ inclusions กับ path ใน module
+     * จึงตัด path ให้เหลือส่วนใต้โฟลเดอร์ module ที่ใกล้สุด แล้วนำหน้าด้วย ** / (เกินมาบ้างไม่เป็นไร ไม่ขาด)
+     * ช่องว่าง/คอมมาใน path แทนด้วย ? (ค่าส่งผ่าน _OPTS ที่แยกด้วยช่องว่าง และ inclusions คั่นด้วยคอมมา)
+     */
+    private static String inclusionPattern(Path workspace, String path) {
+        String relative = path;
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            Path dir = workspace.resolve(path.substring(0, slash));
+            if (MODULE_MANIFESTS.stream().anyMatch(m -> Files.isRegularFile(dir.resolve(m)))) {
+                relative = path.substring(slash + 1);
+                break;
+            }
+        }
+        return "**/" + relative.replace(' ', '?').replace(',', '?');
+    }
+
+    /** ทุก suffix ตามขอบ '/' ของแต่ละ path (component ของ Sonar เทียบกับ base dir ของ analysis ซึ่งอาจเป็นโฟลเดอร์ย่อย) */
+    private static Set<String> pathSuffixes(@Nullable List<String> paths) {
+        Set<String> out = new HashSet<>();
+        if (paths == null) {
+            return out;
+        }
+        for (String path : paths) {
+            out.add(path);
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                out.add(path.substring(slash + 1));
+            }
+        }
+        return out;
+    }
+
+    /** component = "<projectKey>:<path>"; issue ระดับโปรเจกต์ (ไม่มี path) ถือว่าเป็นของ analysis รอบนี้ */
+    private static boolean isAnalyzed(@Nullable String component, Set<String> analyzedSuffixes) {
+        if (component == null) {
+            return true;
+        }
+        int colon = component.indexOf(':');
+        return colon < 0 || analyzedSuffixes.contains(component.substring(colon + 1));
+    }
+
+    /**
+     * @param analyzedPaths path ที่แก้/ลบ (เก็บลง scans.changed_files ใช้ตอน merge)
+     * @param inclusions    ค่า sonar.inclusions / sonar.test.inclusions
+     */
+    public record Plan(UUID baseScanId, String baseCommit, List<String> analyzedPaths, String inclusions) {
+
+        /** เพิ่ม inclusions ให้ทั้ง sonar-scanner และ mvn sonar:sonar (ต่อท้าย _OPTS ที่มีอยู่) */
+        public void applyTo(Map<String, String> env) {
+            String opts = "-Dsonar.inclusions=" + inclusions + " -Dsonar.test.inclusions=" + inclusions;
+            env.merge("SONAR_SCANNER_OPTS", opts, (a, b) -> a + " " + b);
+            env.merge("MAVEN_OPTS", opts, (a, b) -> a + " " + b);
+        }
+    }
+
+    private record IssueRow(UUID issueId, String issueKey, String type, String status, String component) {
+    }
+}
@@ -0,0 +1,221 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.Service.git.GitCredentials;
+import com.automate.CodeReview.Service.git.GitEngine;
+import com.automate.CodeReview.Service.git.GitProgress;
+import com.automate.CodeReview.exception.GitOperationException;
+import com.automate.CodeReview.util.TokenHashUtils;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bare mirror ที่ใช้ร่วมกันระหว่างโปรเจกต์/scan
+ * - 1 mirror ต่อ 1 URL ที่ normalize แล้ว (https/ssh, ตัวพิมพ์, credential, .git ต่างกันได้ mirror เดียวกัน)
+ *   หลาย branch ของ repo เดียวกันใช้ mirror ร่วมกัน แต่ fork (URL ต่างกัน) ได้ mirror ของตัวเอง
+ * - working copy clone แบบ --shared จาก mirror → ใช้ object ผ่าน alternates ไม่ต้องโหลดซ้ำ
+ * - ตอน scan: fetch เข้า mirror เฉพาะ object ใหม่ (ใช้ credential ของ request นั้น)
+ */
+@Slf4j
+@Service
+public class GitMirrorService {
+
+    private static final String LAST_USED_MARKER = "last-used";
+
+    private final ScanProperties.Mirror props;
+    private final GitEngine gitEngine;
+
+    /** กัน clone/fetch/gc ชนกันใน mirror เดียวกัน */
+    private final Map<String, Object> mirrorLocks = new ConcurrentHashMap<>();
+
+    public GitMirrorService(ScanProperties scanProperties, GitEngine gitEngine) {
+        this.props = scanProperties.getMirror();
+        this.gitEngine = gitEngine;
+    }
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    /**
+     * เตรียม mirror ของ repo ให้เป็นปัจจุบัน คืน path ของ mirror
+     * คืน null ถ้าปิดใช้งานหรือเตรียมไม่สำเร็จ (ให้ผู้เรียก fallback ไปโหลดจาก remote ตรงๆ)
+     */
+    public @Nullable Path ensureMirror(String repoUrl, @Nullable GitCredentials credentials,
+                                       GitProgress progress, Map<String, Long> timings) {
+        if (!props.isEnabled()) {
+            return null;
+        }
+        Path mirrorDir = mirrorDir(repoUrl);
+        long t = System.nanoTime();
+        try {
+            Files.createDirectories(mirrorDir.getParent());
+            synchronized (mirrorLock(mirrorDir)) {
+                boolean ok = isUsableMirror(mirrorDir)
+                        ? fetchMirror(mirrorDir, credentials, progress)
+                        : createMirror(mirrorDir, repoUrl, credentials, progress);
+                if (!ok) {
+                    return null;
+                }
+                touch(mirrorDir);
+            }
+            return mirrorDir;
+        } catch (IOException e) {
+            log.warn("Cannot prepare mirror for {}: {}", repoUrl, e.getMessage());
+            return null;
+        } finally {
+            timings.put("mirrorMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t));
+        }
+    }
+
+    /**
+     * refresh ทุก mirror เบื้องหลังด้วย remote ที่บันทึกไว้ (ไม่มี credential)
+     * repo private จะ fetch ไม่ผ่านแบบเงียบๆ แล้วไปได้ object ใหม่ตอน scan แทน
+     */
+    public int refreshAll() {
+        int refreshed = 0;
+        for (Path mirrorDir : listMirrors()) {
+            synchronized (mirrorLock(mirrorDir)) {
+                if (fetchMirror(mirrorDir, null, GitProgress.NONE)) {
+                    refreshed++;
+                }
+            }
+        }
+        return refreshed;
+    }
+
+    /** git gc --auto ทุก mirror (ผลต่อ working copy ดู {@link GitEngine#gc}) และลบ mirror ที่ไม่ถูกใช้เกิน maxIdleDays (scan ถัดไปจะ clone mirror ใหม่เอง) */
+    public int gcAll() {
+        Instant idleBefore = Instant.now().minus(Duration.ofDays(props.getMaxIdleDays()));
+        int evicted = 0;
+        for (Path mirrorDir : listMirrors()) {
+            synchronized (mirrorLock(mirrorDir)) {
+                if (lastUsed(mirrorDir).isBefore(idleBefore)) {
+                    log.info("Evicting idle mirror {}", mirrorDir);
+                    try {
+                        FileSystemUtils.deleteRecursively(mirrorDir);
+                        evicted++;
+                    } catch (IOException e) {
+                        log.warn("Cannot delete mirror {}: {}", mirrorDir, e.getMessage());
+                    }
+                    continue;
+                }
+                try {
+                    gitEngine.gc(mirrorDir);
+                } catch (GitOperationException e) {
+                    log.warn("Mirror gc failed for {}: {}", mirrorDir, e.getReason());
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /** https://user:pw@GitHub.com/Owner/Repo.git/ → github.com/owner/repo, git@host:o/r.git → host/o/r */
+    static String normalizeUrl(String url) {
+        String s = url.trim().toLowerCase(Locale.ROOT);
+        s = s.replaceFirst("^[a-z+]+://", "");
+        s = s.replaceFirst("^[^@/]+@", "");
+        s = s.replaceFirst("^([^/:]+):(?!\\d+/)", "$1/");   // scp-style ssh (ไม่ใช่ host:port)
+        s = s.replaceAll("/+$", "");
+        if (s.endsWith(".git")) {
+            s = s.substring(0, s.length() - 4);
+        }
+        return s;
+    }
+
+    Path mirrorDir(String repoUrl) {
+        String key = TokenHashUtils.sha256(normalizeUrl(repoUrl)).substring(0, 16);
+        return Paths.get(props.getDirectory(), key + ".git");
+    }
+
+    // ---------- Helpers ----------
+
+    private Object mirrorLock(Path mirrorDir) {
+        return mirrorLocks.computeIfAbsent(mirrorDir.toString(), k -> new Object());
+    }
+
+    private boolean isUsableMirror(Path mirrorDir) {
+        return Files.isRegularFile(mirrorDir.resolve("HEAD")) && Files.isDirectory(mirrorDir.resolve("objects"));
+    }
+
+    private boolean createMirror(Path mirrorDir, String repoUrl, @Nullable GitCredentials credentials,
+                                 GitProgress progress) throws IOException {
+        if (Files.exists(mirrorDir)) {
+            FileSystemUtils.deleteRecursively(mirrorDir);
+        }
+        try {
+            // JGit ส่ง credential ผ่าน provider → config ของ mirror มีแค่ URL เปล่า
+            gitEngine.cloneMirror(repoUrl, mirrorDir, credentials, progress);
+            return true;
+        } catch (GitOperationException e) {
+            log.warn("Mirror clone failed for {}: {}", repoUrl, e.getReason());
+            FileSystemUtils.deleteRecursively(mirrorDir);
+            return false;
+        }
+    }
+
+    /** fetch เฉพาะ branch/tag จาก origin ลง mirror (prune ตาม remote) */
+    private boolean fetchMirror(Path mirrorDir, @Nullable GitCredentials credentials, GitProgress progress) {
+        try {
+            gitEngine.fetchMirror(mirrorDir, null, credentials, progress);
+            return true;
+        } catch (GitOperationException e) {
+            log.warn("Mirror fetch failed for {}: {}", mirrorDir, e.getReason());
+            return false;
+        }
+    }
+
+    private void touch(Path mirrorDir) {
+        try {
+            Path marker = mirrorDir.resolve(LAST_USED_MARKER);
+            if (!Files.exists(marker)) {
+                Files.createFile(marker);
+            }
+            Files.setLastModifiedTime(marker, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Cannot touch mirror marker {}: {}", mirrorDir, e.getMessage());
+        }
+    }
+
+    private Instant lastUsed(Path mirrorDir) {
+        try {
+            Path marker = mirrorDir.resolve(LAST_USED_MARKER);
+            return Files.getLastModifiedTime(Files.exists(marker) ? marker : mirrorDir).toInstant();
+        } catch (IOException e) {
+            return Instant.now();
+        }
+    }
+
+    private List<Path> listMirrors() {
+        Path root = Paths.get(props.getDirectory());
+        List<Path> mirrors = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return mirrors;
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root, "*.git")) {
+            for (Path p : ds) {
+                if (isUsableMirror(p)) mirrors.add(p);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot list mirrors in {}: {}", root, e.getMessage());
+        }
+        return mirrors;
+    }
+}
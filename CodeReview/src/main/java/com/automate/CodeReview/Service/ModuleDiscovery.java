@@ -0,0 +1,148 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * หา module ที่ build ได้ทั้งหมดใน clone ด้วยการเดินโฟลเดอร์รอบเดียว
+ * - ชนิดของโฟลเดอร์: pom.xml → MAVEN, build.gradle(.kts) → GRADLE, angular.json → ANGULAR, package.json → NODE
+ * - โฟลเดอร์ย่อยของ module ที่เป็นตระกูลเดียวกัน (JVM: maven/gradle, JS: angular/node) คือ sub-module ของตัวนั้น ไม่นับแยก
+ *   ต่างตระกูล (เช่น frontend Angular ใต้ root Maven) นับเป็นอีก module
+ * - ข้าม node_modules / target / build / dist และโฟลเดอร์ที่ขึ้นต้นด้วย "."
+ * ผลเรียง MAVEN > GRADLE > ANGULAR > NODE แล้วตื้นก่อน ตัวแรก = module หลัก (ชนิดเดียวกับ detectProjectType เดิม)
+ */
+@Slf4j
+@Component
+public class ModuleDiscovery {
+
+    public static final List<String> TYPE_ORDER = List.of("MAVEN", "GRADLE", "ANGULAR", "NODE");
+    /** ชนิดที่มี script สร้าง Sonar analysis ได้ */
+    public static final Set<String> SUPPORTED_TYPES = Set.of("MAVEN", "ANGULAR", "NODE");
+
+    private static final Set<String> SKIP_DIRS = Set.of("node_modules", "target", "build", "dist", "out", "bin");
+
+    private final ScanProperties.Modules props;
+
+    public ModuleDiscovery(ScanProperties scanProperties) {
+        this.props = scanProperties.getModules();
+    }
+
+    public List<ScanModule> discover(Path root) throws IOException {
+        List<ScanModule> found = new ArrayList<>();
+        List<Path> enclosing = new ArrayList<>();        // root ของ module ที่ครอบโฟลเดอร์ปัจจุบัน (เรียงตื้น → ลึก)
+        List<String> enclosingTypes = new ArrayList<>();
+
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), props.getMaxDepth(), new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+                if (!dir.equals(root) && (name.startsWith(".") || SKIP_DIRS.contains(name))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                String type = typeOf(dir);
+                if (type != null && !insideSameFamily(type)) {
+                    String path = root.relativize(dir).toString().replace('\\', '/');
+                    found.add(new ScanModule(path, type));
+                    enclosing.add(dir);
+                    enclosingTypes.add(type);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                int last = enclosing.size() - 1;
+                if (last >= 0 && enclosing.get(last).equals(dir)) {
+                    enclosing.remove(last);
+                    enclosingTypes.remove(last);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;    // โฟลเดอร์ที่อ่านไม่ได้ (symlink เสีย/สิทธิ์) ไม่ทำให้ทั้ง scan ล้ม
+            }
+
+            private boolean insideSameFamily(String type) {
+                return enclosingTypes.stream().anyMatch(t -> isJvm(t) == isJvm(type));
+            }
+        });
+
+        found.sort(Comparator.comparingInt((ScanModule m) -> TYPE_ORDER.indexOf(m.type()))
+                .thenComparingInt(ScanModule::depth)
+                .thenComparing(ScanModule::path));
+        if (found.size() > props.getMaxModules()) {
+            log.warn("Found {} modules under {}, analysing the first {} (scan.modules.max-modules)",
+                    found.size(), root, props.getMaxModules());
+            return new ArrayList<>(found.subList(0, props.getMaxModules()));
+        }
+        return found;
+    }
+
+    /** ชนิดของ module หลัก หรือ "UNKNOWN" */
+    public String primaryType(Path root) {
+        try {
+            List<ScanModule> modules = discover(root);
+            return modules.isEmpty() ? "UNKNOWN" : modules.get(0).type();
+        } catch (IOException e) {
+            log.error("Error walking directory: {}", root, e);
+            return "UNKNOWN";
+        }
+    }
+
+    private static String typeOf(Path dir) {
+        if (Files.isRegularFile(dir.resolve("pom.xml"))) return "MAVEN";
+        if (Files.isRegularFile(dir.resolve("build.gradle")) || Files.isRegularFile(dir.resolve("build.gradle.kts"))) return "GRADLE";
+        if (Files.isRegularFile(dir.resolve("angular.json"))) return "ANGULAR";
+        if (Files.isRegularFile(dir.resolve("package.json"))) return "NODE";
+        return null;
+    }
+
+    private static boolean isJvm(String type) {
+        return "MAVEN".equals(type) || "GRADLE".equals(type);
+    }
+
+    /** path = โฟลเดอร์ของ module เทียบกับรากของ clone คั่นด้วย '/' ("" = ราก) */
+    public record ScanModule(String path, String type) {
+
+        public Path dir(Path root) {
+            return path.isEmpty() ? root : root.resolve(path);
+        }
+
+        public boolean isRoot() {
+            return path.isEmpty();
+        }
+
+        public String label() {
+            return path.isEmpty() ? "." : path;
+        }
+
+        public boolean isSupported() {
+            return SUPPORTED_TYPES.contains(type);
+        }
+
+        int depth() {
+            return path.isEmpty() ? 0 : path.split("/").length;
+        }
+
+        /** อยู่ใต้โฟลเดอร์ของ module นี้ (ไม่รวมตัวเอง) */
+        public boolean contains(ScanModule other) {
+            return !other.path.equals(path) && (path.isEmpty() || other.path.startsWith(path + "/"));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.automate.CodeReview.Service;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ทะเบียน scan ที่ upload ไป SonarQube แล้วและกำลังรอผล (analysisId)
+ * - index ด้วย CE taskId / referenceId / projectKey (แม่นสุด → หลวมสุด)
+ * - webhook เรียก complete() → future ของ scan นั้นเสร็จทันที ไม่ต้อง poll
+ * - module รองของ monorepo (Sonar project key แยก) ลงทะเบียนไว้ที่ modules: webhook ของ key นั้นเป็นของ scan หลัก
+ */
+@Slf4j
+@Component
+public class ScanCompletionRegistry {
+
+    private static final String TASK = "task:";
+    private static final String REF = "ref:";
+    private static final String PROJECT = "project:";
+
+    private final Map<UUID, Pending> byScan = new ConcurrentHashMap<>();
+    private final Map<String, UUID> index = new ConcurrentHashMap<>();
+    /** sonar key ของ module รอง → scan (เก็บไว้ MODULE_TTL เผื่อ webhook ซ้ำ/มาช้า) */
+    private final Map<String, ModuleEntry> modules = new ConcurrentHashMap<>();
+    private static final Duration MODULE_TTL = Duration.ofHours(6);
+
+    public CompletableFuture<String> register(UUID scanId, String projectKey, @Nullable String referenceId) {
+        Pending pending = new Pending(scanId, projectKey, referenceId);
+        byScan.put(scanId, pending);
+        index.put(PROJECT + projectKey, scanId);   // scan ล่าสุดของโปรเจกต์ชนะ
+        if (referenceId != null) {
+            index.put(REF + referenceId, scanId);
+        }
+        return pending.future;
+    }
+
+    /** module รองของ scan (analyse ด้วย key ของตัวเอง) */
+    public void registerModule(UUID scanId, String moduleProjectKey) {
+        long now = System.currentTimeMillis();
+        modules.values().removeIf(e -> now - e.registeredAt > MODULE_TTL.toMillis());
+        modules.put(moduleProjectKey, new ModuleEntry(scanId, now));
+    }
+
+    /** webhook ของ key นี้เป็นของ module รองหรือไม่ (ได้ scanId หลัก) */
+    public Optional<UUID> findModuleScan(@Nullable String projectKey) {
+        ModuleEntry entry = projectKey != null ? modules.get(projectKey) : null;
+        return entry != null ? Optional.of(entry.scanId) : Optional.empty();
+    }
+
+    /** ได้ ceTaskId จาก report-task.txt หลัง upload เสร็จ */
+    public void attachTaskId(UUID scanId, String ceTaskId) {
+        Pending pending = byScan.get(scanId);
+        if (pending != null) {
+            pending.ceTaskId = ceTaskId;
+            index.put(TASK + ceTaskId, scanId);
+        }
+    }
+
+    public Optional<UUID> findScanId(@Nullable String ceTaskId, @Nullable String referenceId, @Nullable String projectKey) {
+        UUID byTask = (ceTaskId != null) ? index.get(TASK + ceTaskId) : null;
+        if (byTask != null) {
+            return Optional.of(byTask);
+        }
+        UUID scanId = null;
+        if (referenceId != null) scanId = index.get(REF + referenceId);
+        if (scanId == null && projectKey != null) scanId = index.get(PROJECT + projectKey);
+        if (scanId == null) return Optional.empty();
+
+        // match แบบหลวม: ถ้า scan รู้ taskId ของตัวเองแล้วและไม่ตรงกับ webhook = คนละ analysis
+        Pending pending = byScan.get(scanId);
+        if (pending == null) return Optional.empty();
+        if (ceTaskId != null && pending.ceTaskId != null && !ceTaskId.equals(pending.ceTaskId)) {
+            return Optional.empty();
+        }
+        return Optional.of(scanId);
+    }
+
+    /** เรียกจาก webhook: หา scan ที่รออยู่แล้ว complete; คืน scanId ที่ถูก complete (ถ้ามี) */
+    public Optional<UUID> complete(@Nullable String ceTaskId, @Nullable String referenceId,
+                                   @Nullable String projectKey, String analysisId) {
+        Optional<UUID> scanId = findScanId(ceTaskId, referenceId, projectKey);
+        scanId.ifPresent(id -> {
+            if (complete(id, analysisId)) {
+                log.info("Scan completed by webhook: scanId={}, taskId={}, analysisId={}", id, ceTaskId, analysisId);
+            }
+        });
+        return scanId;
+    }
+
+    public boolean complete(UUID scanId, String analysisId) {
+        Pending pending = remove(scanId);
+        return pending != null && pending.future.complete(analysisId);
+    }
+
+    public void fail(UUID scanId, Throwable cause) {
+        Pending pending = remove(scanId);
+        if (pending != null) {
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
+    public @Nullable Pending remove(UUID scanId) {
+        Pending pending = byScan.remove(scanId);
+        if (pending != null) {
+            index.remove(PROJECT + pending.projectKey, scanId);
+            if (pending.referenceId != null) index.remove(REF + pending.referenceId, scanId);
+            if (pending.ceTaskId != null) index.remove(TASK + pending.ceTaskId, scanId);
+        }
+        return pending;
+    }
+
+    /** ยังรอ webhook/backstop poll อยู่ใน instance นี้ */
+    public boolean isPending(UUID scanId) {
+        return byScan.containsKey(scanId);
+    }
+
+    public int pendingCount() {
+        return byScan.size();
+    }
+
+    private record ModuleEntry(UUID scanId, long registeredAt) {
+    }
+
+    public static final class Pending {
+        private final UUID scanId;
+        private final String projectKey;
+        private final String referenceId;
+        private volatile String ceTaskId;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Pending(UUID scanId, String projectKey, String referenceId) {
+            this.scanId = scanId;
+            this.projectKey = projectKey;
+            this.referenceId = referenceId;
+        }
+
+        public UUID getScanId() { return scanId; }
+        public String getCeTaskId() { return ceTaskId; }
+    }
+}
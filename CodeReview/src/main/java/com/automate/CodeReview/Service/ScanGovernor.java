@@ -0,0 +1,292 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.Models.ScanGovernorModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * admission control ของ scan: ตัดสินว่า scan ไหนได้เริ่มเมื่อไร ก่อนส่งเข้า scanExecutor
+ * - เพดาน global (= scan.worker-pool-size), ต่อ user, ต่อโปรเจกต์
+ * - มี scan รันอยู่แล้ว → ปล่อยเพิ่มเมื่อ CPU/หน่วยความจำว่างพอ (OperatingSystemMXBean) และพ้นช่วง settle
+ *   (ไม่มีอะไรรันเลย → ปล่อยได้เสมอ คิวไม่ค้างตาย)
+ * - คิวแยกต่อ user แล้วหยิบแบบ round-robin: user ที่กด rescan ทีละเยอะไม่แย่งคิวคนอื่น
+ */
+@Slf4j
+@Service
+public class ScanGovernor {
+
+    private static final long MB = 1024L * 1024L;
+
+    private final ScanProperties scanProperties;
+    private final ScanProperties.Governor props;
+    private final ThreadPoolTaskExecutor scanExecutor;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    // ----- state (ใช้ภายใต้ synchronized(this)) -----
+    /** user -> คิวของ user นั้น (FIFO) */
+    private final Map<String, ArrayDeque<Ticket>> queues = new HashMap<>();
+    /** ลำดับ user ที่รอ (หัว = ได้สิทธิ์หยิบก่อน) */
+    private final ArrayDeque<String> rotation = new ArrayDeque<>();
+    private final Map<UUID, Ticket> running = new LinkedHashMap<>();
+    private final Map<String, Integer> runningByUser = new HashMap<>();
+    private final Map<UUID, Integer> runningByProject = new HashMap<>();
+    private int queued;
+    private long lastAdmitNanos;
+
+    // ----- metrics -----
+    private long submitted;
+    private long admitted;
+    private long rejectedQueueFull;
+    private long rejectedUserQueueFull;
+    private long resourceDeferrals;
+    private long totalWaitMs;
+    private long maxWaitMs;
+    private double lastCpuLoad = -1;
+    private long lastFreeMemoryMb = -1;
+
+    public ScanGovernor(ScanProperties scanProperties,
+                        @Qualifier("scanExecutor") ThreadPoolTaskExecutor scanExecutor) {
+        this.scanProperties = scanProperties;
+        this.props = scanProperties.getGovernor();
+        this.scanExecutor = scanExecutor;
+    }
+
+    /** เข้าคิว (เต็ม → 429) แล้วปล่อยทันทีถ้าได้ */
+    public synchronized void enqueue(UUID scanId, UUID projectId, String user, Runnable task) {
+        ArrayDeque<Ticket> userQueue = queues.get(user);
+        if (queued >= scanProperties.getQueueCapacity()) {
+            rejectedQueueFull++;
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Scan queue is full, please try again later");
+        }
+        if (userQueue != null && userQueue.size() >= props.getMaxQueuedPerUser()) {
+            rejectedUserQueueFull++;
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "You already have " + userQueue.size() + " scans waiting, please try again later");
+        }
+
+        if (userQueue == null) {
+            userQueue = new ArrayDeque<>();
+            queues.put(user, userQueue);
+            rotation.addLast(user);
+        }
+        userQueue.addLast(new Ticket(scanId, projectId, user, task, System.nanoTime()));
+        queued++;
+        submitted++;
+        dispatch();
+    }
+
+    /** ลำดับในคิวของ user ตัวเอง (1 = ตัวถัดไปของ user นี้) หรือ null ถ้าไม่ได้รออยู่ */
+    public synchronized Integer queuePosition(UUID scanId) {
+        for (ArrayDeque<Ticket> q : queues.values()) {
+            int pos = 1;
+            for (Ticket t : q) {
+                if (t.scanId.equals(scanId)) {
+                    return pos;
+                }
+                pos++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ยกเลิก scan: ยังรอคิว → ถอดออก (งานไม่ถูกรันเลย) / กำลังรัน → slot คืนตอน worker thread จบเท่านั้น
+     * (ระหว่างนั้น thread ยังอาจอยู่ใน fetch/checkout หรือเก็บกวาด working copy ของโปรเจกต์)
+     * คืน true ถ้าถอดออกจากคิว
+     */
+    public synchronized boolean cancel(UUID scanId) {
+        for (Iterator<Map.Entry<String, ArrayDeque<Ticket>>> it = queues.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, ArrayDeque<Ticket>> entry = it.next();
+            if (entry.getValue().removeIf(t -> t.scanId.equals(scanId))) {
+                queued--;
+                if (entry.getValue().isEmpty()) {
+                    it.remove();
+                    rotation.remove(entry.getKey());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int queueDepth() {
+        return queued;
+    }
+
+    /** ตรวจคิวซ้ำตามรอบ: CPU/หน่วยความจำอาจว่างขึ้นโดยไม่มี scan จบ */
+    @Scheduled(fixedDelayString = "${scan.governor.recheck-interval-ms:5000}")
+    public synchronized void recheck() {
+        if (queued > 0) {
+            dispatch();
+        }
+    }
+
+    public synchronized ScanGovernorModel snapshot() {
+        ScanGovernorModel model = new ScanGovernorModel();
+        model.setRunning(running.size());
+        model.setQueued(queued);
+        model.setMaxConcurrent(scanProperties.getWorkerPoolSize());
+        model.setMaxPerUser(props.getMaxPerUser());
+        model.setMaxPerProject(props.getMaxPerProject());
+        model.setQueueCapacity(scanProperties.getQueueCapacity());
+        Map<String, Integer> queuedByUser = new LinkedHashMap<>();
+        queues.forEach((user, q) -> queuedByUser.put(user, q.size()));
+        model.setQueuedByUser(queuedByUser);
+        model.setRunningByUser(new LinkedHashMap<>(runningByUser));
+        model.setSubmitted(submitted);
+        model.setAdmitted(admitted);
+        model.setRejectedQueueFull(rejectedQueueFull);
+        model.setRejectedUserQueueFull(rejectedUserQueueFull);
+        model.setResourceDeferrals(resourceDeferrals);
+        model.setAvgWaitMs(admitted > 0 ? totalWaitMs / admitted : 0);
+        model.setMaxWaitMs(maxWaitMs);
+        model.setOldestWaitMs(oldestWaitMs());
+        model.setCpuLoad(lastCpuLoad);
+        model.setFreeMemoryMb(lastFreeMemoryMb);
+        return model;
+    }
+
+    // ---------- internals ----------
+
+    private void dispatch() {
+        while (queued > 0 && running.size() < scanProperties.getWorkerPoolSize()) {
+            if (!running.isEmpty() && !hasHeadroom()) {
+                resourceDeferrals++;
+                return;
+            }
+            Ticket ticket = pollNext();
+            if (ticket == null) {
+                return;     // ที่เหลือติดเพดานต่อ user/โปรเจกต์
+            }
+            try {
+                scanExecutor.execute(() -> {
+                    try {
+                        ticket.task.run();
+                    } finally {
+                        release(ticket);
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                // pool ยังไม่คืน thread (เพิ่งจบ) → เอากลับหัวคิว รอบหน้าค่อยลองใหม่
+                queues.computeIfAbsent(ticket.user, u -> {
+                    rotation.addFirst(u);
+                    return new ArrayDeque<>();
+                }).addFirst(ticket);
+                queued++;
+                return;
+            }
+            admit(ticket);
+        }
+    }
+
+    private synchronized void release(Ticket ticket) {
+        if (running.remove(ticket.scanId) == null) {
+            return;
+        }
+        runningByUser.computeIfPresent(ticket.user, (u, n) -> n > 1 ? n - 1 : null);
+        runningByProject.computeIfPresent(ticket.projectId, (p, n) -> n > 1 ? n - 1 : null);
+        lastAdmitNanos = 0;     // มีที่ว่างจริงแล้ว ไม่ต้องรอ settle
+        dispatch();
+    }
+
+    /** round-robin ระหว่าง user: หยิบ ticket แรกของ user ถัดไปที่ยังไม่ชนเพดาน */
+    private Ticket pollNext() {
+        for (int i = rotation.size(); i > 0; i--) {
+            String user = rotation.pollFirst();
+            ArrayDeque<Ticket> q = queues.get(user);
+            Ticket picked = null;
+            if (runningByUser.getOrDefault(user, 0) < props.getMaxPerUser()) {
+                for (Iterator<Ticket> it = q.iterator(); it.hasNext(); ) {
+                    Ticket t = it.next();
+                    if (runningByProject.getOrDefault(t.projectId, 0) < props.getMaxPerProject()) {
+                        it.remove();
+                        picked = t;
+                        break;
+                    }
+                }
+            }
+            if (q.isEmpty()) {
+                queues.remove(user);
+            } else {
+                rotation.addLast(user);
+            }
+            if (picked != null) {
+                queued--;
+                return picked;
+            }
+        }
+        return null;
+    }
+
+    private void admit(Ticket ticket) {
+        running.put(ticket.scanId, ticket);
+        runningByUser.merge(ticket.user, 1, Integer::sum);
+        runningByProject.merge(ticket.projectId, 1, Integer::sum);
+        lastAdmitNanos = System.nanoTime();
+
+        long waitMs = TimeUnit.NANOSECONDS.toMillis(lastAdmitNanos - ticket.enqueuedNanos);
+        admitted++;
+        totalWaitMs += waitMs;
+        maxWaitMs = Math.max(maxWaitMs, waitMs);
+        log.info("Admitted scan {} (user={}, waited {} ms, running={}, queued={})",
+                ticket.scanId, ticket.user, waitMs, running.size(), queued);
+    }
+
+    private boolean hasHeadroom() {
+        if (lastAdmitNanos != 0
+                && System.nanoTime() - lastAdmitNanos < TimeUnit.MILLISECONDS.toNanos(props.getAdmissionSettleMs())) {
+            return false;
+        }
+        double cpu;
+        long freeMb;
+        if (os instanceof com.sun.management.OperatingSystemMXBean sun) {
+            cpu = sun.getCpuLoad();
+            freeMb = sun.getFreeMemorySize() / MB;
+        } else {
+            double load = os.getSystemLoadAverage();
+            cpu = load < 0 ? -1 : load / os.getAvailableProcessors();
+            freeMb = -1;
+        }
+        lastCpuLoad = cpu;
+        lastFreeMemoryMb = freeMb;
+        // อ่านค่าไม่ได้ (-1) = ไม่ใช้เกณฑ์นั้น
+        boolean cpuOk = cpu < 0 || cpu <= props.getMaxCpuLoad();
+        boolean memOk = freeMb < 0 || freeMb >= props.getMinFreeMemoryMb();
+        if (!cpuOk || !memOk) {
+            log.debug("Scan admission deferred: cpu={}, freeMemoryMb={}", cpu, freeMb);
+        }
+        return cpuOk && memOk;
+    }
+
+    private long oldestWaitMs() {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (ArrayDeque<Ticket> q : queues.values()) {
+            Ticket head = q.peekFirst();
+            if (head != null) {
+                oldest = Math.max(oldest, TimeUnit.NANOSECONDS.toMillis(now - head.enqueuedNanos));
+            }
+        }
+        return oldest;
+    }
+
+    private record Ticket(UUID scanId, UUID projectId, String user, Runnable task, long enqueuedNanos) {
+    }
+}
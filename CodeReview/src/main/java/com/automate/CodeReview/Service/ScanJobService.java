@@ -0,0 +1,225 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.Models.ScanJobModel;
+import com.automate.CodeReview.Service.runner.ScanRunner;
+import com.automate.CodeReview.entity.ScansEntity;
+import com.automate.CodeReview.repository.ScansRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * คิวงาน scan: รับ request แล้วตอบกลับทันที ส่วนงานหนัก (clone/build/sonar) ไปรันบน scanExecutor
+ * - 1 โปรเจกต์มี scan ที่ QUEUED/RUNNING ได้แค่ตัวเดียว ถ้ายิงซ้ำจะได้ scanId เดิมกลับไป (merged)
+ * - ลำดับการเริ่ม/เพดานต่อ user, โปรเจกต์ และ CPU/หน่วยความจำ → ScanGovernor (คิวเต็ม → 429)
+ * - cancel: ฆ่า process ของสคริปต์ทั้งต้นไม้ แล้วปิด scan เป็น CANCELLED
+ *   job ที่ worker ยังไม่คลายตัว (อยู่ใน fetch/checkout ถึง checkpoint หรือเก็บกวาด) เป็น CANCELLING ถือโปรเจกต์
+ *   และ slot ไว้จน run() จบ → submit ซ้ำได้ 409 แทนการรันทับ working copy เดียวกัน
+ */
+@Slf4j
+@Service
+public class ScanJobService {
+
+    /** ยกเลิกแล้วแต่ worker ยังไม่ออกจาก run() */
+    private static final String CANCELLING = "CANCELLING";
+
+    private final ScanService scanService;
+    private final ScansRepository scansRepository;
+    private final ScanGovernor scanGovernor;
+    private final ScanProcessRegistry scanProcesses;
+    private final ScanRunner scanRunner;
+    private final ScanProperties scanProperties;
+
+    /** projectId -> job ที่ยังไม่จบ (ใช้ merge request ซ้ำ) */
+    private final Map<UUID, ScanJob> activeByProject = new ConcurrentHashMap<>();
+    /** scanId -> job ที่ยังไม่จบ (ใช้ตอบ status endpoint) */
+    private final Map<UUID, ScanJob> activeByScan = new ConcurrentHashMap<>();
+
+    public ScanJobService(ScanService scanService,
+                          ScansRepository scansRepository,
+                          ScanGovernor scanGovernor,
+                          ScanProcessRegistry scanProcesses,
+                          ScanRunner scanRunner,
+                          ScanProperties scanProperties) {
+        this.scanService = scanService;
+        this.scansRepository = scansRepository;
+        this.scanGovernor = scanGovernor;
+        this.scanProcesses = scanProcesses;
+        this.scanRunner = scanRunner;
+        this.scanProperties = scanProperties;
+    }
+
+    /** requestedBy = คนที่กด scan (ใช้แบ่งคิว/เพดานต่อ user), diff = วิเคราะห์เฉพาะไฟล์ที่เปลี่ยน */
+    public synchronized ScanJobModel submit(UUID projectId, String username, String password, boolean force,
+                                            boolean diff, String requestedBy) {
+        ScanJob existing = activeByProject.get(projectId);
+        if (existing != null && CANCELLING.equals(existing.status)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Previous scan " + existing.scanId + " is still stopping, please try again shortly");
+        }
+        if (existing != null) {
+            log.info("Scan already {} for project {}, merged into scanId={}", existing.status, projectId, existing.scanId);
+            return toModel(existing, true);
+        }
+
+        ScansEntity scan = scanService.createQueuedScan(projectId);
+        ScanJob job = new ScanJob(scan.getScanId(), projectId);
+        activeByProject.put(projectId, job);
+        activeByScan.put(job.scanId, job);
+
+        try {
+            scanGovernor.enqueue(job.scanId, projectId, requestedBy, () -> run(job, username, password, force, diff));
+        } catch (ResponseStatusException e) {
+            activeByProject.remove(projectId);
+            activeByScan.remove(job.scanId);
+            scansRepository.deleteById(job.scanId);
+            log.warn("Scan rejected for project {} (user={}): {}", projectId, requestedBy, e.getReason());
+            throw e;
+        }
+
+        log.info("Queued scan {} for project {} (queue size={})", job.scanId, projectId, queueSize());
+        return toModel(job, false);
+    }
+
+    public ScanJobModel getStatus(UUID scanId) {
+        ScanJob job = activeByScan.get(scanId);
+        if (job != null) {
+            return toModel(job, false);
+        }
+
+        ScansEntity scan = scansRepository.findById(scanId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Scan not found"));
+        ScanJobModel model = new ScanJobModel();
+        model.setScanId(scan.getScanId());
+        model.setProjectId(scan.getProject().getProjectId());
+        model.setStatus(scan.getStatus());
+        model.setSubmittedAt(scan.getStartedAt());
+        model.setStartedAt(scan.getStartedAt());
+        model.setCompletedAt(scan.getCompletedAt());
+        return model;
+    }
+
+    /**
+     * ยกเลิก scan ที่ยังไม่จบ (QUEUED/RUNNING) อย่างอื่น → 409
+     * RUNNING: ฆ่าสคริปต์ทุกตัวของ scan (ทุก module) พร้อมลูกหลาน ส่วนที่ยังอยู่ในขั้น clone หยุดที่ checkpoint ของ JGit
+     * → job เป็น CANCELLING จน worker ออกจาก run() (ปล่อยโปรเจกต์/slot ตอนนั้น) ส่วน scan ใน DB เป็น CANCELLED ทันที
+     * cancelMs = ตั้งแต่รับคำสั่งจน process ตายหมด
+     */
+    public synchronized ScanJobModel cancel(UUID scanId, String requestedBy) {
+        ScanJob job = activeByScan.get(scanId);
+        if (job == null || CANCELLING.equals(job.status)) {
+            ScansEntity scan = scansRepository.findById(scanId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Scan not found"));
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Scan is not running (status " + (job != null ? job.status : scan.getStatus()) + ")");
+        }
+
+        long started = System.nanoTime();
+        String previousStatus = job.status;
+        List<Process> processes = scanProcesses.markCancelled(scanId);
+        boolean dequeued = scanGovernor.cancel(scanId);
+
+        Duration grace = Duration.ofMillis(scanProperties.getRunner().getKillGraceMs());
+        int killed = 0;
+        for (Process p : processes) {
+            killed += scanRunner.destroyTree(p, grace);
+        }
+        long cancelMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        if (dequeued) {
+            // ไม่เคยได้รัน ไม่มี worker มาเก็บกวาด
+            job.status = "CANCELLED";
+            job.completedAt = LocalDateTime.now();
+            activeByProject.remove(job.projectId, job);
+            activeByScan.remove(scanId, job);
+            scanProcesses.clear(scanId);
+        } else {
+            job.status = CANCELLING;
+        }
+        scanService.markCancelled(scanId, job.projectId, requestedBy, cancelMs);
+        log.info("Scan {} cancelled by {} (was {}, killed {} processes in {} ms)",
+                scanId, requestedBy, previousStatus, killed, cancelMs);
+
+        ScanJobModel model = toModel(job, false);
+        model.setKilledProcesses(killed);
+        model.setCancelMs(cancelMs);
+        return model;
+    }
+
+    /** scan นี้ยังอยู่ในคิว/worker ของ instance นี้ (ScanReconciler ห้ามแตะ) */
+    public boolean isActive(UUID scanId) {
+        return activeByScan.containsKey(scanId);
+    }
+
+    public int queueSize() {
+        return scanGovernor.queueDepth();
+    }
+
+    private void run(ScanJob job, String username, String password, boolean force, boolean diff) {
+        try {
+            synchronized (this) {
+                if (scanProcesses.isCancelled(job.scanId)) {
+                    return;     // ยกเลิกระหว่างส่งเข้า executor
+                }
+                job.status = "RUNNING";
+                job.startedAt = LocalDateTime.now();
+            }
+            Map<String, Object> result = scanService.executeScan(job.scanId, username, password, force, diff);
+            job.status = String.valueOf(result.get("status"));
+        } catch (Exception e) {
+            job.status = "FAILED";
+            log.error("Scan job failed: scanId={}, project={}", job.scanId, job.projectId, e);
+        } finally {
+            finish(job);
+        }
+    }
+
+    /** worker ออกจาก working copy แล้ว → ปล่อยโปรเจกต์ให้ submit ถัดไป (slot ของ governor คืนต่อจากนี้) */
+    private synchronized void finish(ScanJob job) {
+        if (scanProcesses.isCancelled(job.scanId)) {
+            job.status = "CANCELLED";
+        }
+        scanProcesses.clear(job.scanId);
+        job.completedAt = LocalDateTime.now();
+        activeByProject.remove(job.projectId, job);
+        activeByScan.remove(job.scanId, job);
+    }
+
+    private ScanJobModel toModel(ScanJob job, boolean merged) {
+        ScanJobModel model = new ScanJobModel();
+        model.setScanId(job.scanId);
+        model.setProjectId(job.projectId);
+        model.setStatus(job.status);
+        model.setMerged(merged);
+        model.setQueuePosition("QUEUED".equals(job.status) ? scanGovernor.queuePosition(job.scanId) : null);
+        model.setSubmittedAt(job.submittedAt);
+        model.setStartedAt(job.startedAt);
+        model.setCompletedAt(job.completedAt);
+        return model;
+    }
+
+    /** สถานะในหน่วยความจำของ scan ที่ยังไม่จบ */
+    private static final class ScanJob {
+        private final UUID scanId;
+        private final UUID projectId;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private volatile String status = "QUEUED";
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime completedAt;
+
+        private ScanJob(UUID scanId, UUID projectId) {
+            this.scanId = scanId;
+            this.projectId = projectId;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.automate.CodeReview.Service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * process ของสคริปต์ scan ที่กำลังรัน (ต่อ scanId อาจมีหลายตัวตอน monorepo) + ธงยกเลิก
+ * ScanService ลงทะเบียนทุก process ที่ start และเช็ก checkCancelled() ระหว่างขั้น
+ * ScanJobService.cancel() ตั้งธงแล้วเอารายชื่อ process ไปฆ่าทั้งต้นไม้
+ */
+@Component
+public class ScanProcessRegistry {
+
+    private final Map<UUID, Set<Process>> processes = new ConcurrentHashMap<>();
+    private final Set<UUID> cancelled = ConcurrentHashMap.newKeySet();
+
+    /** false = scan ถูกยกเลิกไปแล้ว ผู้เรียกต้องฆ่า process นี้เอง */
+    public boolean register(UUID scanId, Process process) {
+        processes.computeIfAbsent(scanId, id -> ConcurrentHashMap.newKeySet()).add(process);
+        return !cancelled.contains(scanId);
+    }
+
+    public void unregister(UUID scanId, Process process) {
+        processes.computeIfPresent(scanId, (id, set) -> {
+            set.remove(process);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /** ตั้งธงยกเลิก แล้วคืน process ที่ยังรันอยู่ของ scan นี้ */
+    public List<Process> markCancelled(UUID scanId) {
+        cancelled.add(scanId);
+        Set<Process> running = processes.get(scanId);
+        return running == null ? List.of() : running.stream().filter(Process::isAlive).toList();
+    }
+
+    public boolean isCancelled(UUID scanId) {
+        return cancelled.contains(scanId);
+    }
+
+    /** จุดตรวจระหว่างขั้นของ scan: ถูกยกเลิกแล้ว → CancellationException */
+    public void checkCancelled(UUID scanId) {
+        if (cancelled.contains(scanId)) {
+            throw new CancellationException("Scan " + scanId + " was cancelled");
+        }
+    }
+
+    /** เรียกตอน job จบ (ไม่ว่าผลไหน) */
+    public void clear(UUID scanId) {
+        cancelled.remove(scanId);
+        processes.remove(scanId);
+    }
+}
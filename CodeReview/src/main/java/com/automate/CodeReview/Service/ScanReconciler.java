@@ -0,0 +1,348 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.entity.ScansEntity;
+import com.automate.CodeReview.repository.ScansRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ตามปิด scan ที่ค้าง: แอปล่ม/restart กลาง scan → แถวค้าง QUEUED/RUNNING หรือ COMPLETED+PENDING (webhook มาตอนแอปดับ)
+ * - ค้าง = เริ่มก่อนแอป start (ไม่มี worker/registry ถืออยู่แล้ว) หรือเก่ากว่า scan.reconcile.stale-after-minutes
+ * - ถาม CE ว่าเกิดอะไรจริง: มี ce_task_id → /api/ce/task, ไม่มี → /api/ce/activity ของโปรเจกต์ระหว่างเวลาเริ่ม scan กับ scan ถัดไป
+ *   SUCCESS → ปิดด้วยขั้นตอนเดียวกับ webhook (SonarWebhookService.reconcile) รวม import issue
+ *   FAILED/CANCELED หรือไม่มี task เลย → FAILED, PENDING/IN_PROGRESS → รอรอบหน้า
+ * - ไล่เป็น batch (keyset ตาม started_at) เพดานต่อรอบ max-per-run และเว้นระยะทุกการเรียก SonarQube
+ *   backlog หลักร้อยจึงค่อย ๆ หมดไปหลายรอบ ไม่ยิง SonarQube รัว
+ */
+@Slf4j
+@Service
+public class ScanReconciler {
+
+    private static final String STALE_SQL = """
+            SELECT s.scan_id, s.status, s.started_at, s.ce_task_id, p.sonar_project_key
+            FROM scans s JOIN projects p ON p.project_id = s.project_id
+            WHERE (s.status IN ('QUEUED', 'RUNNING') OR (s.status = 'COMPLETED' AND s.quality_gate = 'PENDING'))
+              AND s.started_at < ? AND (s.started_at, s.scan_id) > (?, ?)
+            ORDER BY s.started_at, s.scan_id
+            LIMIT ?
+            """;
+
+    private static final String FAIL_SQL = """
+            UPDATE scans SET status = 'FAILED', quality_gate = 'FAILED', completed_at = now()
+            WHERE scan_id = ? AND (status IN ('QUEUED', 'RUNNING') OR (status = 'COMPLETED' AND quality_gate = 'PENDING'))
+            """;
+
+    /** scan ถัดไปของโปรเจกต์เดียวกัน: task ที่ส่งหลังเวลานี้เป็นของ scan นั้น ไม่ใช่ของ scan ที่ค้าง */
+    private static final String NEXT_SCAN_SQL = """
+            SELECT min(started_at) FROM scans
+            WHERE project_id = (SELECT project_id FROM scans WHERE scan_id = ?) AND started_at > ?
+            """;
+
+    private static final DateTimeFormatter SONAR_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WebClient sonarWebClient;
+    private final SonarWebhookService sonarWebhookService;
+    private final ScanJobService scanJobService;
+    private final ScanCompletionRegistry completionRegistry;
+    private final ScansRepository scansRepository;
+    private final NotiService notiService;
+    private final ScanProperties.Reconcile props;
+    private final ThreadPoolTaskExecutor reconcileExecutor;
+
+    /** scan ที่เริ่มก่อนเวลานี้ไม่มีใครถืออยู่แล้ว (state ในหน่วยความจำหายไปกับ process เดิม) */
+    private final LocalDateTime bootTime = LocalDateTime.now();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private long lastRequestNanos;
+
+    public ScanReconciler(JdbcTemplate jdbcTemplate, WebClient sonarWebClient, SonarWebhookService sonarWebhookService,
+                          ScanJobService scanJobService, ScanCompletionRegistry completionRegistry,
+                          ScansRepository scansRepository, NotiService notiService, ScanProperties scanProperties,
+                          @Qualifier("scanReconcileExecutor") ThreadPoolTaskExecutor reconcileExecutor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sonarWebClient = sonarWebClient;
+        this.sonarWebhookService = sonarWebhookService;
+        this.scanJobService = scanJobService;
+        this.completionRegistry = completionRegistry;
+        this.scansRepository = scansRepository;
+        this.notiService = notiService;
+        this.props = scanProperties.getReconcile();
+        this.reconcileExecutor = reconcileExecutor;
+    }
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    /** เริ่มรอบใหม่บน scanReconcileExecutor (มีรอบที่ยังไม่จบ → ข้าม) */
+    public void trigger(String reason) {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Scan reconcile ({}) skipped, previous run still in progress", reason);
+            return;
+        }
+        try {
+            reconcileExecutor.execute(() -> {
+                try {
+                    reconcile(reason);
+                } catch (Exception e) {
+                    log.error("Scan reconcile ({}) failed", reason, e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private void reconcile(String reason) {
+        LocalDateTime staleBefore = LocalDateTime.now().minusMinutes(props.getStaleAfterMinutes());
+        Timestamp cutoff = Timestamp.valueOf(staleBefore.isAfter(bootTime) ? staleBefore : bootTime);
+
+        Counts counts = new Counts();
+        Timestamp afterStartedAt = new Timestamp(0L);
+        UUID afterScanId = MIN_UUID;
+        while (counts.examined < props.getMaxPerRun()) {
+            int limit = Math.min(props.getBatchSize(), props.getMaxPerRun() - counts.examined);
+            List<StaleScan> batch = jdbcTemplate.query(STALE_SQL, (rs, i) -> new StaleScan(
+                    rs.getObject("scan_id", UUID.class),
+                    rs.getString("status"),
+                    rs.getTimestamp("started_at"),
+                    rs.getString("ce_task_id"),
+                    rs.getString("sonar_project_key")
+            ), cutoff, afterStartedAt, afterScanId, limit);
+
+            for (StaleScan scan : batch) {
+                counts.examined++;
+                try {
+                    counts.add(reconcileOne(scan));
+                } catch (Exception e) {
+                    counts.errors++;
+                    log.warn("Cannot reconcile scan {}: {}", scan.scanId(), e.toString());
+                }
+            }
+            if (batch.size() < limit) {
+                break;
+            }
+            StaleScan last = batch.get(batch.size() - 1);
+            afterStartedAt = last.startedAt();
+            afterScanId = last.scanId();
+        }
+
+        if (counts.examined > 0) {
+            log.info("Scan reconcile ({}): examined={}, success={}, failed={}, waiting={}, skipped={}, errors={}",
+                    reason, counts.examined, counts.success, counts.failed, counts.waiting, counts.skipped, counts.errors);
+        }
+    }
+
+    private Outcome reconcileOne(StaleScan scan) throws Exception {
+        // ยังมีเจ้าของใน instance นี้ (คิวยาว/build นาน/รอ backstop poll) → ไม่ใช่ของค้าง
+        if (scanJobService.isActive(scan.scanId()) || completionRegistry.isPending(scan.scanId())) {
+            return Outcome.SKIPPED;
+        }
+        // ยังไม่เคยได้รัน → ไม่มีอะไรใน SonarQube ให้ถาม
+        if ("QUEUED".equals(scan.status())) {
+            return fail(scan, "never started before restart");
+        }
+        if (scan.projectKey() == null) {
+            return fail(scan, "project has no Sonar project key");
+        }
+
+        CeTask task = scan.ceTaskId() != null ? fetchTask(scan.ceTaskId()) : findTaskSince(scan);
+        if (task == null) {
+            return fail(scan, "no CE task found");
+        }
+        switch (task.status()) {
+            case "SUCCESS" -> {
+                if (task.analysisId() == null) {
+                    return fail(scan, "CE task " + task.id() + " has no analysis");
+                }
+                throttle();
+                try {
+                    sonarWebhookService.reconcile(scan.scanId(), scan.projectKey(), task.id(), task.analysisId());
+                } catch (Exception e) {
+                    // process() ไม่แตะ scan อื่นตอน reconcile: ปิดแถวนี้เองด้วย FAIL_SQL
+                    return fail(scan, "applying analysis " + task.analysisId() + " failed: " + e);
+                }
+                ScansEntity finished = scansRepository.findById(scan.scanId()).orElse(null);
+                if (finished == null || !"SUCCESS".equals(finished.getStatus())) {
+                    return fail(scan, "analysis " + task.analysisId() + " was not applied");
+                }
+                importModuleIssues(finished);
+                log.info("Reconciled scan {} from CE task {} (analysis {})", scan.scanId(), task.id(), task.analysisId());
+                return Outcome.SUCCESS;
+            }
+            case "FAILED", "CANCELED" -> {
+                return fail(scan, "CE task " + task.id() + " " + task.status());
+            }
+            default -> {
+                return Outcome.WAITING;      // PENDING / IN_PROGRESS: CE ยังทำอยู่ รอบหน้าค่อยดู
+            }
+        }
+    }
+
+    /** module รองของ monorepo: webhook ของแต่ละ key หายไปด้วย → ดึง issue ของ module ที่ analyse ผ่าน */
+    private void importModuleIssues(ScansEntity scan) {
+        if (scan.getModules() == null) {
+            return;
+        }
+        for (Map<String, Object> module : scan.getModules()) {
+            Object key = module.get("sonarProjectKey");
+            if (key != null && !Boolean.TRUE.equals(module.get("primary")) && "SUCCESS".equals(module.get("status"))) {
+                throttle();
+                sonarWebhookService.importModuleIssues(key.toString(), scan.getScanId());
+            }
+        }
+    }
+
+    private Outcome fail(StaleScan scan, String why) {
+        if (jdbcTemplate.update(FAIL_SQL, scan.scanId()) == 0) {
+            return Outcome.SKIPPED;          // มีคนปิดไปก่อนแล้ว (webhook/ยกเลิก)
+        }
+        log.warn("Reconciled scan {} ({}) as FAILED: {}", scan.scanId(), scan.status(), why);
+        scansRepository.findById(scan.scanId()).ifPresent(s ->
+                notiService.scanNotiAsync(s.getScanId(), s.getProject().getProjectId(), "Scan Failed! Please try again."));
+        return Outcome.FAILED;
+    }
+
+    /** /api/ce/task; ไม่พบ task (ถูกล้างไปแล้ว) → null */
+    private @Nullable CeTask fetchTask(String ceTaskId) {
+        throttle();
+        JsonNode n = sonarWebClient.get()
+                .uri(u -> u.path("/api/ce/task").queryParam("id", ceTaskId).build())
+                .retrieve()
+                .onStatus(s -> s.value() == 404, r -> r.releaseBody().then(Mono.empty()))
+                .bodyToMono(JsonNode.class)
+                .block(Duration.ofSeconds(30));
+        return n != null && n.has("task") ? toTask(n.path("task")) : null;
+    }
+
+    /**
+     * ไม่มี ce_task_id (แอปล่มก่อนอ่าน report-task.txt): task REPORT ของโปรเจกต์ที่ส่งหลัง scan เริ่ม
+     * และก่อน scan ถัดไปของโปรเจกต์เริ่ม เอาตัวที่เก่าสุด
+     * มี scan ใหม่กว่าแล้วแต่ไม่มี task ในช่วงนั้น = scan นี้ตายก่อน upload (task ที่เห็นเป็นของ scan ใหม่)
+     */
+    private @Nullable CeTask findTaskSince(StaleScan scan) {
+        String projectKey = scan.projectKey();
+        Timestamp nextStartedAt = jdbcTemplate.queryForObject(NEXT_SCAN_SQL, Timestamp.class,
+                scan.scanId(), scan.startedAt());
+        throttle();
+        String since = scan.startedAt().toLocalDateTime().atZone(ZoneId.systemDefault()).format(SONAR_DATE);
+        JsonNode n = sonarWebClient.get()
+                .uri(u -> u.path("/api/ce/activity")
+                        .queryParam("component", projectKey)
+                        .queryParam("type", "REPORT")
+                        .queryParam("minSubmittedAt", since)
+                        .queryParam("ps", 100)
+                        .build())
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .block(Duration.ofSeconds(30));
+        JsonNode tasks = n != null ? n.path("tasks") : null;
+        if (tasks != null && tasks.isArray()) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {   // เรียงใหม่ → เก่า
+                if (submittedBefore(tasks.get(i), nextStartedAt)) {
+                    return toTask(tasks.get(i));
+                }
+            }
+        }
+        if (nextStartedAt != null) {
+            return null;
+        }
+        // activity มีเฉพาะ task ที่จบแล้ว: ยังอยู่ในคิว CE → รอรอบหน้า
+        return hasQueuedTask(projectKey) ? new CeTask(null, "PENDING", null) : null;
+    }
+
+    private static boolean submittedBefore(JsonNode task, @Nullable Timestamp bound) {
+        if (bound == null) {
+            return true;
+        }
+        String submittedAt = task.path("submittedAt").asText("");
+        if (submittedAt.isEmpty()) {
+            return false;
+        }
+        return OffsetDateTime.parse(submittedAt, SONAR_DATE).toInstant().isBefore(bound.toInstant());
+    }
+
+    private boolean hasQueuedTask(String projectKey) {
+        throttle();
+        JsonNode n = sonarWebClient.get()
+                .uri(u -> u.path("/api/ce/component").queryParam("component", projectKey).build())
+                .retrieve()
+                .onStatus(s -> s.value() == 404, r -> r.releaseBody().then(Mono.empty()))
+                .bodyToMono(JsonNode.class)
+                .block(Duration.ofSeconds(30));
+        JsonNode queue = n != null ? n.path("queue") : null;
+        return queue != null && queue.isArray() && !queue.isEmpty();
+    }
+
+    private static CeTask toTask(JsonNode t) {
+        String analysisId = t.path("analysisId").asText(null);
+        return new CeTask(t.path("id").asText(null), t.path("status").asText(""),
+                (analysisId != null && !analysisId.isBlank()) ? analysisId : null);
+    }
+
+    /** เว้นระยะขั้นต่ำระหว่างการเรียก SonarQube (รันบน thread เดียวของ scanReconcileExecutor) */
+    private void throttle() {
+        long interval = Duration.ofMillis(props.getMinRequestIntervalMs()).toNanos();
+        long wait = lastRequestNanos + interval - System.nanoTime();
+        if (lastRequestNanos != 0 && wait > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("reconcile interrupted", e);
+            }
+        }
+        lastRequestNanos = System.nanoTime();
+    }
+
+    private record StaleScan(UUID scanId, String status, Timestamp startedAt, @Nullable String ceTaskId,
+                             @Nullable String projectKey) {
+    }
+
+    private record CeTask(@Nullable String id, String status, @Nullable String analysisId) {
+    }
+
+    private enum Outcome { SUCCESS, FAILED, WAITING, SKIPPED }
+
+    private static final class Counts {
+        private int examined;
+        private int success;
+        private int failed;
+        private int waiting;
+        private int skipped;
+        private int errors;
+
+        private void add(Outcome outcome) {
+            switch (outcome) {
+                case SUCCESS -> success++;
+                case FAILED -> failed++;
+                case WAITING -> waiting++;
+                case SKIPPED -> skipped++;
+            }
+        }
+    }
+}
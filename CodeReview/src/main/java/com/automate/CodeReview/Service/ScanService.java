@@ -1,27 +1,44 @@
 package com.automate.CodeReview.Service;
 
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.Controller.SseController;
+import com.automate.CodeReview.Service.git.GitProgress;
+import com.automate.CodeReview.Service.runner.ScanRunner;
+import com.automate.CodeReview.Service.scanlog.ScanLogAppender;
+import com.automate.CodeReview.Service.scanlog.ScanLogReader;
+import com.automate.CodeReview.Service.scanlog.ScanLogStreamService;
 import com.automate.CodeReview.Models.ScanLogModel;
 import com.automate.CodeReview.Models.ScanModel;
+import com.automate.CodeReview.entity.AnalysisProfile;
 import com.automate.CodeReview.entity.ProjectsEntity;
 import com.automate.CodeReview.entity.ScansEntity;
 import com.automate.CodeReview.entity.UsersEntity;
 import com.automate.CodeReview.repository.ProjectsRepository;
 import com.automate.CodeReview.repository.ScansRepository;
 import com.automate.CodeReview.repository.UsersRepository;
+import com.automate.CodeReview.util.TokenHashUtils;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Nullable;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -53,14 +70,39 @@ public class ScanService {
     private final NotiService notiService;
     private final WebClient sonarWebClient;
     private final UsersRepository userRepository;
-
-
-    private static final String BASE_DIR = "C:\\gitpools";
-    private static final String SCRIPT_FILENAME = "run_sonar.bat";
-    private static final String LOG_BASE = "C:\\scan-logs";
+    private final ScanCompletionRegistry completionRegistry;
+    private final ScanProperties scanProperties;
+    private final SseController sseController;
+    private final ScanLogReader scanLogReader;
+    private final ScanLogStreamService scanLogStream;
+    private final BuildCacheService buildCacheService;
+    private final ObjectMapper objectMapper;
+    private final DiffScanService diffScanService;
+    private final ModuleDiscovery moduleDiscovery;
+    private final ThreadPoolTaskExecutor scanModuleExecutor;
+    private final ScanRunner scanRunner;
+    private final ScanProcessRegistry scanProcesses;
+    private final ScanTimelineService scanTimeline;
+    private final WorkspaceManager workspaceManager;
+
+    /** เปลี่ยนเมื่อ script/ขั้นตอน scan เปลี่ยนจนผลของ commit เดิมใช้ซ้ำไม่ได้ */
+    private static final String SCAN_CONFIG_VERSION = "1";
+    /** copy issue ของ scan ก่อนหน้า (เหมือนที่ import จาก Sonar: ไม่มีผู้รับผิดชอบ/due date) */
+    private static final String COPY_ISSUES_SQL = """
+            INSERT INTO issues (issues_id, scan_id, issue_key, type, severity, component, message, status, created_at)
+            SELECT gen_random_uuid(), ?, issue_key, type, severity, component, message, status, now()
+            FROM issues WHERE scan_id = ?
+            """;
     private final JdbcTemplate jdbcTemplate;
 
-    public ScanService(ScansRepository scanRepository, ProjectsRepository projectRepository, RepositoryService repositoryService, WebClient sonarWebClient, JdbcTemplate jdbcTemplate, NotiService notiService,UsersRepository userRepository) {
+    public ScanService(ScansRepository scanRepository, ProjectsRepository projectRepository, RepositoryService repositoryService, WebClient sonarWebClient, JdbcTemplate jdbcTemplate, NotiService notiService, UsersRepository userRepository,
+                       ScanCompletionRegistry completionRegistry, ScanProperties scanProperties, SseController sseController,
+                       ScanLogReader scanLogReader, ScanLogStreamService scanLogStream,
+                       BuildCacheService buildCacheService, ObjectMapper objectMapper, DiffScanService diffScanService,
+                       ModuleDiscovery moduleDiscovery,
+                       @Qualifier("scanModuleExecutor") ThreadPoolTaskExecutor scanModuleExecutor,
+                       ScanRunner scanRunner, ScanProcessRegistry scanProcesses,
+                       ScanTimelineService scanTimeline, WorkspaceManager workspaceManager) {
         this.scanRepository = scanRepository;
         this.projectRepository = projectRepository;
         this.repositoryService = repositoryService;
@@ -68,25 +110,37 @@ public class ScanService {
         this.jdbcTemplate = jdbcTemplate;
         this.notiService = notiService;
         this.userRepository = userRepository;
+        this.completionRegistry = completionRegistry;
+        this.scanProperties = scanProperties;
+        this.sseController = sseController;
+        this.scanLogReader = scanLogReader;
+        this.scanLogStream = scanLogStream;
+        this.buildCacheService = buildCacheService;
+        this.objectMapper = objectMapper;
+        this.diffScanService = diffScanService;
+        this.moduleDiscovery = moduleDiscovery;
+        this.scanModuleExecutor = scanModuleExecutor;
+        this.scanRunner = scanRunner;
+        this.scanProcesses = scanProcesses;
+        this.scanTimeline = scanTimeline;
+        this.workspaceManager = workspaceManager;
     }
 
     // ส่วนของ startScan
     @Value("${app.sonar.token}")
     private String sonarToken;
 
-    @Value("${scan.logs.directory:C:/scan-logs}")
-    private String scanLogsDirectory;
 
 
 
-    public Map<String, Object> startScan(UUID projectId, String username, String password) {
-//        log.info("Starting scan for project: {}", projectId);
-
+    /**
+     * สร้าง scan record สถานะ QUEUED (เรียกจาก ScanJobService ตอนรับ request)
+     */
+    public ScansEntity createQueuedScan(UUID projectId) {
         // 1. ดึงข้อมูล project
         ProjectsEntity project = projectRepository.findById(projectId)
-                .orElseThrow(() -> new RuntimeException("Project not found with ID: " + projectId));
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Project not found with ID: " + projectId));
 
-        String oldClonePath = project.getClonePath();
         String sonarProjectKey = project.getSonarProjectKey();
 
         String referenceId = String.format("%s_%d_%d",
@@ -98,59 +152,170 @@ public class ScanService {
         //สร้าง entity
         ScansEntity scan = new ScansEntity();
         scan.setProject(project);
-        scan.setStatus("RUNNING");
+        scan.setStatus("QUEUED");
         scan.setQualityGate("PENDING");
         scan.setStartedAt(LocalDateTime.now());
         scan.setReferenceId(referenceId);
         scan = scanRepository.save(scan);
 
-        UUID scanId = scan.getScanId();
-//        log.info("Created scan record with ID: {}, reference: {}", scanId, referenceId);
-
         //สร้าง log path จาก scanId (เก็บใน folder ของโปรเจ็ก)
-        String logFileName = String.format("scan_%s.log", scanId);
-        Path logFilePath = Paths.get(scanLogsDirectory, sonarProjectKey, logFileName);
+        String logFileName = String.format("scan_%s.log", scan.getScanId());
+        Path logFilePath = Paths.get(scanProperties.getLogs().getDirectory(), sonarProjectKey, logFileName);
 
         scan.setLogFilePath(logFilePath.toString());
-        scanRepository.save(scan);
+        return scanRepository.save(scan);
+    }
+
+    /**
+     * รัน scan จริง (clone → build → sonar) บน scan worker thread
+     * force = false และ commit/config ไม่เปลี่ยนจาก scan ที่สำเร็จล่าสุด → ยกผลเดิมมาแทน (ไม่ build/ไม่ส่ง Sonar)
+     * diff = true → วิเคราะห์เฉพาะไฟล์ที่เปลี่ยนจาก scan นั้น (DiffScanService) ไม่ได้ก็ scan เต็ม
+     */
+    public Map<String, Object> executeScan(UUID scanId, String username, String password, boolean force, boolean diff) {
+        ScansEntity scan = scanRepository.findById(scanId)
+                .orElseThrow(() -> new IllegalStateException("Scan not found: " + scanId));
+        ProjectsEntity project = projectRepository.findById(scan.getProject().getProjectId())
+                .orElseThrow(() -> new IllegalStateException("Project not found for scan: " + scanId));
+
+        UUID projectId = project.getProjectId();
+        String oldClonePath = project.getClonePath();
+        String sonarProjectKey = project.getSonarProjectKey();
+        String referenceId = scan.getReferenceId();
+        Path logFilePath = Paths.get(scan.getLogFilePath());
+
+        // เวลาแต่ละขั้น → scans.timeline (ขั้น ce/webhook เติมตอน webhook มา)
+        ScanTimelineService.Timeline timeline = scanTimeline.start(scanId);
+        if (scan.getStartedAt() != null) {
+            timeline.mark(ScanTimelineService.QUEUE, scan.getStartedAt().atZone(ZoneId.systemDefault()).toInstant());
+        }
 
-//        log.info("Log file will be saved at: {}", logFilePath);
+        scan.setStatus("RUNNING");
+        scan = scanRepository.save(scan);
 
+        // log ของ scan นี้ทั้งหมด (git progress, output ของ script, สรุปผล) เขียนผ่าน appender ตัวเดียว
+        // และส่งต่อเป็น log สดให้ SSE (/api/sse/scan-log/{scanId})
+        ScanLogAppender scanLog = null;
+        WorkspaceManager.Lease workspace = null;
 
         // 2. Clone project ใหม่
         try {
-            // 5. Clone project ใหม่
+            scanLog = ScanLogAppender.open(logFilePath, scanProperties.getLogs(), scanLogStream.open(scanId));
+            String configHash = scanConfigHash(project);
+
+            // 4. commit ที่ remote ยังเป็นตัวเดิม → จบเลย ไม่ต้อง clone/build/sonar
+            if (!force) {
+                Instant carryStarted = Instant.now();
+                Map<String, Object> carried = tryCarryForward(scan, project, configHash, username, password, scanLog);
+                timeline.mark(ScanTimelineService.CARRY_FORWARD, carryStarted);
+                if (carried != null) {
+                    return carried;
+                }
+            }
+
+            // 5. Clone project ใหม่ (progress ของ git → scan log + SSE)
+            Instant cloneStarted = Instant.now();
+            workspace = repositoryService.acquireWorkspace(projectId);
             Map<String, Object> cloneResult = repositoryService.cloneRepositoryCmd(
-                    projectId, username, password
+                    projectId, username, password, new ScanGitProgress(scanId, projectId, scanLog)
             );
 
             String newClonePath = (String) cloneResult.get("directory");
-//            log.info("Cloned to new directory: {}", newClonePath);
+            timeline.mark(ScanTimelineService.CLONE, cloneStarted);
+            Instant detectStarted = Instant.now();
+            scan.setCloneStats(cloneStats(cloneResult, Duration.between(cloneStarted, detectStarted).toMillis()));
+            scan.setCommitSha((String) cloneResult.get("lastCommit"));
+            scan.setConfigHash(configHash);
+            scan.setAnalysisProfile(AnalysisProfile.orDefault(project.getAnalysisProfile()).name());
+
+            // 6. หา module ที่ build ได้ทั้งหมด (walk รอบเดียว) ตัวแรก = module หลัก ใช้ Sonar key ของโปรเจกต์
+            Path cloneRoot = Paths.get(newClonePath);
+            List<ModuleDiscovery.ScanModule> modules = moduleDiscovery.discover(cloneRoot);
+            List<ModuleDiscovery.ScanModule> analysable = modules.stream()
+                    .filter(ModuleDiscovery.ScanModule::isSupported)
+                    .toList();
+            if (analysable.isEmpty()) {
+                throw new IllegalStateException("Unsupported project type: "
+                        + (modules.isEmpty() ? "UNKNOWN" : modules.get(0).type()));
+            }
+            timeline.type(analysable.get(0).type());
+            if (modules.size() > 1) {
+                scanLog.append("[modules] " + modules.stream()
+                        .map(m -> m.label() + " (" + m.type() + (m.isSupported() ? "" : ", skipped") + ")")
+                        .collect(Collectors.joining(", ")));
+            }
 
-            if (oldClonePath != null && !oldClonePath.isBlank()) {
+            // differential scan: diff กับ commit ของ scan สำเร็จล่าสุด (ทำไม่ได้ → null = scan เต็ม)
+            DiffScanService.Plan diffPlan = null;
+            if (diff && analysable.size() > 1) {
+                scanLog.append("[diff] full scan: " + analysable.size() + " modules, differential scan supports single-module repositories only");
+            } else if (diff) {
+                diffPlan = diffScanService.plan(projectId, cloneRoot, scan.getCommitSha(), configHash, scanLog);
+            }
+            scan.setScanMode(diffPlan != null ? DiffScanService.MODE_DIFF : DiffScanService.MODE_FULL);
+            scan.setBaseScanId(diffPlan != null ? diffPlan.baseScanId() : null);
+            scan.setChangedFiles(diffPlan != null ? diffPlan.analyzedPaths() : null);
+            scanProcesses.checkCancelled(scanId);
+            scan = scanRepository.save(scan);
+            log.info("Workspace {} via {} - timings: {}", newClonePath, cloneResult.get("mode"), cloneResult.get("timings"));
+
+            // working copy ถาวรใช้ซ้ำ → ลบเฉพาะโฟลเดอร์เก่าแบบ <project>_<yymmdd>_<seq> ที่ค้างมาจากเดิม
+            if (oldClonePath != null && !oldClonePath.isBlank()
+                    && !Paths.get(oldClonePath).equals(Paths.get(newClonePath))) {
                 deleteOldCloneDirectory(oldClonePath);
-//                log.info("Deleted old clone directory before new clone: {}", oldClonePath);
             }
 
-            // 6. สร้าง Sonar script
-            String projectType = detectProjectType(newClonePath);
-//            log.info("Detected project type: {}", projectType);
+            // 7. สร้าง Sonar script ของแต่ละ module (module รองใช้ key <projectKey>_<path>)
+            List<ModuleRun> runs = new ArrayList<>();
+            for (int i = 0; i < analysable.size(); i++) {
+                ModuleDiscovery.ScanModule module = analysable.get(i);
+                boolean primary = i == 0;
+                String moduleKey = primary ? sonarProjectKey : moduleProjectKey(sonarProjectKey, module);
+                createSonarScriptByType(
+                        module.dir(cloneRoot).toString(),
+                        moduleKey,
+                        primary ? project.getName() : project.getName() + " [" + module.label() + "]",
+                        this.sonarToken,
+                        module.type(),
+                        project.getAnalysisProfile()
+                );
+                runs.add(new ModuleRun(module, moduleKey, primary ? referenceId : referenceId + "_m" + i,
+                        nestedExclusions(module, modules)));
+            }
 
+            // 8. อัพเดท clonePath ใน database
+            updateProjectClonePath(projectId, newClonePath);
 
-            Path scriptPath = createSonarScriptByType(
-                    newClonePath,
-                    sonarProjectKey,
-                    project.getName(),
-                    this.sonarToken,
-                    projectType
-            );
-//            log.info("Created Sonar script at: {}", scriptPath);
+            // 9. ลงทะเบียนรอ webhook ก่อนเริ่ม analysis (กันเคส webhook มาถึงก่อน)
+            CompletableFuture<String> completion = completionRegistry.register(scanId, sonarProjectKey, referenceId);
+            for (ModuleRun run : runs.subList(1, runs.size())) {
+                completionRegistry.registerModule(scanId, run.sonarKey);
+            }
 
-            // 7. อัพเดท clonePath ใน database
-            updateProjectClonePath(projectId, newClonePath);
+            timeline.mark(ScanTimelineService.DETECT, detectStarted);
 
-            // 9. รัน Sonar Analysis พร้อมเขียน log ลงไฟล์
-            Map<String, Object> scanResult = runSonarAnalysis(newClonePath, logFilePath, scanId);
+            // 10. รัน Sonar Analysis ทุก module (พร้อมกันไม่เกิน scan.modules.parallelism) เขียน log ลงไฟล์เดียวกัน
+            runModules(runs, cloneRoot, scanLog, scanId, diffPlan);
+            for (ModuleRun run : runs) {
+                recordScriptStages(timeline, run.result, runs.size() > 1 ? run.module.label() : null);
+            }
+            scanProcesses.checkCancelled(scanId);
+            ModuleRun primaryRun = runs.get(0);
+            Map<String, Object> scanResult = primaryRun.result;
+
+            scan.setBuildCache(runs.size() == 1
+                    ? (primaryRun.cacheReport.isEmpty() ? null : primaryRun.cacheReport)
+                    : moduleCacheReports(runs));
+            scan.setBuildMs(runs.stream().map(r -> stageMs(r.result, "build")).filter(Objects::nonNull)
+                    .reduce(Long::sum).orElse(null));
+            scan.setModules(modules.size() > 1 ? moduleSummaries(modules, runs) : null);
+            if (scan.getBuildMs() != null) {
+                scanLog.append("[build] " + scan.getAnalysisProfile() + " build took " + scan.getBuildMs() + " ms");
+                log.info("Scan {} build ({}) took {} ms", scanId, scan.getAnalysisProfile(), scan.getBuildMs());
+            }
+            saveBuildStats(scanId, scan.getBuildCache(), scan.getBuildMs(), scan.getModules());
+            if (runs.size() > 1) {
+                scanResult.put("modules", scan.getModules());
+            }
 
             // ตรวจสอบผลลัพธ์ของ Sonar Analysis
             boolean scanSuccess = Boolean.TRUE.equals(scanResult.get("success"));
@@ -158,34 +323,36 @@ public class ScanService {
             scan.setCompletedAt(LocalDateTime.now());
 
             if (scanSuccess) {
-                // ดึง analysisId จาก SonarQube ทันที
-                String analysisId = pollForAnalysisId(sonarProjectKey, 60);
-
-                if (analysisId != null) {
-                    scan.setAnalysisId(analysisId);
-                    scan.setStatus("COMPLETED");
-                    scan.setQualityGate("PENDING"); // รอ webhook update
-                    log.info("Scan completed successfully - scanId: {}, analysisId: {}", scanId, analysisId);
-                } else {
-                    // Scan สำเร็จแต่หา analysisId ไม่เจอ (อาจจะ webhook จะส่งมาภายหลัง)
-                    scan.setStatus("COMPLETED");
-                    scan.setQualityGate("PENDING");
-                    log.warn("Scan completed but analysisId not found yet - scanId: {}", scanId);
+                // upload เสร็จแล้ว → ที่เหลือ (CE + webhook) ไม่ต้องถือ worker thread รอ
+                String ceTaskId = primaryRun.ceTaskId;
+                if (ceTaskId != null) {
+                    completionRegistry.attachTaskId(scanId, ceTaskId);
+                    saveCeTaskId(scanId, ceTaskId);
+                    scan.setCeTaskId(ceTaskId);
+                    scanResult.put("ceTaskId", ceTaskId);
                 }
+
+                // อัปเดตเฉพาะตอนยัง RUNNING (webhook อาจ set SUCCESS ไปแล้ว ห้ามเขียนทับ)
+                markCompletedIfRunning(scanId);
+                scan.setStatus("COMPLETED");
+                scan.setQualityGate("PENDING"); // รอ webhook update
+
+                awaitAnalysisId(scanId, sonarProjectKey, ceTaskId, scan.getStartedAt(), completion);
+                log.info("Scan uploaded - scanId: {}, ceTaskId: {} (waiting for webhook)", scanId, ceTaskId);
             } else {
                 // Scan ล้มเหลว
+                completionRegistry.remove(scanId);
                 scan.setStatus("FAILED");
                 scan.setQualityGate("FAILED");
                 String errorMsg = scanResult.containsKey("error")
                         ? scanResult.get("error").toString()
                         : "Unknown error";
+                scanRepository.save(scan);
                 notiService.scanNotiAsync(scan.getScanId(), scan.getProject().getProjectId(), "Scan Failed! Please try again.");
 
                 log.error("Scan failed - scanId: {}, error: {}", scanId, errorMsg);
             }
 
-            scanRepository.save(scan);
-
 //            log.info("Scan completed: scanId={}, status={}", scanId, scan.getStatus());
 //            log.info("DEBUG: หลัง save analysisId - scanId={}, analysisId={}, status={}",
 //                    scan.getScanId(), scan.getAnalysisId(), scan.getStatus());
@@ -200,14 +367,35 @@ public class ScanService {
             result.put("oldPath", oldClonePath);
             result.put("newPath", newClonePath);
             result.put("lastCommit", cloneResult.get("lastCommit"));
+            result.put("workspaceMode", cloneResult.get("mode"));
+            result.put("workspaceTimings", cloneResult.get("timings"));
+            result.put("buildCache", scan.getBuildCache());
+            result.put("scanMode", scan.getScanMode());
+            result.put("baseScanId", scan.getBaseScanId());
             result.put("scanResult", scanResult);
             result.put("logFilePath", logFilePath.toString());
+            result.put("logDroppedLines", scanLog.dropped());
             result.put("status", scan.getStatus());
 
             return result;
 
         } catch (Exception e) {
+            if (scanProcesses.isCancelled(scanId)) {
+                // DELETE /api/scans/{scanId}/run: process ถูกฆ่าแล้ว สถานะ/เวลาเขียนไว้โดย markCancelled
+                completionRegistry.remove(scanId);
+                scan.setStatus("CANCELLED");
+                log.info("Scan {} stopped after cancellation ({})", scanId, e.getMessage());
+                if (scanLog != null) {
+                    scanLog.appendRaw(String.format("%n=== SCAN CANCELLED ===%n%s%n", LocalDateTime.now()));
+                }
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("scanId", scanId);
+                result.put("projectId", projectId);
+                result.put("status", "CANCELLED");
+                return result;
+            }
             log.error("Scan failed for project: {}", projectId, e);
+            completionRegistry.remove(scanId);
 
             // ลบ scan record ที่ล้มเหลว
             if (scan != null && scan.getScanId() != null) {
@@ -225,24 +413,108 @@ public class ScanService {
             }
 
             // เขียน error ลงไฟล์ log
-            if (logFilePath != null) {
+            String failure = String.format("=== SCAN FAILED ===\n%s\n%s\n%s\n",
+                    LocalDateTime.now(),
+                    e.getClass().getSimpleName(),
+                    e.getMessage());
+            if (scanLog != null) {
+                scanLog.appendRaw(failure);
+            } else {
                 try {
                     Files.createDirectories(logFilePath.getParent());
-                    Files.writeString(logFilePath,
-                            String.format("=== SCAN FAILED ===\n%s\n%s\n%s\n",
-                                    LocalDateTime.now(),
-                                    e.getClass().getSimpleName(),
-                                    e.getMessage()),
-                            StandardCharsets.UTF_8,
-                            StandardOpenOption.CREATE,
-                            StandardOpenOption.APPEND);
+                    Files.writeString(logFilePath, failure, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
                 } catch (IOException ignored) {}
             }
 
             throw new RuntimeException("Scan failed: " + e.getMessage(), e);
+        } finally {
+            if (workspace != null) {
+                workspace.close();
+            }
+            scanTimeline.flush(timeline);
+            if (scanLog != null) {
+                scanLog.close();
+            }
+            scanLogStream.close(scanId, scan.getStatus());
         }
     }
 
+    /**
+     * ยกผลของ scan SUCCESS ล่าสุดมาใช้ ถ้า config hash ตรงและ HEAD ของ remote (ls-remote) ยังเป็น commit เดิม
+     * คืน null ถ้าต้อง scan จริง
+     */
+    private @Nullable Map<String, Object> tryCarryForward(ScansEntity scan, ProjectsEntity project, String configHash,
+                                                         String username, String password, ScanLogAppender scanLog) {
+        long started = System.nanoTime();
+        ScansEntity previous = scanRepository
+                .findFirstByProject_ProjectIdAndStatusAndCommitShaIsNotNullOrderByCompletedAtDesc(project.getProjectId(), "SUCCESS")
+                .orElse(null);
+        if (previous == null || !configHash.equals(previous.getConfigHash())) {
+            return null;
+        }
+        String remoteHead = repositoryService.remoteHeadCommit(project.getProjectId(), username, password);
+        if (remoteHead == null || !remoteHead.equals(previous.getCommitSha())) {
+            return null;
+        }
+
+        // issue ก่อน แล้วค่อย SUCCESS (หน้าบ้านจะไม่เห็น scan สำเร็จที่ยังไม่มี issue)
+        int issueCount = jdbcTemplate.update(COPY_ISSUES_SQL, scan.getScanId(), previous.getScanId());
+
+        scan.setCommitSha(remoteHead);
+        scan.setConfigHash(configHash);
+        scan.setCarriedFromScanId(previous.getScanId());
+        scan.setStatus("SUCCESS");
+        scan.setQualityGate(previous.getQualityGate());
+        scan.setReliabilityGate(previous.getReliabilityGate());
+        scan.setSecurityGate(previous.getSecurityGate());
+        scan.setMaintainabilityGate(previous.getMaintainabilityGate());
+        scan.setSecurityReviewGate(previous.getSecurityReviewGate());
+        scan.setMetrics(previous.getMetrics());
+        scan.setModules(previous.getModules());
+        scan.setCompletedAt(LocalDateTime.now());
+        scanRepository.save(scan);
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        scanLog.appendRaw(String.format(
+                "=== NO CHANGES ===%ncommit %s and scan config unchanged since scan %s%n"
+                        + "results carried forward (%d issues) in %d ms, use force=true to rescan%n",
+                remoteHead, previous.getScanId(), issueCount, elapsedMs));
+        log.info("Scan {} skipped: commit {} unchanged since scan {}, carried {} issues in {} ms",
+                scan.getScanId(), remoteHead, previous.getScanId(), issueCount, elapsedMs);
+
+        notiService.scanNotiAsync(scan.getScanId(), project.getProjectId(), "Scan Success! (no changes since last scan)");
+        sseController.send(project.getProjectId().toString(), Map.of(
+                "status", "COMPLETED",
+                "projectKey", project.getSonarProjectKey(),
+                "repoId", project.getProjectId().toString(),
+                "carriedFromScanId", previous.getScanId().toString()
+        ));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scanId", scan.getScanId());
+        result.put("projectId", project.getProjectId());
+        result.put("projectName", project.getName());
+        result.put("sonarProjectKey", project.getSonarProjectKey());
+        result.put("lastCommit", remoteHead);
+        result.put("carriedFromScanId", previous.getScanId());
+        result.put("issues", issueCount);
+        result.put("elapsedMs", elapsedMs);
+        result.put("logFilePath", scanLog.file().toString());
+        result.put("status", scan.getStatus());
+        return result;
+    }
+
+    private String scanConfigHash(ProjectsEntity project) {
+        return TokenHashUtils.sha256(String.join("\n",
+                SCAN_CONFIG_VERSION,
+                String.valueOf(project.getRepositoryUrl()),
+                String.valueOf(project.getSonarProjectKey()),
+                String.valueOf(project.getName()),
+                String.valueOf(project.getProjectType()),
+                AnalysisProfile.orDefault(project.getAnalysisProfile()).name()));
+    }
+
     //Update ClonePath
     @Transactional
     public void updateProjectClonePath(UUID projectId, String newClonePath) {
@@ -253,56 +525,12 @@ public class ScanService {
 //        log.info("Updated clone path for project: {}", projectId);
     }
 
-    //detect
-    private String detectProjectType(String clonePath) {
-        Path startPath = Paths.get(clonePath);
-
-        // 1. สแกนหา Path ของไฟล์ config ที่สนใจทั้งหมดในครั้งเดียว
-        List<Path> relevantFiles;
-        try (Stream<Path> walk = Files.walk(startPath, 3)) {
-            relevantFiles = walk
-                    .filter(p -> p.endsWith("pom.xml") ||
-                            p.endsWith("angular.json") ||
-                            p.endsWith("package.json") ||
-                            p.endsWith("build.gradle") ||
-                            p.endsWith("build.gradle.kts")) // เพิ่ม Gradle เข้ามาเพื่อความสมบูรณ์
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            log.error("Error walking directory: " + startPath, e);
-            return "UNKNOWN"; // หากเกิดข้อผิดพลาดในการอ่าน directory
-        }
-
-        // 2. ตรวจสอบประเภทโปรเจกต์ตามลำดับความสำคัญจาก List ที่ได้มา
-
-        // A. Maven (pom.xml)
-        if (relevantFiles.stream().anyMatch(p -> p.endsWith("pom.xml"))) {
-            return "MAVEN";
-        }
-
-        // B. Gradle (build.gradle/kts)
-        if (relevantFiles.stream().anyMatch(p -> p.endsWith("build.gradle") || p.endsWith("build.gradle.kts"))) {
-            return "GRADLE";
-        }
-
-        // C. Angular (angular.json)
-        if (relevantFiles.stream().anyMatch(p -> p.endsWith("angular.json"))) {
-            return "ANGULAR";
-        }
-
-        // D. Node.js (package.json) - ไม่จำเป็นต้องอ่านเนื้อหาแล้ว เพราะเราถือว่า package.json = NODE
-        if (relevantFiles.stream().anyMatch(p -> p.endsWith("package.json"))) {
-            return "NODE";
-        }
-
-        return "UNKNOWN";
-    }
-
     private Path createSonarScriptByType(String clonePath, String projectKey,
                                          String projectName, String sonarToken,
-                                         String projectType) throws IOException {
+                                         String projectType, @Nullable AnalysisProfile profile) throws IOException {
         switch (projectType) {
             case "MAVEN":
-                return repositoryService.createSonarScriptMaven(clonePath, projectKey, projectName, sonarToken);
+                return repositoryService.createSonarScriptMaven(clonePath, projectKey, projectName, sonarToken, profile);
             case "ANGULAR":
                 return repositoryService.createSonarScriptAngular(clonePath, projectKey, projectName, sonarToken);
             case "NODE":
@@ -315,83 +543,23 @@ public class ScanService {
     /**
      * ลบ directory เก่า
      */
+    /** ไม่อยู่บน critical path ของ scan: rename เข้า .trash แล้ว WorkspaceManager ลบเบื้องหลัง */
     private void deleteOldCloneDirectory(String directoryPath) {
         try {
-            Path path = Paths.get(directoryPath);
-            if (Files.exists(path)) {
-//                log.info("Deleting old clone directory: {}", directoryPath);
-
-                // ใช้ cmd.exe /c rmdir /s /q แทน Java Files API
-                // เพราะ Windows จะ handle file locks ได้ดีกว่า
-                List<String> command = Arrays.asList(
-                        "cmd.exe", "/c",
-                        "rmdir", "/s", "/q",
-                        directoryPath
-                );
-
-                ProcessBuilder pb = new ProcessBuilder(command);
-                Process p = pb.start();
-                boolean finished = p.waitFor(30, TimeUnit.SECONDS);
-
-                if (finished && p.exitValue() == 0) {
-//                    log.info("Successfully deleted: {}", directoryPath);
-                } else {
-                    log.warn("Failed to delete directory (exit code: {}), but continuing...",
-                            finished ? p.exitValue() : "timeout");
-                }
-            } else {
-                log.warn("Old clone directory not found: {}", directoryPath);
-            }
+            workspaceManager.discard(Paths.get(directoryPath));
         } catch (Exception e) {
             log.error("Failed to delete old clone directory: {}", directoryPath, e);
             // ไม่ throw exception เพราะไม่อยากให้ scan ล้มเหลว
         }
     }
 
-    private String fetchLatestAnalysisId(String projectKey) {
-        try {
-            // เรียก SonarQube API เพื่อดึง analysis ล่าสุด
-            JsonNode response = sonarWebClient.get()
-                    .uri(u -> u.path("/api/project_analyses/search")
-                            .queryParam("project", projectKey)
-                            .queryParam("ps", 1)
-                            .build())
-                    .retrieve()
-                    .bodyToMono(JsonNode.class)
-                    .block();
-
-            if (response != null) {
-                JsonNode analyses = response.path("analyses");
-                if (analyses.isArray() && analyses.size() > 0) {
-                    String analysisId = analyses.get(0).path("key").asText(null);
-                    if (analysisId != null) {
-                        log.debug("Found analysisId: {}", analysisId);
-                    }
-                    return analysisId;
-                } else {
-                    log.debug("No analyses found for project: {}", projectKey);
-                }
-            }
-        } catch (WebClientResponseException.NotFound e) {
-            // 404 = project ยังไม่ถูกสร้างใน SonarQube หรือยังไม่มี analysis
-            log.debug("Project {} not found in SonarQube (404)", projectKey);
-        } catch (WebClientResponseException e) {
-            // HTTP error อื่นๆ
-            log.warn("HTTP error from SonarQube [{}]: {}", e.getStatusCode(), e.getMessage());
-        } catch (Exception e) {
-            // Error อื่นๆ ที่ไม่คาดคิด
-            log.error("Failed to fetch analysisId for project {}: {}", projectKey, e.getMessage());
-        }
-        return null;
-    }
-
-
     /**
      * รัน Sonar Analysis Script
      */
-    private Map<String, Object> runSonarAnalysis(String clonePath, Path logFilePath, UUID scanId) {
+    private Map<String, Object> runSonarAnalysis(String clonePath, ScanLogAppender scanLog, UUID scanId, String referenceId,
+                                                 Map<String, String> cacheEnv, String linePrefix) {
         Map<String, Object> result = new LinkedHashMap<>();
-        Path scriptPath = Paths.get(clonePath, SCRIPT_FILENAME);
+        Path scriptPath = Paths.get(clonePath, scanRunner.scriptFileName());
 
         if (!Files.exists(scriptPath)) {
             log.error("Sonar script not found at: {}", scriptPath);
@@ -403,14 +571,20 @@ public class ScanService {
 //        log.info("Running Sonar analysis for scan: {}", scanId);
 //        log.info("Script path: {}", scriptPath);
 
-        List<String> command = List.of(
-                "cmd.exe", "/c",
-                "\"" + scriptPath.toString() + "\""
-        );
+        List<String> command = scanRunner.command(scriptPath);
 
+        // ส่ง referenceId ไปกับ analysis → กลับมาใน webhook payload (properties)
+        String analysisProp = "-Dsonar.analysis.referenceId=" + referenceId;
+        Map<String, String> env = new LinkedHashMap<>(cacheEnv);
+        env.merge("SONAR_SCANNER_OPTS", analysisProp, (a, b) -> a + " " + b);
+        env.merge("MAVEN_OPTS", analysisProp, (a, b) -> a + " " + b);
+
+        StageClock stages = new StageClock();
         try {
             int exitCode = runScriptAndLog(command, new File(clonePath),
-                    Duration.ofMinutes(30), logFilePath, scanId);
+                    Duration.ofMinutes(scanProperties.getRunner().getTimeoutMinutes()), scanLog, scanId, env, stages, linePrefix);
+            result.put("stageMs", stages.durations());
+            result.put("stageStartedAt", stages.startedAt());
 
             result.put("success", exitCode == 0);
             result.put("exitCode", exitCode);
@@ -432,42 +606,48 @@ public class ScanService {
     }
 
     /**
-     * รัน script และ log output
+     * รัน script และ log output (ผ่าน ScanLogAppender: thread อ่าน output ไม่ต้องรอ disk)
      */
     private int runScriptAndLog(List<String> cmd, File workDir, Duration timeout,
-                                Path logFilePath, UUID scanId) {
+                                ScanLogAppender scanLog, UUID scanId, Map<String, String> env, StageClock stages,
+                                String linePrefix) {
         ProcessBuilder pb = new ProcessBuilder(cmd);
         pb.directory(workDir);
         pb.redirectErrorStream(true);
+        // *_OPTS ต่อท้ายของเดิมในเครื่อง ส่วนตัวแปรอื่น (path ของ cache) ใช้ค่าที่ส่งมา
+        env.forEach((k, v) -> {
+            if (k.endsWith("_OPTS")) {
+                pb.environment().merge(k, v, (oldV, newV) -> oldV + " " + newV);
+            } else {
+                pb.environment().put(k, v);
+            }
+        });
 
         String printable = String.join(" ", cmd);
 //        log.info("EXEC: {}", printable);
-//        log.info("Log file: {}", logFilePath);
 
         ExecutorService ex = null;
-        BufferedWriter fileWriter = null;
+        Process p = null;
 
         try {
-            // สร้างไฟล์ log
-            Files.createDirectories(logFilePath.getParent());
-            fileWriter = Files.newBufferedWriter(logFilePath, StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-
             // เขียน header พร้อม scanId
-            fileWriter.write("=".repeat(70) + "\n");
-            fileWriter.write("           SONARQUBE ANALYSIS LOG\n");
-            fileWriter.write("=".repeat(70) + "\n");
-            fileWriter.write("Scan ID         : " + scanId + "\n");
-            fileWriter.write("Started at      : " + LocalDateTime.now() + "\n");
-            fileWriter.write("Command         : " + printable + "\n");
-            fileWriter.write("Working Dir     : " + workDir.getAbsolutePath() + "\n");
-            fileWriter.write("Timeout         : " + timeout.toMinutes() + " minutes\n");
-            fileWriter.write("=".repeat(70) + "\n\n");
-            fileWriter.flush();
-
-            Process p = pb.start();
-
-            BufferedWriter finalFileWriter = fileWriter;
+            scanLog.appendRaw("=".repeat(70) + "\n"
+                    + "           SONARQUBE ANALYSIS LOG\n"
+                    + "=".repeat(70) + "\n"
+                    + "Scan ID         : " + scanId + "\n"
+                    + (linePrefix.isEmpty() ? "" : "Module          : " + linePrefix.trim() + "\n")
+                    + "Started at      : " + LocalDateTime.now() + "\n"
+                    + "Command         : " + printable + "\n"
+                    + "Working Dir     : " + workDir.getAbsolutePath() + "\n"
+                    + "Timeout         : " + timeout.toMinutes() + " minutes\n"
+                    + "=".repeat(70) + "\n\n");
+
+            p = pb.start();
+            if (!scanProcesses.register(scanId, p)) {
+                // ยกเลิกมาก่อน process นี้จะลงทะเบียนทัน
+                scanRunner.destroyTree(p, Duration.ZERO);
+            }
+
             try (var reader = new BufferedReader(
                     new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
 
@@ -476,33 +656,22 @@ public class ScanService {
                     try {
                         String line;
                         while ((line = reader.readLine()) != null) {
-                            // Log to console
-//                            log.info("[sonar] {}", line);
-
-                            // Log to file (with timestamp)
-                            synchronized (finalFileWriter) {
-                                finalFileWriter.write(
-                                        LocalDateTime.now().format(
-                                                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
-                                        ) + " | " + line
-                                );
-                                finalFileWriter.newLine();
-                                finalFileWriter.flush();
-                            }
+                            // Log to file (timestamp ใส่ตอนรับเข้า, เขียน/flush เป็นก้อนโดย writer thread)
+                            scanLog.append(linePrefix + line);
+                            stages.onLine(line);
                         }
                     } catch (IOException e) {
-                        log.warn("Error reading/writing process output", e);
+                        log.warn("Error reading process output", e);
                     }
                 });
 
                 boolean finished = p.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
                 if (!finished) {
-                    p.destroyForcibly();
+                    // ฆ่าทั้งต้นไม้ (mvn/java/node ที่สคริปต์ spawn) ไม่ใช่แค่ shell ตัวบน
+                    scanRunner.destroyTree(p, Duration.ofMillis(scanProperties.getRunner().getKillGraceMs()));
                     String timeoutMsg = "⏰ Process timeout after " + timeout.toMinutes() + " minutes";
                     log.error(timeoutMsg);
-                    fileWriter.write("\n" + "=".repeat(70) + "\n");
-                    fileWriter.write(timeoutMsg + "\n");
-                    fileWriter.flush();
+                    scanLog.appendRaw("\n" + "=".repeat(70) + "\n" + timeoutMsg + "\n");
                     throw new IllegalStateException("Process timeout: " + printable);
                 }
 
@@ -517,13 +686,13 @@ public class ScanService {
                 log.info("EXEC EXIT = {}", exit);
 
                 // เขียน footer
-                fileWriter.write("\n" + "=".repeat(70) + "\n");
-                fileWriter.write("Process completed\n");
-                fileWriter.write("Exit Code       : " + exit + "\n");
-                fileWriter.write("Status          : " + (exit == 0 ? "✅ SUCCESS" : "❌ FAILED") + "\n");
-                fileWriter.write("Completed at    : " + LocalDateTime.now() + "\n");
-                fileWriter.write("=".repeat(70) + "\n");
-                fileWriter.flush();
+                scanLog.appendRaw("\n" + "=".repeat(70) + "\n"
+                        + "Process completed\n"
+                        + "Exit Code       : " + exit + "\n"
+                        + "Status          : " + (exit == 0 ? "✅ SUCCESS" : "❌ FAILED") + "\n"
+                        + "Completed at    : " + LocalDateTime.now() + "\n"
+                        + (scanLog.dropped() > 0 ? "Dropped lines   : " + scanLog.dropped() + "\n" : "")
+                        + "=".repeat(70) + "\n");
 
                 return exit;
             }
@@ -531,35 +700,21 @@ public class ScanService {
             log.error("EXEC error", e);
 
             // เขียน error ลงไฟล์
-            if (fileWriter != null) {
-                try {
-                    fileWriter.write("\n" + "=".repeat(70) + "\n");
-                    fileWriter.write("❌ ERROR OCCURRED\n");
-                    fileWriter.write("=".repeat(70) + "\n");
-                    fileWriter.write("Error at        : " + LocalDateTime.now() + "\n");
-                    fileWriter.write("Error Type      : " + e.getClass().getSimpleName() + "\n");
-                    fileWriter.write("Error Message   : " + e.getMessage() + "\n");
-                    if (e.getCause() != null) {
-                        fileWriter.write("Caused by       : " + e.getCause() + "\n");
-                    }
-                    fileWriter.write("=".repeat(70) + "\n");
-                    fileWriter.flush();
-                } catch (IOException ignored) {}
-            }
+            scanLog.appendRaw("\n" + "=".repeat(70) + "\n"
+                    + "❌ ERROR OCCURRED\n"
+                    + "=".repeat(70) + "\n"
+                    + "Error at        : " + LocalDateTime.now() + "\n"
+                    + "Error Type      : " + e.getClass().getSimpleName() + "\n"
+                    + "Error Message   : " + e.getMessage() + "\n"
+                    + (e.getCause() != null ? "Caused by       : " + e.getCause() + "\n" : "")
+                    + "=".repeat(70) + "\n");
 
             return -1;
         } finally {
-            // ปิด file writer
-            if (fileWriter != null) {
-                try {
-                    fileWriter.close();
-//                    log.info("Log file closed: {}", logFilePath);
-                } catch (IOException e) {
-                    log.error("Failed to close log file", e);
-                }
+            if (p != null) {
+                scanProcesses.unregister(scanId, p);
             }
-
-            // ปิด thread pool
+            // ปิด thread pool (appender ปิดโดย executeScan)
             if (ex != null) {
                 ex.shutdownNow();
                 try {
@@ -571,47 +726,345 @@ public class ScanService {
         }
     }
 
-    private String pollForAnalysisId(String projectKey, int timeoutSeconds) {
+    /**
+     * รอ analysisId แบบ event-driven: webhook จะ complete future ผ่าน ScanCompletionRegistry
+     * ส่วน polling เหลือไว้เป็น backstop ช้า ๆ (exponential backoff, ไม่ block thread)
+     */
+    private void awaitAnalysisId(UUID scanId, String projectKey, @Nullable String ceTaskId,
+                                 LocalDateTime scanStartedAt, CompletableFuture<String> completion) {
+        ScanProperties.Completion cfg = scanProperties.getCompletion();
+
+        Disposable backstop = Mono.defer(() -> ceTaskId != null
+                        ? fetchAnalysisIdByTask(ceTaskId)
+                        : fetchAnalysisIdSince(projectKey, scanStartedAt))
+                .switchIfEmpty(Mono.error(new AnalysisNotReadyException()))
+                .retryWhen(Retry.backoff(cfg.getPollMaxAttempts(), Duration.ofMillis(cfg.getPollInitialDelayMs()))
+                        .maxBackoff(Duration.ofMillis(cfg.getPollMaxDelayMs()))
+                        .filter(ex -> !(ex instanceof CeTaskFailedException)))
+                .delaySubscription(Duration.ofMillis(cfg.getPollInitialDelayMs()))
+                .subscribe(
+                        analysisId -> {
+                            if (completionRegistry.complete(scanId, analysisId)) {
+                                log.info("analysisId found by backstop poll - scanId: {}, analysisId: {}", scanId, analysisId);
+                            }
+                        },
+                        err -> completionRegistry.fail(scanId, err)
+                );
+
+        completion.whenComplete((analysisId, err) -> {
+            backstop.dispose();
+            if (err == null) {
+                attachAnalysisId(scanId, analysisId);
+            } else if (err instanceof CeTaskFailedException) {
+                log.error("SonarQube CE task failed - scanId: {}, {}", scanId, err.getMessage());
+                markFailedIfPending(scanId);
+            } else {
+                // ไม่เจอทั้ง webhook และ poll → คงสถานะ COMPLETED/PENDING ไว้เหมือนเดิม
+                log.warn("Scan completed but analysisId not found yet - scanId: {} ({})", scanId, err.toString());
+            }
+        });
+    }
 
-        // ⭐ เพิ่มตรงนี้ - รอ 10 วินาทีก่อน ให้ SonarQube ทำงานก่อน
-        try {
-            Thread.sleep(10000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    /** /api/ce/task → analysisId เมื่อ task SUCCESS, ว่างถ้ายังประมวลผลอยู่ */
+    private Mono<String> fetchAnalysisIdByTask(String ceTaskId) {
+        return sonarWebClient.get()
+                .uri(u -> u.path("/api/ce/task").queryParam("id", ceTaskId).build())
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .flatMap(n -> {
+                    String status = n.path("task").path("status").asText("");
+                    if ("FAILED".equals(status) || "CANCELED".equals(status)) {
+                        return Mono.error(new CeTaskFailedException("CE task " + ceTaskId + " " + status));
+                    }
+                    String analysisId = n.path("task").path("analysisId").asText(null);
+                    return (analysisId != null && !analysisId.isBlank()) ? Mono.just(analysisId) : Mono.empty();
+                });
+    }
+
+    /** กรณีไม่มี ceTaskId: เอา analysis ล่าสุดที่เกิดหลัง scan เริ่ม (กันหยิบ analysis เก่า) */
+    private Mono<String> fetchAnalysisIdSince(String projectKey, LocalDateTime since) {
+        String from = since.atZone(ZoneId.systemDefault())
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ"));
+        return sonarWebClient.get()
+                .uri(u -> u.path("/api/project_analyses/search")
+                        .queryParam("project", projectKey)
+                        .queryParam("from", from)
+                        .queryParam("ps", 1)
+                        .build())
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .flatMap(n -> {
+                    JsonNode analyses = n.path("analyses");
+                    String analysisId = (analyses.isArray() && analyses.size() > 0)
+                            ? analyses.get(0).path("key").asText(null) : null;
+                    return (analysisId != null && !analysisId.isBlank()) ? Mono.just(analysisId) : Mono.empty();
+                });
+    }
+
+    // ---------- monorepo modules ----------
+
+    /** module เดียว → รันบน scan worker ตรง ๆ; หลาย module → lane ละ 1 scanner พร้อมกันไม่เกิน scan.modules.parallelism */
+    private void runModules(List<ModuleRun> runs, Path cloneRoot, ScanLogAppender scanLog, UUID scanId,
+                            @Nullable DiffScanService.Plan diffPlan) {
+        if (runs.size() == 1) {
+            runModule(runs.get(0), cloneRoot, scanLog, scanId, diffPlan, "");
+            return;
+        }
+        Queue<ModuleRun> pending = new ConcurrentLinkedQueue<>(runs);
+        int lanes = Math.min(scanProperties.getModules().getParallelism(), runs.size());
+        List<CompletableFuture<Void>> workers = new ArrayList<>(lanes);
+        for (int i = 0; i < lanes; i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                for (ModuleRun run; (run = pending.poll()) != null; ) {
+                    runModule(run, cloneRoot, scanLog, scanId, diffPlan, "[" + run.module.label() + "] ");
+                }
+            }, scanModuleExecutor));
+        }
+        CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /** build + analysis ของ module เดียว (build cache แยกตามโฟลเดอร์ module) ไม่โยน exception: ผลอยู่ใน run.result */
+    private void runModule(ModuleRun run, Path cloneRoot, ScanLogAppender scanLog, UUID scanId,
+                           @Nullable DiffScanService.Plan diffPlan, String linePrefix) {
+        String dir = run.module.dir(cloneRoot).toString();
+        long started = System.nanoTime();
+        try (BuildCacheService.Session buildCache = buildCacheService.prepare(dir, run.module.type())) {
+            if (!buildCache.report().isEmpty()) {
+                scanLog.append(linePrefix + "[cache] " + buildCache.report());
+            }
+            Map<String, String> env = new LinkedHashMap<>(buildCache.env());
+            if (diffPlan != null) {
+                diffPlan.applyTo(env);
+            }
+            if (run.exclusions != null) {
+                env.merge("SONAR_SCANNER_OPTS", "-Dsonar.exclusions=" + run.exclusions, (a, b) -> a + " " + b);
+            }
+            run.result = runSonarAnalysis(dir, scanLog, scanId, run.referenceId, env, linePrefix);
+            if (Boolean.TRUE.equals(run.result.get("success"))) {
+                buildCache.commit();
+                run.ceTaskId = readCeTaskId(dir);
+            }
+            run.cacheReport = buildCache.report();
+        } catch (Exception e) {
+            log.error("Module {} of scan {} failed", run.module.label(), scanId, e);
+            run.result = new LinkedHashMap<>(Map.of("success", false, "error", String.valueOf(e.getMessage())));
+        }
+        run.durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        if (!linePrefix.isEmpty()) {
+            scanLog.append(linePrefix + "[module] " + (Boolean.TRUE.equals(run.result.get("success")) ? "uploaded" : "FAILED")
+                    + " in " + run.durationMs + " ms (" + run.sonarKey + ")");
+        }
+    }
+
+    /** Sonar key ของ module รอง: <projectKey>_<path> (อักขระนอกเหนือที่ Sonar รับแทนด้วย _) */
+    private static String moduleProjectKey(String projectKey, ModuleDiscovery.ScanModule module) {
+        return projectKey + "_" + module.path().replaceAll("[^A-Za-z0-9_.\\-]", "_");
+    }
+
+    /** สถิติ clone ที่เก็บลง scans.clone_stats: mode + ขนาดที่โหลด/checkout (จาก RepositoryService) + เวลารวมของขั้น clone */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cloneStats(Map<String, Object> cloneResult, long cloneMs) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", cloneResult.get("mode"));
+        Object measured = cloneResult.get("stats");
+        if (measured instanceof Map<?, ?> m) {
+            stats.putAll((Map<String, Object>) m);
+        }
+        stats.put("ms", cloneMs);
+        return stats;
+    }
+
+    /**
+     * module JS (sonar-scanner, sources=.) ที่มี module อื่นอยู่ข้างใน: ตัดโฟลเดอร์ของ module เหล่านั้นออก
+     * (ไม่งั้นไฟล์ Java ของ backend ข้างในจะถูก analyse ซ้ำและไม่มี binaries) ค่านี้แทน exclusions เดิมจึงใส่ค่า default ด้วย
+     */
+    private static @Nullable String nestedExclusions(ModuleDiscovery.ScanModule module, List<ModuleDiscovery.ScanModule> all) {
+        if ("MAVEN".equals(module.type())) {
+            return null;        // sonar-maven-plugin ใช้ source dirs ของ pom เอง
+        }
+        List<String> nested = all.stream()
+                .filter(module::contains)
+                .map(m -> (module.isRoot() ? m.path() : m.path().substring(module.path().length() + 1)) + "/**")
+                .toList();
+        if (nested.isEmpty()) {
             return null;
         }
+        return RepositoryService.SONAR_EXCLUSIONS + "," + String.join(",", nested).replace(' ', '?');
+    }
 
-        long endTime = System.currentTimeMillis() + (timeoutSeconds * 1000L);
-        int attempt = 0;
+    private static Map<String, Object> moduleCacheReports(List<ModuleRun> runs) {
+        Map<String, Object> reports = new LinkedHashMap<>();
+        for (ModuleRun run : runs) {
+            if (run.cacheReport != null && !run.cacheReport.isEmpty()) {
+                reports.put(run.module.label(), run.cacheReport);
+            }
+        }
+        return reports.isEmpty() ? null : reports;
+    }
 
-        while (System.currentTimeMillis() < endTime) {
-            attempt++;
-            try {
-                String analysisId = fetchLatestAnalysisId(projectKey);
-                if (analysisId != null && !analysisId.isBlank()) {
-                    return analysisId;
-                }
+    /** สรุปต่อ module ลง scans.modules (module ที่ไม่มี script รองรับ เช่น GRADLE = SKIPPED) */
+    private static List<Map<String, Object>> moduleSummaries(List<ModuleDiscovery.ScanModule> modules, List<ModuleRun> runs) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (ModuleDiscovery.ScanModule module : modules) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("path", module.label());
+            m.put("type", module.type());
+            ModuleRun run = runs.stream().filter(r -> r.module.equals(module)).findFirst().orElse(null);
+            if (run == null) {
+                m.put("status", "SKIPPED");
+            } else {
+                m.put("sonarProjectKey", run.sonarKey);
+                m.put("primary", run == runs.get(0));
+                m.put("status", Boolean.TRUE.equals(run.result.get("success")) ? "SUCCESS" : "FAILED");
+                m.put("exitCode", run.result.get("exitCode"));
+                m.put("durationMs", run.durationMs);
+                m.put("buildMs", stageMs(run.result, "build"));
+                m.put("ceTaskId", run.ceTaskId);
+            }
+            out.add(m);
+        }
+        return out;
+    }
 
-                // ⭐ แก้ตรงนี้ - แสดง log ทุก 5 ครั้ง
-                if (attempt == 1 || attempt % 5 == 0) {
-                    long remainingSeconds = (endTime - System.currentTimeMillis()) / 1000;
+    /** งาน analysis ของ module หนึ่งใน scan (เขียนโดย lane เดียว อ่านหลัง join) */
+    private static final class ModuleRun {
+        private final ModuleDiscovery.ScanModule module;
+        private final String sonarKey;
+        private final String referenceId;
+        private final @Nullable String exclusions;
+        private Map<String, Object> result = new LinkedHashMap<>(Map.of("success", false, "error", "not run"));
+        private Map<String, Object> cacheReport = Map.of();
+        private @Nullable String ceTaskId;
+        private long durationMs;
+
+        private ModuleRun(ModuleDiscovery.ScanModule module, String sonarKey, String referenceId, @Nullable String exclusions) {
+            this.module = module;
+            this.sonarKey = sonarKey;
+            this.referenceId = referenceId;
+            this.exclusions = exclusions;
+        }
+    }
+
+    /** อ่าน ceTaskId จาก report-task.txt ที่ scanner เขียนไว้ (.scannerwork/ หรือ target/sonar/) */
+    private @Nullable String readCeTaskId(String clonePath) {
+        // ตำแหน่งมาตรฐานของ module นี้ก่อน (monorepo: walk อาจเจอ report ของ module อื่นที่รันพร้อมกัน)
+        try {
+            for (String known : List.of(".scannerwork/report-task.txt", "target/sonar/report-task.txt")) {
+                Path report = Paths.get(clonePath, known);
+                if (Files.isRegularFile(report)) {
+                    return readCeTaskIdFrom(report);
                 }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot read report-task.txt under {}: {}", clonePath, e.getMessage());
+        }
+        try (Stream<Path> walk = Files.walk(Paths.get(clonePath), 4)) {
+            Optional<Path> report = walk
+                    .filter(p -> p.endsWith("report-task.txt"))
+                    .max(Comparator.comparingLong(p -> p.toFile().lastModified()));
+            return report.isPresent() ? readCeTaskIdFrom(report.get()) : null;
+        } catch (IOException e) {
+            log.warn("Cannot read report-task.txt under {}: {}", clonePath, e.getMessage());
+            return null;
+        }
+    }
 
-                Thread.sleep(2000); // รอ 2 วินาที
+    private static @Nullable String readCeTaskIdFrom(Path report) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(report, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        String ceTaskId = props.getProperty("ceTaskId");
+        return (ceTaskId != null && !ceTaskId.isBlank()) ? ceTaskId.trim() : null;
+    }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return null;
-            } catch (Exception e) {
-                log.error("Error polling analysisId (attempt {}): {}", attempt, e.getMessage());
-            }
+    /** เขียนเฉพาะคอลัมน์ build_cache/build_ms (webhook อาจอัปเดต scan นี้ไปแล้ว ห้าม save ทั้ง entity ทับ) */
+    private void saveBuildStats(UUID scanId, @Nullable Map<String, Object> cacheReport, @Nullable Long buildMs,
+                                @Nullable List<Map<String, Object>> modules) {
+        try {
+            jdbcTemplate.update("UPDATE scans SET build_cache = CAST(? AS jsonb), build_ms = ?, modules = CAST(? AS jsonb) WHERE scan_id = ?",
+                    cacheReport != null ? objectMapper.writeValueAsString(cacheReport) : null, buildMs,
+                    modules != null ? objectMapper.writeValueAsString(modules) : null, scanId);
+        } catch (Exception e) {
+            log.warn("Cannot save build stats for scan {}: {}", scanId, e.getMessage());
         }
+    }
 
-        log.error("Timeout: ไม่พบ analysisId หลังจาก {} วินาที (พยายาม {} ครั้ง)", timeoutSeconds, attempt);  // ⭐ เพิ่มจำนวนครั้ง
-        return null;
+    /** marker ##scan-stage ของสคริปต์ → build / upload (sonar analysis + ส่ง report) ลง timeline */
+    @SuppressWarnings("unchecked")
+    private static void recordScriptStages(ScanTimelineService.Timeline timeline, @Nullable Map<String, Object> scanResult,
+                                           @Nullable String module) {
+        if (scanResult == null || !(scanResult.get("stageStartedAt") instanceof Map<?, ?> starts)) {
+            return;
+        }
+        Map<String, Long> durations = (Map<String, Long>) scanResult.get("stageMs");
+        ((Map<String, Instant>) starts).forEach((stage, startedAt) -> {
+            Long ms = durations.get(stage);
+            if (ms != null) {
+                timeline.add("analysis".equals(stage) ? ScanTimelineService.UPLOAD : stage, startedAt, ms, module);
+            }
+        });
     }
 
+    @SuppressWarnings("unchecked")
+    private static @Nullable Long stageMs(Map<String, Object> scanResult, String stage) {
+        Object stages = scanResult.get("stageMs");
+        return stages instanceof Map<?, ?> m ? ((Map<String, Long>) m).get(stage) : null;
+    }
 
+    private void markCompletedIfRunning(UUID scanId) {
+        jdbcTemplate.update(
+                "UPDATE scans SET status = 'COMPLETED', quality_gate = 'PENDING', completed_at = now() " +
+                        "WHERE scan_id = ? AND status = 'RUNNING'", scanId);
+    }
+
+    /**
+     * ปิด scan ที่ถูกยกเลิก (เรียกจาก ScanJobService.cancel หลังฆ่า process แล้ว)
+     * เขียนเฉพาะคอลัมน์ของการยกเลิก ไม่ save ทั้ง entity ทับของ worker ที่อาจยังเขียนอยู่
+     */
+    public void markCancelled(UUID scanId, UUID projectId, String cancelledBy, long cancelMs) {
+        completionRegistry.remove(scanId);
+        jdbcTemplate.update(
+                "UPDATE scans SET status = 'CANCELLED', completed_at = now(), cancelled_by = ?, cancel_ms = ? " +
+                        "WHERE scan_id = ? AND status IN ('QUEUED', 'RUNNING')",
+                cancelledBy, cancelMs, scanId);
+        notiService.scanNotiAsync(scanId, projectId, "Scan Cancelled.");
+    }
+
+    /** เก็บลง DB ทันที: แอปล่มระหว่างรอ webhook ยังตามผลจาก /api/ce/task ได้ */
+    private void saveCeTaskId(UUID scanId, String ceTaskId) {
+        jdbcTemplate.update("UPDATE scans SET ce_task_id = ? WHERE scan_id = ?", ceTaskId, scanId);
+    }
+
+    private void attachAnalysisId(UUID scanId, String analysisId) {
+        jdbcTemplate.update(
+                "UPDATE scans SET analysis_id = ? WHERE scan_id = ? AND (analysis_id IS NULL OR analysis_id = '')",
+                analysisId, scanId);
+    }
+
+    private void markFailedIfPending(UUID scanId) {
+        int updated = jdbcTemplate.update(
+                "UPDATE scans SET status = 'FAILED', quality_gate = 'FAILED', completed_at = now() " +
+                        "WHERE scan_id = ? AND status = 'COMPLETED' AND quality_gate = 'PENDING'", scanId);
+        if (updated > 0) {
+            scanRepository.findById(scanId).ifPresent(s ->
+                    notiService.scanNotiAsync(scanId, s.getProject().getProjectId(), "Scan Failed! Please try again."));
+        }
+    }
+
+    /** poll แล้ว CE ยังไม่เสร็จ → ให้ retryWhen ลองใหม่ */
+    private static final class AnalysisNotReadyException extends RuntimeException {
+        private AnalysisNotReadyException() {
+            super("analysis not ready yet", null, false, false);
+        }
+    }
+
+    /** CE task FAILED/CANCELED → ไม่ต้อง retry */
+    private static final class CeTaskFailedException extends RuntimeException {
+        private CeTaskFailedException(String message) {
+            super(message);
+        }
+    }
 
     //ส่วนของ startScan
 
@@ -638,6 +1091,19 @@ public class ScanService {
             model.setQualityGate(String.valueOf(scanEntity.getQualityGate()));
             model.setMetrics(scanEntity.getMetrics());
             model.setLogFilePath(String.valueOf(scanEntity.getLogFilePath()));
+            model.setCommitSha(scanEntity.getCommitSha());
+            model.setCarriedFromScanId(scanEntity.getCarriedFromScanId());
+            model.setBuildCache(scanEntity.getBuildCache());
+            model.setAnalysisProfile(scanEntity.getAnalysisProfile());
+            model.setBuildMs(scanEntity.getBuildMs());
+            model.setCloneStats(scanEntity.getCloneStats());
+            model.setScanMode(scanEntity.getScanMode());
+            model.setBaseScanId(scanEntity.getBaseScanId());
+            model.setChangedFileCount(scanEntity.getChangedFiles() != null ? scanEntity.getChangedFiles().size() : null);
+            model.setModules(scanEntity.getModules());
+            model.setCancelledBy(scanEntity.getCancelledBy());
+            model.setCancelMs(scanEntity.getCancelMs());
+            model.setTimeline(scanEntity.getTimeline());
             model.setMaintainabilityGate(String.valueOf(scanEntity.getMaintainabilityGate()));
             model.setReliabilityGate(String.valueOf(scanEntity.getReliabilityGate()));
             model.setSecurityGate(String.valueOf(scanEntity.getSecurityGate()));
@@ -662,6 +1128,19 @@ public class ScanService {
         model.setQualityGate(String.valueOf(scan.getQualityGate()));
         model.setMetrics(scan.getMetrics());
         model.setLogFilePath(String.valueOf(scan.getLogFilePath()));
+        model.setCommitSha(scan.getCommitSha());
+        model.setCarriedFromScanId(scan.getCarriedFromScanId());
+        model.setBuildCache(scan.getBuildCache());
+        model.setAnalysisProfile(scan.getAnalysisProfile());
+        model.setBuildMs(scan.getBuildMs());
+        model.setCloneStats(scan.getCloneStats());
+        model.setScanMode(scan.getScanMode());
+        model.setBaseScanId(scan.getBaseScanId());
+        model.setChangedFileCount(scan.getChangedFiles() != null ? scan.getChangedFiles().size() : null);
+        model.setModules(scan.getModules());
+        model.setCancelledBy(scan.getCancelledBy());
+        model.setCancelMs(scan.getCancelMs());
+        model.setTimeline(scan.getTimeline());
         model.setMaintainabilityGate(String.valueOf(scan.getMaintainabilityGate()));
         model.setReliabilityGate(String.valueOf(scan.getReliabilityGate()));
         model.setSecurityGate(String.valueOf(scan.getSecurityGate()));
@@ -671,42 +1150,33 @@ public class ScanService {
 
 
 
-    public ScanLogModel getScanLogById(UUID scanId) {
-        try {
-            Path logPath = findLogFlie(scanId);
-
-            if(logPath == null || !Files.exists(logPath)){
-                throw new IllegalArgumentException("Scan Log Not Found in Id: " + scanId);
-            }
+    /** อ่าน log เป็นช่วง (ดู ScanLogReader) หาไฟล์จาก logFilePath ที่บันทึกไว้ใน scan */
+    public ScanLogModel getScanLogById(UUID scanId, @Nullable Long offset, @Nullable Long fromLine,
+                                       @Nullable Integer tail, @Nullable Integer limit) {
+        int selectors = (offset != null ? 1 : 0) + (fromLine != null ? 1 : 0) + (tail != null ? 1 : 0);
+        if (selectors > 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use only one of offset, fromLine, tail");
+        }
+        if ((offset != null && offset < 0) || (fromLine != null && fromLine < 0) || (tail != null && tail < 0)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "offset, fromLine and tail must not be negative");
+        }
 
-            List<String> lines = Files.readAllLines(logPath, StandardCharsets.UTF_8);
+        ScansEntity scan = scanRepository.findById(scanId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Scan not found: " + scanId));
+        Path logPath = scan.getLogFilePath() != null ? Paths.get(scan.getLogFilePath()) : null;
+        if (logPath == null || !Files.isRegularFile(logPath)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Scan Log Not Found in Id: " + scanId);
+        }
 
-            ScanLogModel logModel = new ScanLogModel();
+        try {
+            ScanLogModel logModel = scanLogReader.read(logPath, offset, fromLine, tail, limit);
             logModel.setScanId(scanId);
-            logModel.setLines(lines);
             return logModel;
-        }catch (IOException e){
+        } catch (IOException e) {
             throw new RuntimeException("Error reading scan log: " + e.getMessage(), e);
         }
     }
 
-    private Path findLogFlie(UUID scanId) throws IOException {
-        String logFileName = "scan_" + scanId + ".log";
-        Path logDir = Paths.get(LOG_BASE);
-
-        if (!Files.exists(logDir)) {
-            return null;
-        }
-
-        try (Stream<Path> paths = Files.walk(logDir,2)) {
-            return paths
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().equals(logFileName))
-                    .findFirst()
-                    .orElse(null);
-        }
-    }
-
     public void deleteScan(UUID scanId){
         String[] queries = {
                 "DELETE FROM noti where scan_id = ?",
@@ -719,4 +1189,93 @@ public class ScanService {
         }
     }
 
+    /**
+     * จับเวลาช่วงใน script จากบรรทัด "##scan-stage <name> begin|end" ที่ script echo ออกมา
+     * (ใช้จากอ่าน output thread เดียว, อ่านผลหลัง process จบ)
+     */
+    private static final class StageClock {
+        private static final String MARKER = "##scan-stage ";
+        private final Map<String, Long> begins = new HashMap<>();
+        private final Map<String, Long> durations = new ConcurrentHashMap<>();
+        private final Map<String, Instant> starts = new ConcurrentHashMap<>();
+
+        void onLine(String line) {
+            if (!line.startsWith(MARKER)) {
+                // build + sonar:sonar ใน mvn คำสั่งเดียว: goal sonar เริ่ม = build จบ (marker "build end" ตามมาทีหลังจะถูกข้าม)
+                if (begins.containsKey("build") && ScanRunner.SONAR_GOAL_LINE.matcher(line).find()) {
+                    end("build");
+                    begin("analysis");
+                }
+                return;
+            }
+            String[] parts = line.substring(MARKER.length()).trim().split("\\s+");
+            if (parts.length != 2) {
+                return;
+            }
+            if ("begin".equals(parts[1])) {
+                begin(parts[0]);
+            } else if ("end".equals(parts[1])) {
+                end(parts[0]);
+            }
+        }
+
+        private void begin(String stage) {
+            begins.put(stage, System.nanoTime());
+            starts.putIfAbsent(stage, Instant.now());
+        }
+
+        private void end(String stage) {
+            Long began = begins.remove(stage);
+            if (began != null) {
+                durations.merge(stage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began), Long::sum);
+            }
+        }
+
+        Map<String, Long> durations() {
+            return new LinkedHashMap<>(durations);
+        }
+
+        /** เวลาเริ่มครั้งแรกของแต่ละขั้น */
+        Map<String, Instant> startedAt() {
+            return new LinkedHashMap<>(starts);
+        }
+    }
+
+    /**
+     * progress ของ git (clone/fetch) → เขียนลง scan log และส่ง SSE "scan-progress" ให้หน้าบ้าน
+     * JGit batch update ให้แล้ว (~1 ครั้ง/วินาที)
+     */
+    private final class ScanGitProgress implements GitProgress {
+        private final UUID scanId;
+        private final UUID projectId;
+        private final ScanLogAppender scanLog;
+
+        private ScanGitProgress(UUID scanId, UUID projectId, ScanLogAppender scanLog) {
+            this.scanId = scanId;
+            this.projectId = projectId;
+            this.scanLog = scanLog;
+        }
+
+        /** ยกเลิก scan ระหว่าง clone/fetch → JGit หยุดที่ checkpoint ถัดไป */
+        @Override
+        public boolean isCancelled() {
+            return scanProcesses.isCancelled(scanId);
+        }
+
+        @Override
+        public void onProgress(String task, int completed, int total) {
+            String line = (total > 0)
+                    ? String.format("%s: %d%% (%d/%d)", task, completed * 100L / total, completed, total)
+                    : String.format("%s: %d", task, completed);
+            scanLog.append("[git] " + line);
+
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("scanId", scanId);
+            event.put("stage", "GIT");
+            event.put("task", task);
+            event.put("completed", completed);
+            event.put("total", total);
+            sseController.sendEvent(projectId.toString(), "scan-progress", event);
+        }
+    }
 }
@@ -0,0 +1,219 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Models.ScanStageTimingModel;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * timeline ของ scan: เวลาของแต่ละขั้นเก็บเป็น JSON array ใน scans.timeline
+ * [{stage, type, startedAt, durationMs, module?}] ต่อท้ายด้วย jsonb || (worker กับ webhook เขียนคนละเวลา ไม่ทับกัน)
+ * ขั้น: queue → clone → detect → build → upload (sonar analysis + ส่ง report) → ce (รอ Compute Engine จนได้ webhook) → webhook
+ * สถิติ p50/p95/p99 ต่อขั้น/ชนิดโปรเจกต์คำนวณจาก timeline ที่เก็บไว้ (percentile_cont ของ Postgres)
+ * และทุก entry ส่งเข้า Micrometer timer "scan.stage" (tag stage, type) ด้วย → /actuator/metrics/scan.stage
+ */
+@Slf4j
+@Service
+public class ScanTimelineService {
+
+    public static final String QUEUE = "queue";
+    public static final String CLONE = "clone";
+    public static final String CARRY_FORWARD = "carry_forward";
+    public static final String DETECT = "detect";
+    public static final String BUILD = "build";
+    public static final String UPLOAD = "upload";
+    public static final String CE = "ce";
+    public static final String WEBHOOK = "webhook";
+
+    private static final List<String> STAGE_ORDER = List.of(QUEUE, CLONE, CARRY_FORWARD, DETECT, BUILD, UPLOAD, CE, WEBHOOK);
+
+    private static final String STATS_SQL = """
+            SELECT e->>'stage' AS stage, COALESCE(e->>'type', 'UNKNOWN') AS type, count(*) AS samples,
+                   percentile_cont(0.50) WITHIN GROUP (ORDER BY (e->>'durationMs')::bigint) AS p50,
+                   percentile_cont(0.95) WITHIN GROUP (ORDER BY (e->>'durationMs')::bigint) AS p95,
+                   percentile_cont(0.99) WITHIN GROUP (ORDER BY (e->>'durationMs')::bigint) AS p99,
+                   max((e->>'durationMs')::bigint) AS max_ms
+            FROM scans s CROSS JOIN LATERAL jsonb_array_elements(s.timeline) e
+            WHERE s.timeline IS NOT NULL AND (e->>'startedAt')::timestamptz >= ?
+            """;
+
+    private static final String STAGE_TIMER = "scan.stage";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    public ScanTimelineService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Timeline start(UUID scanId) {
+        return new Timeline(scanId);
+    }
+
+    /** เขียนขั้นที่จับไว้ลง scans.timeline (ต่อท้าย) + log สรุปบรรทัดเดียวต่อขั้น */
+    public void flush(Timeline timeline) {
+        List<Map<String, Object>> entries = timeline.drain();
+        if (entries.isEmpty()) {
+            return;
+        }
+        append(timeline.scanId, entries);
+    }
+
+    /**
+     * ขั้นฝั่ง webhook: ce = จากส่ง report เสร็จ (upload จบ) ถึงตอน webhook มาถึง, webhook = เวลาประมวลผล webhook
+     * type ใช้ของ entry ที่ worker เขียนไว้ก่อน
+     */
+    public void recordWebhook(UUID scanId, Instant receivedAt) {
+        try {
+            String raw = jdbcTemplate.queryForObject("SELECT CAST(timeline AS text) FROM scans WHERE scan_id = ?",
+                    String.class, scanId);
+            JsonNode existing = raw != null ? objectMapper.readTree(raw) : null;
+            String type = null;
+            Instant uploadEnd = null;
+            if (existing != null && existing.isArray()) {
+                for (JsonNode e : existing) {
+                    if (type == null && e.hasNonNull("type")) {
+                        type = e.get("type").asText();
+                    }
+                    if (UPLOAD.equals(e.path("stage").asText())) {
+                        Instant end = Instant.parse(e.path("startedAt").asText()).plusMillis(e.path("durationMs").asLong());
+                        uploadEnd = (uploadEnd == null || end.isAfter(uploadEnd)) ? end : uploadEnd;
+                    }
+                }
+            }
+            List<Map<String, Object>> entries = new ArrayList<>(2);
+            if (uploadEnd != null && !receivedAt.isBefore(uploadEnd)) {
+                entries.add(entry(CE, type, uploadEnd, Duration.between(uploadEnd, receivedAt).toMillis(), null));
+            }
+            entries.add(entry(WEBHOOK, type, receivedAt, Duration.between(receivedAt, Instant.now()).toMillis(), null));
+            append(scanId, entries);
+        } catch (Exception e) {
+            // timeline เป็นข้อมูลประกอบ ห้ามทำให้ webhook ล้ม
+            log.warn("Cannot record webhook timing for scan {}: {}", scanId, e.getMessage());
+        }
+    }
+
+    /** p50/p95/p99 ต่อขั้นต่อชนิดโปรเจกต์ ของ entry ที่เริ่มภายใน window ล่าสุด */
+    public List<ScanStageTimingModel> stats(Duration window, @Nullable String projectType) {
+        Timestamp since = Timestamp.from(Instant.now().minus(window));
+        List<Object> args = new ArrayList<>(List.of(since));
+        String sql = STATS_SQL;
+        if (projectType != null && !projectType.isBlank()) {
+            sql += " AND e->>'type' = ?";
+            args.add(projectType.toUpperCase());
+        }
+        sql += " GROUP BY 1, 2";
+
+        List<ScanStageTimingModel> rows = jdbcTemplate.query(sql, (rs, i) -> {
+            ScanStageTimingModel m = new ScanStageTimingModel();
+            m.setStage(rs.getString("stage"));
+            m.setProjectType(rs.getString("type"));
+            m.setSamples(rs.getLong("samples"));
+            m.setP50Ms(Math.round(rs.getDouble("p50")));
+            m.setP95Ms(Math.round(rs.getDouble("p95")));
+            m.setP99Ms(Math.round(rs.getDouble("p99")));
+            m.setMaxMs(rs.getLong("max_ms"));
+            return m;
+        }, args.toArray());
+        rows.sort((a, b) -> {
+            int byType = a.getProjectType().compareTo(b.getProjectType());
+            return byType != 0 ? byType : Integer.compare(stageIndex(a.getStage()), stageIndex(b.getStage()));
+        });
+        return rows;
+    }
+
+    private void append(UUID scanId, List<Map<String, Object>> entries) {
+        try {
+            jdbcTemplate.update(
+                    "UPDATE scans SET timeline = COALESCE(timeline, '[]'::jsonb) || CAST(? AS jsonb) WHERE scan_id = ?",
+                    objectMapper.writeValueAsString(entries), scanId);
+        } catch (JsonProcessingException e) {
+            log.warn("Cannot serialize timeline of scan {}: {}", scanId, e.getMessage());
+            return;
+        }
+        for (Map<String, Object> e : entries) {
+            Timer.builder(STAGE_TIMER)
+                    .description("Duration of one scan stage")
+                    .tag("stage", String.valueOf(e.get("stage")))
+                    .tag("type", String.valueOf(e.get("type")))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(Duration.ofMillis((Long) e.get("durationMs")));
+            log.info("scan-timing scanId={} stage={} type={} ms={}{}", scanId, e.get("stage"), e.get("type"),
+                    e.get("durationMs"), e.containsKey("module") ? " module=" + e.get("module") : "");
+        }
+    }
+
+    private static int stageIndex(String stage) {
+        int i = STAGE_ORDER.indexOf(stage);
+        return i < 0 ? STAGE_ORDER.size() : i;
+    }
+
+    private static Map<String, Object> entry(String stage, @Nullable String type, Instant startedAt, long durationMs,
+                                             @Nullable String module) {
+        Map<String, Object> e = new LinkedHashMap<>();
+        e.put("stage", stage);
+        e.put("type", type != null ? type : "UNKNOWN");
+        e.put("startedAt", startedAt.toString());
+        e.put("durationMs", Math.max(0, durationMs));
+        if (module != null) {
+            e.put("module", module);
+        }
+        return e;
+    }
+
+    /** ขั้นของ scan หนึ่งตัวที่ worker จับไว้ (thread-safe: module รันพร้อมกันได้) เขียนลง DB ตอน flush */
+    public static final class Timeline {
+        private final UUID scanId;
+        private final List<Pending> pending = new ArrayList<>();
+        private volatile String type;
+
+        private Timeline(UUID scanId) {
+            this.scanId = scanId;
+        }
+
+        /** ชนิดของ module หลัก (ใส่ให้ทุก entry ตอน flush รวมถึงขั้นที่จับไว้ก่อนรู้ชนิด) */
+        public void type(String type) {
+            this.type = type;
+        }
+
+        /** ขั้นที่เริ่มที่ startedAt และจบตอนนี้ */
+        public void mark(String stage, Instant startedAt) {
+            add(stage, startedAt, Duration.between(startedAt, Instant.now()).toMillis(), null);
+        }
+
+        public synchronized void add(String stage, Instant startedAt, long durationMs, @Nullable String module) {
+            pending.add(new Pending(stage, startedAt, durationMs, module));
+        }
+
+        private synchronized List<Map<String, Object>> drain() {
+            List<Map<String, Object>> out = new ArrayList<>(pending.size());
+            for (Pending p : pending) {
+                out.add(entry(p.stage, type, p.startedAt, p.durationMs, p.module));
+            }
+            pending.clear();
+            return out;
+        }
+
+        private record Pending(String stage, Instant startedAt, long durationMs, @Nullable String module) {
+        }
+    }
+}
@@ -2,27 +2,33 @@ package com.automate.CodeReview.Service;
 
 import com.automate.CodeReview.Config.SonarProperties;
 import com.automate.CodeReview.Controller.SseController;
+import com.automate.CodeReview.Service.issues.SonarIssueImporter;
 import com.automate.CodeReview.dto.LogPayload;
 import com.automate.CodeReview.dto.SonarWebhookPayload;
-import com.automate.CodeReview.entity.IssuesEntity;
 import com.automate.CodeReview.entity.ProjectsEntity;
 import com.automate.CodeReview.entity.ScansEntity;
-import com.automate.CodeReview.repository.IssuesRepository;
 import com.automate.CodeReview.repository.ProjectsRepository;
 import com.automate.CodeReview.repository.ScansRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 
@@ -31,23 +37,34 @@ import java.util.stream.Collectors;
 public class SonarWebhookService {
     private final ProjectsRepository projectsRepository;
     private final ScansRepository scansRepository;
-    private final IssuesRepository issuesRepository;
     private final WebClient sonarWebClient;
     private final SonarProperties props;
     private final NotiService notiService;
     private final SseController sseController;
+    private final ScanCompletionRegistry completionRegistry;
 
     private final ObjectMapper objectMapper;
-
-    public SonarWebhookService(ProjectsRepository projectsRepository, ScansRepository scansRepository,  IssuesRepository issuesRepository, SonarProperties props, WebClient sonarWebClient , ObjectMapper objectMapper, NotiService notiService, SseController sseController) {
+    private final DiffScanService diffScanService;
+    private final ScanTimelineService scanTimeline;
+    private final SonarIssueImporter issueImporter;
+    /** งานหลังได้ผลจาก Sonar (DB, issue, SSE) กลับมารันบน webhookExecutor ไม่รันบน event loop ของ WebClient */
+    private final Scheduler webhookScheduler;
+
+    public SonarWebhookService(ProjectsRepository projectsRepository, ScansRepository scansRepository, SonarIssueImporter issueImporter, SonarProperties props, WebClient sonarWebClient , ObjectMapper objectMapper, NotiService notiService, SseController sseController,
+                               ScanCompletionRegistry completionRegistry, DiffScanService diffScanService,
+                               ScanTimelineService scanTimeline, @Qualifier("webhookExecutor") Executor webhookExecutor) {
         this.projectsRepository = projectsRepository;
         this.scansRepository = scansRepository;
-        this.issuesRepository = issuesRepository;
+        this.issueImporter = issueImporter;
         this.sonarWebClient = sonarWebClient;
         this.props = props;
         this.objectMapper = objectMapper;
         this.notiService = notiService;
         this.sseController = sseController;
+        this.completionRegistry = completionRegistry;
+        this.diffScanService = diffScanService;
+        this.scanTimeline = scanTimeline;
+        this.webhookScheduler = Schedulers.fromExecutor(webhookExecutor);
     }
 
     @Value("${sonar.host-url}")
@@ -95,25 +112,24 @@ public class SonarWebhookService {
         return diff == 0;
     }
 
-    private JsonNode fetchQualityGateNode(@Nullable String analysisId,
-                                          String projectKey,
-                                          @Nullable String branch) {
-        if (analysisId != null && !analysisId.isBlank()) {
-            return sonarWebClient.get()
-                    .uri(u -> u.path("/api/qualitygates/project_status")
-                            .queryParam("analysisId", analysisId)
-                            .build())
-                    .retrieve().bodyToMono(JsonNode.class).block();
-        }
-        // fallback: project + branch (ครอบคลุมเคส analysisId ยังไม่มา)
+    /** analysisId ยังไม่มี → ใช้ project + branch (ครอบคลุมเคส analysisId ยังไม่มา) */
+    private Mono<Optional<JsonNode>> fetchQualityGateNode(@Nullable String analysisId,
+                                                          String projectKey,
+                                                          @Nullable String branch) {
         return sonarWebClient.get()
                 .uri(u -> {
-                    var b = u.path("/api/qualitygates/project_status")
-                            .queryParam("projectKey", projectKey);
-                    if (branch != null && !branch.isBlank()) b.queryParam("branch", branch);
+                    var b = u.path("/api/qualitygates/project_status");
+                    if (analysisId != null && !analysisId.isBlank()) {
+                        b.queryParam("analysisId", analysisId);
+                    } else {
+                        b.queryParam("projectKey", projectKey);
+                        if (branch != null && !branch.isBlank()) b.queryParam("branch", branch);
+                    }
                     return b.build();
                 })
-                .retrieve().bodyToMono(JsonNode.class).block();
+                .retrieve().bodyToMono(JsonNode.class)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
     }
 
     /* ---------------- Parse ---------------- */
@@ -123,11 +139,35 @@ public class SonarWebhookService {
     }
 
     /* ---------------- Entry (async) ---------------- */
-    @Async("webhookExecutor")
-    public void processAsync(SonarWebhookPayload p, String projectHeader, String deliveryId) {
-        log.info("processAsync on thread={}", Thread.currentThread().getName());
-        try { process(p, projectHeader, deliveryId); }
-        catch (Exception e) { log.error("webhook process error: {}", e.toString(), e); }
+    /** เรียก Sonar แบบ non-blocking แล้วคืน thread ทันที งานที่เหลือต่อบน webhookExecutor เมื่อได้ผลครบ */
+    public void processAsync(SonarWebhookPayload p, String projectHeader, String deliveryId, Instant receivedAt) {
+        try {
+            process(p, projectHeader, deliveryId, receivedAt, null)
+                    .subscribe(null, e -> log.error("webhook process error: {}", e.toString(), e));
+        } catch (Exception e) {
+            log.error("webhook process error: {}", e.toString(), e);
+        }
+    }
+
+    /**
+     * ScanReconciler: CE task ของ scan นี้ SUCCESS แต่ webhook หาย (แอปล่มตอน webhook มา)
+     * → ปิด scan ด้วยขั้นตอนเดียวกับ webhook (quality gate, metrics, import issue) โดยระบุ scan ตรง ๆ
+     * deliveryId = "reconcile:" + taskId กันทำซ้ำ
+     */
+    public void reconcile(UUID scanId, String projectKey, String taskId, String analysisId) throws Exception {
+        SonarWebhookPayload p = new SonarWebhookPayload();
+        SonarWebhookPayload.Project project = new SonarWebhookPayload.Project();
+        project.setKey(projectKey);
+        p.setProject(project);
+        p.setTaskId(taskId);
+        p.setAnalysisId(analysisId);
+        p.setStatus("SUCCESS");
+        process(p, projectKey, "reconcile:" + taskId, null, scanId).block();
+    }
+
+    /** ScanReconciler: issue ของ module รองใน monorepo (webhook ของ module หายไปพร้อม scan หลัก) */
+    public void importModuleIssues(String moduleProjectKey, UUID scanId) {
+        scansRepository.findById(scanId).ifPresent(scan -> issueImporter.importIssues(moduleProjectKey, scan.getScanId()));
     }
 
     // --- helpers (วางบนสุดของ service) ---
@@ -202,7 +242,13 @@ public class SonarWebhookService {
     private static String nvl(String v, String d){ return (v==null || v.isBlank())?d:v; }
 
     /* ---------------- Main workflow ---------------- */
-    private void process(SonarWebhookPayload p, String projectHeader, String deliveryId) throws Exception {
+    /**
+     * receivedAt = เวลาที่ controller รับ webhook (ใช้คิดขั้น ce/webhook ของ timeline; null = มาจาก reconciler ไม่บันทึก)
+     * targetScanId = scan ที่รู้อยู่แล้วว่าเป็นของ analysis นี้ (reconciler) ไม่ต้องเดาจาก registry/โปรเจกต์
+     * เรียก Sonar พร้อมกันผ่าน fetchSonarResult แล้วค่อยอัปเดต scan บน webhookExecutor (applyResult)
+     */
+    private Mono<Void> process(SonarWebhookPayload p, String projectHeader, String deliveryId,
+                               @Nullable Instant receivedAt, @Nullable UUID targetScanId) {
         String projectKey = (p.getProject()!=null && p.getProject().getKey()!=null)
                 ? p.getProject().getKey()
                 : projectHeader;
@@ -211,36 +257,95 @@ public class SonarWebhookService {
 
         if (projectKey == null || taskId == null) {
             log.warn("webhook missing projectKey/taskId, delivery={}", deliveryId);
-            return;
+            return Mono.empty();
+        }
+
+        // analysis ของ module รองใน monorepo → issue เข้า scan หลัก (ไม่ใช่ project/scan ใหม่)
+        Optional<UUID> moduleScanId = targetScanId == null ? completionRegistry.findModuleScan(projectKey) : Optional.empty();
+        if (moduleScanId.isPresent()) {
+            return Mono.fromRunnable(() -> {
+                ScansEntity parent = scansRepository.findById(moduleScanId.get()).orElse(null);
+                if (parent != null) {
+                    issueImporter.importIssues(projectKey, parent.getScanId());
+                    log.info("Imported issues of module {} into scan {} (task={})", projectKey, parent.getScanId(), taskId);
+                }
+            }).subscribeOn(webhookScheduler).then();
+        }
+
+        // 🔥 1. เช็ค deliveryId ก่อน (ป้องกัน duplicate webhook)
+        if (deliveryId != null && !deliveryId.isBlank()) {
+            Optional<ScansEntity> existingByDelivery = scansRepository.findByDeliveryId(deliveryId);
+            if (existingByDelivery.isPresent()) {
+                log.warn("⚠️ Webhook already processed: deliveryId={}", deliveryId);
+                return Mono.empty();
+            }
         }
 
+        final String branch = Optional.ofNullable(p.getBranch())
+                .map(b -> b.getName()).orElse(null);
+
+        return fetchSonarResult(taskId, p.getAnalysisId(), projectKey, branch)
+                .publishOn(webhookScheduler)
+                .doOnNext(r -> applyResult(p, projectKey, taskId, deliveryId, receivedAt, targetScanId, r))
+                .onErrorResume(e -> {
+                    log.error("Sonar calls failed for webhook proj={}, task={}: {}", projectKey, taskId, e.toString());
+                    // reconciler ปิด scan ของตัวเองด้วย FAIL_SQL (มี guard) → ส่ง error กลับไป ไม่แตะแถวใดที่นี่
+                    if (targetScanId != null) {
+                        return Mono.error(e);
+                    }
+                    return Mono.<SonarResult>fromRunnable(() ->
+                                    markFailed(findWebhookScan(p, projectKey, taskId, p.getAnalysisId())))
+                            .subscribeOn(webhookScheduler);
+                })
+                .then();
+    }
+
+    /**
+     * เรียก Sonar ทั้งหมดของ webhook หนึ่งครั้ง
+     * - measures (rating ทั้ง new_* / overall + metrics ที่ตั้งไว้) รวมเป็น request เดียว ยิงพร้อมกับสาย analysisId → quality gate
+     * - analysisId ไม่มาใน payload → ถาม /api/ce/task ซ้ำด้วย backoff ของ retryWhen (ไม่มี Thread.sleep)
+     */
+    private Mono<SonarResult> fetchSonarResult(String taskId, @Nullable String payloadAnalysisId,
+                                               String projectKey, @Nullable String branch) {
+        Mono<Optional<String>> analysisId;
+        if (payloadAnalysisId != null && !payloadAnalysisId.isBlank()) {
+            log.info("✅ Got analysisId from payload: {}", payloadAnalysisId);
+            analysisId = Mono.just(Optional.of(payloadAnalysisId));
+        } else {
+            log.info("🔍 analysisId not in payload, fetching from API...");
+            analysisId = fetchAnalysisIdWithRetry(taskId)
+                    .doOnNext(id -> log.info("✅ Got analysisId from API: {}", id))
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty());
+        }
+
+        Mono<Tuple2<Optional<String>, Optional<JsonNode>>> gate = analysisId
+                .flatMap(id -> fetchQualityGateNode(id.orElse(null), projectKey, branch).map(qg -> Tuples.of(id, qg)));
+
+        return Mono.zip(gate, fetchMeasures(projectKey, branch))
+                .map(t -> new SonarResult(t.getT1().getT1().orElse(null), t.getT1().getT2().orElse(null), t.getT2()));
+    }
+
+    /** ผลจาก Sonar → ปลุก scan ที่รออยู่ + อัปเดต scan/issue/SSE (รันบน webhookExecutor) */
+    private void applyResult(SonarWebhookPayload p, String projectKey, String taskId, String deliveryId,
+                             @Nullable Instant receivedAt, @Nullable UUID targetScanId, SonarResult result) {
         ScansEntity scan = null;
 
         try {
-            final String branch = Optional.ofNullable(p.getBranch())
-                    .map(b -> b.getName()).orElse(null);
-
-            // 🔥 1. เช็ค deliveryId ก่อน (ป้องกัน duplicate webhook)
-            if (deliveryId != null && !deliveryId.isBlank()) {
-                Optional<ScansEntity> existingByDelivery = scansRepository.findByDeliveryId(deliveryId);
-                if (existingByDelivery.isPresent()) {
-                    log.warn("⚠️ Webhook already processed: deliveryId={}", deliveryId);
-                    return;
-                }
-            }
-            // 1) task -> analysisId
-            String webhookAnalysisId = p.getAnalysisId();
-            if (webhookAnalysisId == null || webhookAnalysisId.isBlank()) {
-                log.info("🔍 analysisId not in payload, fetching from API...");
-                webhookAnalysisId = fetchAnalysisIdWithRetry(taskId);
-                if (webhookAnalysisId != null) {
-                    log.info("✅ Got analysisId from API: {}", webhookAnalysisId);
-                }
-            } else {
-                log.info("✅ Got analysisId from payload: {}", webhookAnalysisId);
+            String webhookAnalysisId = result.analysisId();
+
+            // 1.1) ปลุก scan ที่รออยู่ (ScanService) ด้วย taskId / referenceId / projectKey
+            String referenceId = Optional.ofNullable(p.getProperties())
+                    .map(m -> m.get("sonar.analysis.referenceId")).orElse(null);
+            // reconciler ระบุ scan มาเอง: ห้ามแตะ registry (match ด้วย projectKey อาจไปโดน scan ใหม่ที่กำลังรันอยู่)
+            Optional<UUID> pendingScanId = Optional.empty();
+            if (targetScanId == null) {
+                pendingScanId = (webhookAnalysisId != null && !webhookAnalysisId.isBlank())
+                        ? completionRegistry.complete(taskId, referenceId, projectKey, webhookAnalysisId)
+                        : completionRegistry.findScanId(taskId, referenceId, projectKey);
             }
 
-            JsonNode qgNode = fetchQualityGateNode(webhookAnalysisId, projectKey, branch);
+            JsonNode qgNode = result.qualityGate();
             String qgStatus = null;
             List<SonarWebhookPayload.Condition> conditions =
                     Optional.ofNullable(p.getQualityGate()).map(SonarWebhookPayload.QualityGate::getConditions).orElse(null);
@@ -277,8 +382,8 @@ public class SonarWebhookService {
                     ratingFromConds(conditions, "security_rating")
             );
 
-// 2) ถ้ายังไม่มี → fallback จาก measures ที่คุณมีอยู่แล้ว
-            var r = fetchRatingsWithFallback(projectKey, branch);
+// 2) ถ้ายังไม่มี → fallback จาก measures (new_* ก่อน ไม่มีค่อยใช้ overall)
+            var r = ratingsWithFallback(result.measures());
             if (maintainNum == null) maintainNum = r.mai();
             if (reliabNum == null) reliabNum = r.rel();
             if (secNum == null) secNum = r.sec();
@@ -293,7 +398,7 @@ public class SonarWebhookService {
 
 
             // 4) Metrics (ถ้าต้องการ)
-            Map<String, Object> metrics = fetchMetrics(projectKey, branch);
+            Map<String, Object> metrics = metricsOf(result.measures());
 
             // 5) upsert project
             ProjectsEntity project = projectsRepository.findBySonarProjectKey(projectKey)
@@ -303,10 +408,17 @@ public class SonarWebhookService {
                         pe.setName(projectKey);
                         return projectsRepository.save(pe);
                     });
+            Optional<ScansEntity> scanOpt = (targetScanId != null) ? scansRepository.findById(targetScanId) : Optional.empty();
+            // 7.0 scan ที่ลงทะเบียนรอ webhook ไว้ (แม่นสุด)
+            if (scanOpt.isEmpty() && pendingScanId.isPresent()) {
+                scanOpt = scansRepository.findById(pendingScanId.get());
+                if (scanOpt.isPresent()) {
+                    log.info("หา scan เจอจาก completion registry: {}", pendingScanId.get());
+                }
+            }
 
-            Optional<ScansEntity> scanOpt = Optional.empty();
             // 7.1 หาด้วย analysisId ก่อน (ถ้ามี)
-            if (webhookAnalysisId != null && !webhookAnalysisId.isBlank()) {
+            if (scanOpt.isEmpty() && webhookAnalysisId != null && !webhookAnalysisId.isBlank()) {
                 scanOpt = scansRepository.findByAnalysisId(webhookAnalysisId);
                 if (scanOpt.isPresent()) {
                     log.info("หา scan เจอจาก analysisId: {}", webhookAnalysisId);
@@ -402,8 +514,14 @@ public class SonarWebhookService {
             notiService.scanNotiAsync(savedScan.getScanId(), savedScan.getProject().getProjectId(), "Scan Success!");
 
 
-            // 7) (ถ้ามี) import issues ต่อ…
-            importIssues(projectKey, savedScan);
+            // 7) (ถ้ามี) import issues ต่อ… (incremental จาก scan ก่อนหน้า; DIFF / monorepo ไม่ใช้เป็นฐานของครั้งถัดไป)
+            issueImporter.syncIssues(projectKey, savedScan.getScanId(), p.getAnalysedAt(),
+                    !DiffScanService.MODE_DIFF.equals(savedScan.getScanMode()) && savedScan.getModules() == null);
+            // DIFF scan: Sonar วิเคราะห์แค่ไฟล์ที่เปลี่ยน → เติม issue ไฟล์อื่นจาก base scan
+            diffScanService.mergeIssues(savedScan);
+            if (receivedAt != null) {
+                scanTimeline.recordWebhook(savedScan.getScanId(), receivedAt);
+            }
 
             log.info("✅ Webhook processed: proj={}, analysis={}, QG={}, conds={}",
                     projectKey, savedScan.getAnalysisId(), savedScan.getQualityGate(),
@@ -424,34 +542,59 @@ public class SonarWebhookService {
                                     "repoId", proj.getProjectId().toString()
                             )
                     ));
-        }catch (Exception e) {
-            try {
-                if (scan == null) {
-                    Optional<ScansEntity> lastestScan = scansRepository.findTopByProject_SonarProjectKeyOrderByStartedAtDesc(projectKey);
-                    if (lastestScan.isPresent()) scan = lastestScan.get();
-                }
-                if (scan != null) {
-                    // 🔥 ป้องกันเขียนทับ scan ที่สำเร็จแล้ว
-                    if ("SUCCESS".equals(scan.getStatus())) {
-                        log.warn("⚠️ Scan already SUCCESS, not overwriting. Error was in post-processing.");
-                        return; // หรือ throw exception ใหม่
-                    }
+        } catch (Exception e) {
+            log.error("webhook process error: {}", e.toString(), e);
+            if (targetScanId != null) {
+                throw new IllegalStateException("Cannot apply Sonar result to scan " + targetScanId, e);
+            }
+            markFailed(scan != null ? scan : findWebhookScan(p, projectKey, taskId, result.analysisId()));
+        }
+    }
 
-                    scan.setStatus("FAILED");
-                    scan.setQualityGate("N/A");
-                    scan.setCompletedAt(LocalDateTime.now());
-                    scansRepository.save(scan);
+    /**
+     * scan ของ webhook นี้สำหรับ error path: registry → analysisId (ลำดับเดียวกับ applyResult)
+     * reconcile (targetScanId) ไม่มาถึงนี่: error ถูกส่งกลับให้ ScanReconciler ปิดแถวของตัวเอง
+     * ไม่เดาจาก scan ล่าสุดของโปรเจกต์ เพราะอาจเป็น scan อื่นที่กำลังรันอยู่
+     */
+    private @Nullable ScansEntity findWebhookScan(SonarWebhookPayload p, String projectKey, String taskId,
+                                                 @Nullable String analysisId) {
+        String referenceId = Optional.ofNullable(p.getProperties())
+                .map(m -> m.get("sonar.analysis.referenceId")).orElse(null);
+        Optional<ScansEntity> scan = completionRegistry.findScanId(taskId, referenceId, projectKey)
+                .flatMap(scansRepository::findById);
+        if (scan.isEmpty() && analysisId != null && !analysisId.isBlank()) {
+            scan = scansRepository.findByAnalysisId(analysisId);
+        }
+        if (scan.isEmpty()) {
+            log.warn("No scan matches failed webhook proj={}, task={}; nothing marked FAILED", projectKey, taskId);
+        }
+        return scan.orElse(null);
+    }
 
-                    notiService.scanNotiAsync(
-                            scan.getScanId(),
-                            scan.getProject().getProjectId(),
-                            "Scan Failed!"
-                    );
+    /** ประมวลผลไม่สำเร็จ → scan เป็น FAILED ยกเว้น SUCCESS ไปแล้ว */
+    private void markFailed(@Nullable ScansEntity scan) {
+        try {
+            if (scan != null) {
+                // 🔥 ป้องกันเขียนทับ scan ที่สำเร็จแล้ว
+                if ("SUCCESS".equals(scan.getStatus())) {
+                    log.warn("⚠️ Scan already SUCCESS, not overwriting. Error was in post-processing.");
+                    return;
                 }
 
-            } catch (Exception ex) {
-                log.info("Exception: ", ex.getMessage());
+                scan.setStatus("FAILED");
+                scan.setQualityGate("N/A");
+                scan.setCompletedAt(LocalDateTime.now());
+                scansRepository.save(scan);
+
+                notiService.scanNotiAsync(
+                        scan.getScanId(),
+                        scan.getProject().getProjectId(),
+                        "Scan Failed!"
+                );
             }
+
+        } catch (Exception ex) {
+            log.info("Exception: ", ex.getMessage());
         }
     }
     //add logfliepath
@@ -501,101 +644,108 @@ public class SonarWebhookService {
         }
     }
 
-    private @Nullable String fetchAnalysisIdWithRetry(String taskId) {
-        if (taskId == null) return null;
-        int maxTries = 5;
-        long delayMs = 2000;
-        for (int i = 0; i < maxTries; i++) {
-            String aid = fetchAnalysisId(taskId);
-            if (aid != null && !aid.isBlank()) return aid;
-            try { Thread.sleep(delayMs); } catch (InterruptedException ignored) {}
-        }
-        return null;
+    /** ถาม /api/ce/task จนได้ analysisId: สูงสุด 5 ครั้ง เว้นระยะแบบ backoff (1s, 2s, 4s, 4s) ไม่ได้ → empty */
+    private Mono<String> fetchAnalysisIdWithRetry(String taskId) {
+        return fetchAnalysisId(taskId)
+                .switchIfEmpty(Mono.error(new AnalysisNotReadyException()))
+                .retryWhen(Retry.backoff(ANALYSIS_ID_RETRIES, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(4))
+                        .filter(AnalysisNotReadyException.class::isInstance))
+                .onErrorResume(e -> {
+                    log.warn("analysisId of task {} not available: {}", taskId, e.toString());
+                    return Mono.empty();
+                });
     }
 
     /* ---------------- Sonar calls ---------------- */
 
-    private Ratings fetchRatingsWithFallback(String projectKey, @Nullable String branch) {
-        Ratings r = fetchRatings(projectKey, branch, true);
-        if (r.rel()==null || r.sec()==null || r.mai()==null || (r.hotspotsReviewed()==null && r.secReviewRating()==null)) {
-            Ratings o = fetchRatings(projectKey, branch, false);
-            return new Ratings(
-                    r.rel()!=null ? r.rel() : o.rel(),
-                    r.sec()!=null ? r.sec() : o.sec(),
-                    r.mai()!=null ? r.mai() : o.mai(),
-                    r.hotspotsReviewed()!=null ? r.hotspotsReviewed() : o.hotspotsReviewed(),
-                    r.secReviewRating()!=null ? r.secReviewRating() : o.secReviewRating()
-            );
-        }
-        return r;
-    }
+    private static final int ANALYSIS_ID_RETRIES = 4;
 
-    /** new=true => new_* ; new=false => overall */
-    private Ratings fetchRatings(String projectKey, @Nullable String branch, boolean isNew) {
-        String metrics = isNew
-                ? "new_reliability_rating,new_security_rating,new_maintainability_rating,new_security_hotspots_reviewed,new_security_review_rating"
-                : "reliability_rating,security_rating,sqale_rating,security_hotspots_reviewed,security_review_rating";
-        JsonNode root = sonarWebClient.get()
+    private static final List<String> NEW_RATING_METRICS = List.of(
+            "new_reliability_rating", "new_security_rating", "new_maintainability_rating",
+            "new_security_hotspots_reviewed", "new_security_review_rating");
+
+    private static final List<String> RATING_METRICS = List.of(
+            "reliability_rating", "security_rating", "sqale_rating",
+            "security_hotspots_reviewed", "security_review_rating");
+
+    /** rating new_* / overall + metrics ที่ตั้งไว้ ใน /api/measures/component ครั้งเดียว (key ซ้ำถูกรวม) */
+    private Mono<JsonNode> fetchMeasures(String projectKey, @Nullable String branch) {
+        Set<String> keys = new LinkedHashSet<>(NEW_RATING_METRICS);
+        keys.addAll(RATING_METRICS);
+        keys.addAll(Arrays.asList(sanitizeMetrics(props.getMetricsCsv(), metricsCsv).split(",")));
+        return sonarWebClient.get()
                 .uri(u -> {
                     var b = u.path("/api/measures/component")
                             .queryParam("component", projectKey)
-                            .queryParam("metricKeys", metrics);
+                            .queryParam("metricKeys", String.join(",", keys));
                     if (branch != null && !branch.isBlank()) b.queryParam("branch", branch);
                     return b.build();
                 })
-                .retrieve().bodyToMono(JsonNode.class).block();
+                .retrieve().bodyToMono(JsonNode.class)
+                .defaultIfEmpty(objectMapper.createObjectNode())
+                // เหมือน fetchMetrics เดิม: ดึง measures ไม่ได้ → scan ยังจบได้ (rating/metrics ว่าง)
+                .onErrorResume(e -> {
+                    log.warn("Cannot fetch measures of {}: {}", projectKey, e.toString());
+                    return Mono.just(objectMapper.createObjectNode());
+                });
+    }
 
+    /** new_* ก่อน ตัวไหนไม่มีค่าค่อยใช้ overall */
+    private static Ratings ratingsWithFallback(JsonNode measures) {
+        Ratings r = ratings(measures, true);
+        Ratings o = ratings(measures, false);
+        return new Ratings(
+                r.rel()!=null ? r.rel() : o.rel(),
+                r.sec()!=null ? r.sec() : o.sec(),
+                r.mai()!=null ? r.mai() : o.mai(),
+                r.hotspotsReviewed()!=null ? r.hotspotsReviewed() : o.hotspotsReviewed(),
+                r.secReviewRating()!=null ? r.secReviewRating() : o.secReviewRating()
+        );
+    }
+
+    /** new=true => new_* ; new=false => overall */
+    private static Ratings ratings(JsonNode root, boolean isNew) {
         Double rel=null, sec=null, mai=null, hot=null, srr=null;
-        if (root != null) {
-            for (JsonNode m : root.path("component").path("measures")) {
-                String k = m.path("metric").asText();
-                Double v = m.has("value") ? m.get("value").asDouble() : null;
-                switch (k) {
-                    case "new_reliability_rating", "reliability_rating" -> rel = v;
-                    case "new_security_rating", "security_rating" -> sec = v;
-                    case "new_maintainability_rating", "sqale_rating" -> mai = v;
-                    case "new_security_hotspots_reviewed", "security_hotspots_reviewed" -> hot = v;
-                    case "new_security_review_rating", "security_review_rating" -> srr = v;
-                }
+        for (JsonNode m : root.path("component").path("measures")) {
+            String k = m.path("metric").asText();
+            if (k.startsWith("new_") != isNew) continue;
+            Double v = m.has("value") ? m.get("value").asDouble() : null;
+            switch (k) {
+                case "new_reliability_rating", "reliability_rating" -> rel = v;
+                case "new_security_rating", "security_rating" -> sec = v;
+                case "new_maintainability_rating", "sqale_rating" -> mai = v;
+                case "new_security_hotspots_reviewed", "security_hotspots_reviewed" -> hot = v;
+                case "new_security_review_rating", "security_review_rating" -> srr = v;
             }
         }
         return new Ratings(rel, sec, mai, hot, srr);
     }
 
 
-    private @Nullable String fetchAnalysisId(String taskId) {
-        JsonNode n = sonarWebClient.get()
+    private Mono<String> fetchAnalysisId(String taskId) {
+        return sonarWebClient.get()
                 .uri(uri -> uri.path("/api/ce/task").queryParam("id", taskId).build())
-                .retrieve().bodyToMono(JsonNode.class).block();
-        String id = (n!=null) ? n.path("task").path("analysisId").asText(null) : null;
-        return (id!=null && !id.isBlank()) ? id : null;
+                .retrieve().bodyToMono(JsonNode.class)
+                .mapNotNull(n -> {
+                    String id = n.path("task").path("analysisId").asText(null);
+                    return (id!=null && !id.isBlank()) ? id : null;
+                });
     }
 
 
-    private Map<String,Object> fetchMetrics(String projectKey, @Nullable String branch) {
+    /** เฉพาะ metric ที่ตั้งไว้ (sonar.metrics) จาก measures ที่ดึงมารวมกับ rating */
+    private Map<String,Object> metricsOf(JsonNode root) {
+        Set<String> wanted = new HashSet<>(Arrays.asList(sanitizeMetrics(props.getMetricsCsv(), metricsCsv).split(",")));
         Map<String,Object> result = new LinkedHashMap<>();
-        try {
-            JsonNode root = sonarWebClient.get()
-                    .uri(u -> {
-                        var b = u.path("/api/measures/component")
-                                .queryParam("component", projectKey)
-                                .queryParam("metricKeys", sanitizeMetrics(props.getMetricsCsv(), metricsCsv));
-                        if (branch != null && !branch.isBlank()) b.queryParam("branch", branch);
-                        return b.build();
-                    })
-                    .retrieve().bodyToMono(JsonNode.class).block();
-
-            JsonNode measures = (root==null) ? null : root.path("component").path("measures");
-            if (measures != null && measures.isArray()) {
-                for (JsonNode m : measures) {
-                    String k = m.path("metric").asText();
-                    String v = m.hasNonNull("value") ? m.get("value").asText() : "N/A";
-                    result.put(k, v);
-                }
+        JsonNode measures = root.path("component").path("measures");
+        if (measures.isArray()) {
+            for (JsonNode m : measures) {
+                String k = m.path("metric").asText();
+                if (!wanted.contains(k)) continue;
+                String v = m.hasNonNull("value") ? m.get("value").asText() : "N/A";
+                result.put(k, v);
             }
-        } catch (Exception e) {
-            result.put("error","fetch metrics failed");
-            result.put("message", e.getMessage());
         }
         return result;
     }
@@ -608,56 +758,19 @@ public class SonarWebhookService {
         return out.isEmpty() ? "bugs" : out;
     }
 
-    /* ---------------- Import Issues (paged) ---------------- */
-
-    private void importIssues(String projectKey, ScansEntity scan) {
-        int page = 1, ps = props.getPageSize();
-        while (true) {
-            final int p  = page;
-            final int sz = ps;
-            JsonNode resp = sonarWebClient.get()
-                    .uri(uri -> uri.path("/api/issues/search")
-                            .queryParam("projects", projectKey) // แก้จาก projectKeys -> projects
-                            .queryParam("p", p)
-                            .queryParam("ps", sz)
-                            .build())
-                    .retrieve().bodyToMono(JsonNode.class).block();
-
-            JsonNode arr = (resp==null) ? null : resp.path("issues");
-            if (arr == null || !arr.isArray() || arr.isEmpty()) break;
-
-            arr.forEach(node -> upsertIssue(scan, node, projectKey));
-
-            int total = (resp!=null) ? resp.path("paging").path("total").asInt(page*ps) : page*ps;
-            if (page * ps >= total) break;
-            page++;
-        }
-    }
-
-    private void upsertIssue(ScansEntity scan, JsonNode i, String projectKey) {
-        String issueProject = i.path("project").asText(""); // หรือ "projectKey" แล้วแต่เวอร์ชัน
-        if (!projectKey.equals(issueProject)) return; // ข้ามถ้าไม่ตรง
-
-        String key = i.path("key").asText();
-        IssuesEntity entity = issuesRepository
-                .findByScan_ScanIdAndIssueKey(scan.getScanId(), key)
-                .orElseGet(IssuesEntity::new);
-
-        entity.setScan(scan);
-        entity.setIssueKey(key);
-        entity.setType(i.path("type").asText());
-        entity.setSeverity(i.path("severity").asText());
-        entity.setComponent(i.path("component").asText());
-        entity.setMessage(i.path("message").asText());
-        entity.setStatus(i.path("status").asText());
-        entity.setAssignedTo(null);
-
-        issuesRepository.save(entity);
-    }
-
     /** ดึงเรตติ้ง/เปอร์เซ็นต์สำหรับทำ 4 gate */
     private record Ratings(Double rel, Double sec, Double mai, Double hotspotsReviewed, Double secReviewRating) {}
 
+    /** ผลจาก Sonar ของ webhook หนึ่งครั้ง (analysisId / quality gate อาจไม่มี) */
+    private record SonarResult(@Nullable String analysisId, @Nullable JsonNode qualityGate, JsonNode measures) {}
+
+    /** /api/ce/task ยังไม่มี analysisId → ให้ retryWhen ลองใหม่ */
+    private static final class AnalysisNotReadyException extends RuntimeException {
+        private AnalysisNotReadyException() {
+            super("analysis not ready yet", null, false, false);
+        }
+    }
+
 }
 
 
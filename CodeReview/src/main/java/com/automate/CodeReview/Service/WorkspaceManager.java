@@ -0,0 +1,428 @@
+package com.automate.CodeReview.Service;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.Models.WorkspaceStatsModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * working copy ใต้ scan.workspace-dir (1 โปรเจกต์ = 1 โฟลเดอร์ถาวร ดู RepositoryService.workspaceDir)
+ * - acquire(): จองโฟลเดอร์แบบ atomic (ConcurrentHashMap.compute ต่อ path) นับ lease ตลอด clone/build/sonar
+ *   โฟลเดอร์ที่มี lease ไม่ถูก evict
+ * - index ขนาดต่อโฟลเดอร์ในหน่วยความจำ: สร้างตอน start แล้ววัดใหม่เมื่อ lease สุดท้ายคืน
+ * - ขนาดรวมเกิน scan.workspace.max-size-mb → evict ตัวที่ไม่ได้ใช้นานสุด (scan ถัดไปของโปรเจกต์นั้น clone ใหม่)
+ * - ลบ = rename เข้า .trash/ (ชื่อว่างทันที) แล้วลบจริงด้วย Files.walkFileTree บน workspaceExecutor
+ *   ลบไม่หมด (ไฟล์ถูก lock บน Windows) ค้างใน .trash รอรอบ maintain()
+ * โฟลเดอร์ที่ขึ้นต้นด้วย "." (.mirrors, .trash) ไม่นับเป็น working copy
+ */
+@Slf4j
+@Service
+public class WorkspaceManager {
+
+    private static final String TRASH = ".trash";
+
+    private final Path root;
+    private final ScanProperties.Workspace props;
+    private final ThreadPoolTaskExecutor workspaceExecutor;
+
+    private final Map<Path, Slot> slots = new ConcurrentHashMap<>();
+    /** path ใน .trash ที่อยู่ในคิวลบแล้ว (กัน sweep ส่งซ้ำ) */
+    private final Set<Path> deleting = ConcurrentHashMap.newKeySet();
+
+    // ----- metrics (สะสมตั้งแต่ start) -----
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong deletedDirs = new AtomicLong();
+    private final AtomicLong evictedDirs = new AtomicLong();
+    private final AtomicLong deleteFailures = new AtomicLong();
+    private final AtomicLong deleteMs = new AtomicLong();
+
+    public WorkspaceManager(ScanProperties scanProperties,
+                            @Qualifier("workspaceExecutor") ThreadPoolTaskExecutor workspaceExecutor) {
+        this.root = Paths.get(scanProperties.getWorkspaceDir()).toAbsolutePath().normalize();
+        this.props = scanProperties.getWorkspace();
+        this.workspaceExecutor = workspaceExecutor;
+    }
+
+    /** ตอน start: index ของโฟลเดอร์ที่มีอยู่ + ลบของค้างใน .trash (เบื้องหลัง) */
+    @jakarta.annotation.PostConstruct
+    public void start() {
+        submit(() -> {
+            rebuildIndex();
+            sweepTrash();
+            evictIfOverQuota();
+        });
+    }
+
+    /** จอง working copy (lease ซ้อนกันได้) ต้อง close() เมื่อเลิกใช้ */
+    public Lease acquire(Path dir) {
+        Path key = key(dir);
+        slots.compute(key, (k, s) -> {
+            Slot x = (s != null) ? s : new Slot();
+            x.refs++;
+            x.lastUsed = Instant.now();
+            return x;
+        });
+        return new Lease(key);
+    }
+
+    /**
+     * ทิ้งโฟลเดอร์ (ลบโปรเจกต์, working copy เสีย, โฟลเดอร์รูปแบบเก่า): rename เข้า .trash แล้วลบเบื้องหลัง
+     * อยู่นอก workspaceDir → ลบที่เดิมเบื้องหลัง, rename ไม่ได้ (ไฟล์ถูก lock) → ลบที่เดิมแบบรอ
+     * คืน true ถ้า path ว่างแล้ว
+     */
+    public boolean discard(Path dir) {
+        Path key = key(dir);
+        AtomicBoolean moved = new AtomicBoolean();
+        slots.compute(key, (k, s) -> {
+            moved.set(moveToTrash(k));
+            if (s == null || s.refs == 0) {
+                return null;
+            }
+            s.size = 0;     // caller ถือ lease อยู่ (เช่น clone ใหม่ลงที่เดิม) ขนาดวัดใหม่ตอนคืน
+            return s;
+        });
+        if (moved.get()) {
+            return true;
+        }
+        if (!key.startsWith(root)) {
+            enqueueDelete(key);
+            return false;
+        }
+        log.warn("Cannot move {} to trash, deleting in place", key);
+        delete(key);
+        return !Files.exists(key);
+    }
+
+    /** รอบตามเวลา: ลบของค้างใน .trash แล้วตรวจโควตา */
+    public void maintain() {
+        submit(() -> {
+            sweepTrash();
+            evictIfOverQuota();
+        });
+    }
+
+    public WorkspaceStatsModel snapshot() {
+        WorkspaceStatsModel m = new WorkspaceStatsModel();
+        m.setWorkspaces(slots.size());
+        m.setLeased((int) slots.values().stream().filter(s -> s.refs > 0).count());
+        m.setTotalBytes(totalBytes());
+        m.setQuotaBytes(quotaBytes());
+        m.setPendingDeletes(deleting.size());
+        m.setReclaimedBytes(reclaimedBytes.get());
+        m.setDeletedDirs(deletedDirs.get());
+        m.setEvictedDirs(evictedDirs.get());
+        m.setDeleteFailures(deleteFailures.get());
+        m.setDeleteMs(deleteMs.get());
+        return m;
+    }
+
+    // ---------- lease ----------
+
+    private void release(Path key) {
+        Slot slot = slots.computeIfPresent(key, (k, s) -> {
+            s.refs--;
+            s.lastUsed = Instant.now();
+            return s;
+        });
+        if (slot != null && slot.refs == 0) {
+            submit(() -> {
+                measure(key);
+                evictIfOverQuota();
+            });
+        }
+    }
+
+    // ---------- index / quota ----------
+
+    private void rebuildIndex() {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long started = System.nanoTime();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root,
+                p -> Files.isDirectory(p) && !p.getFileName().toString().startsWith("."))) {
+            for (Path dir : dirs) {
+                Instant modified = Files.getLastModifiedTime(dir).toInstant();
+                slots.computeIfAbsent(dir.toAbsolutePath().normalize(), k -> {
+                    Slot s = new Slot();
+                    s.lastUsed = modified;
+                    return s;
+                });
+                measure(dir.toAbsolutePath().normalize());
+            }
+        } catch (IOException e) {
+            log.warn("Cannot index workspaces under {}: {}", root, e.getMessage());
+        }
+        log.info("Indexed {} workspaces ({} MB) in {} ms", slots.size(), totalBytes() >> 20,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private void measure(Path key) {
+        long size = sizeOf(key);
+        slots.computeIfPresent(key, (k, s) -> {
+            s.size = size;
+            return s;
+        });
+    }
+
+    /** เกินโควตา → evict โฟลเดอร์ที่ไม่มี lease ตามลำดับ lastUsed เก่าสุดก่อน คืนจำนวนที่ evict */
+    private int evictIfOverQuota() {
+        long total = totalBytes();
+        long quota = quotaBytes();
+        if (total <= quota) {
+            return 0;
+        }
+        List<Map.Entry<Path, Slot>> idle = new ArrayList<>();
+        slots.forEach((k, s) -> {
+            if (s.refs == 0) idle.add(Map.entry(k, s));
+        });
+        idle.sort(Comparator.comparing(e -> e.getValue().lastUsed));
+
+        int evicted = 0;
+        for (Map.Entry<Path, Slot> e : idle) {
+            if (total <= quota) {
+                break;
+            }
+            long size = e.getValue().size;
+            AtomicBoolean moved = new AtomicBoolean();
+            // เช็ค lease + rename ภายใต้ lock ของ path เดียวกับ acquire: ไม่มีทาง evict โฟลเดอร์ที่เพิ่งถูกจอง
+            slots.computeIfPresent(e.getKey(), (k, s) -> {
+                if (s.refs > 0) return s;
+                moved.set(moveToTrash(k));
+                return moved.get() ? null : s;
+            });
+            if (moved.get()) {
+                total -= size;
+                evicted++;
+                evictedDirs.incrementAndGet();
+                log.info("Evicted workspace {} ({} MB, last used {})", e.getKey().getFileName(), size >> 20,
+                        e.getValue().lastUsed);
+            }
+        }
+        if (total > quota) {
+            log.warn("Workspaces still {} MB over quota {} MB (in use or locked)", total >> 20, props.getMaxSizeMb());
+        }
+        return evicted;
+    }
+
+    private long totalBytes() {
+        return slots.values().stream().mapToLong(s -> s.size).sum();
+    }
+
+    private long quotaBytes() {
+        return props.getMaxSizeMb() * 1024L * 1024L;
+    }
+
+    // ---------- deletion ----------
+
+    /** rename เข้า .trash/<ชื่อ>-<สุ่ม> (rename ใน volume เดียวกัน เร็วและ atomic) แล้วเข้าคิวลบ */
+    private boolean moveToTrash(Path dir) {
+        if (!Files.exists(dir)) {
+            return true;
+        }
+        if (!dir.startsWith(root)) {
+            return false;
+        }
+        try {
+            Path trash = root.resolve(TRASH);
+            Files.createDirectories(trash);
+            Path target = trash.resolve(dir.getFileName() + "-" + UUID.randomUUID().toString().substring(0, 8));
+            Files.move(dir, target, StandardCopyOption.ATOMIC_MOVE);
+            enqueueDelete(target);
+            return true;
+        } catch (IOException e) {
+            log.warn("Cannot move {} to trash: {}", dir, e.toString());
+            return false;
+        }
+    }
+
+    private void sweepTrash() {
+        Path trash = root.resolve(TRASH);
+        if (!Files.isDirectory(trash)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(trash)) {
+            for (Path entry : entries) {
+                enqueueDelete(entry);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot list {}: {}", trash, e.getMessage());
+        }
+    }
+
+    private void enqueueDelete(Path path) {
+        if (!deleting.add(path)) {
+            return;
+        }
+        if (!submit(() -> {
+            try {
+                delete(path);
+            } finally {
+                deleting.remove(path);
+            }
+        })) {
+            deleting.remove(path);   // คิวเต็ม: ค้างใน .trash ให้รอบ maintain()
+        }
+    }
+
+    /** ลบทั้งต้นไม้ด้วย walkFileTree (ไม่ตาม symlink) นับ byte ที่ได้คืน */
+    private void delete(Path dir) {
+        long started = System.nanoTime();
+        AtomicLong bytes = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (deleteEntry(file)) {
+                        bytes.addAndGet(attrs.size());
+                    } else {
+                        failed.set(true);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    if (!(exc instanceof NoSuchFileException)) {
+                        failed.set(true);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path d, IOException exc) {
+                    if (!deleteEntry(d)) {
+                        failed.set(true);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            failed.set(true);
+        }
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        reclaimedBytes.addAndGet(bytes.get());
+        deleteMs.addAndGet(ms);
+        if (failed.get()) {
+            deleteFailures.incrementAndGet();
+            log.warn("Deleted {} partially ({} MB reclaimed in {} ms), rest retried on next maintenance",
+                    dir.getFileName(), bytes.get() >> 20, ms);
+        } else {
+            deletedDirs.incrementAndGet();
+            log.info("Deleted {} ({} MB reclaimed in {} ms)", dir.getFileName(), bytes.get() >> 20, ms);
+        }
+    }
+
+    /** ไฟล์ read-only (pack ของ .git บน Windows) ลบไม่ได้จนกว่าจะปลด attribute */
+    private static boolean deleteEntry(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (AccessDeniedException e) {
+            DosFileAttributeView dos = Files.getFileAttributeView(path, DosFileAttributeView.class);
+            if (dos == null) {
+                return false;
+            }
+            try {
+                dos.setReadOnly(false);
+                Files.deleteIfExists(path);
+                return true;
+            } catch (IOException retry) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static long sizeOf(Path dir) {
+        AtomicLong size = new AtomicLong();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size.addAndGet(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.debug("Cannot size {}: {}", dir, e.getMessage());
+        }
+        return size.get();
+    }
+
+    private boolean submit(Runnable task) {
+        try {
+            workspaceExecutor.execute(task);
+            return true;
+        } catch (TaskRejectedException e) {
+            log.warn("Workspace I/O queue full, task deferred to next maintenance");
+            return false;
+        }
+    }
+
+    private static Path key(Path dir) {
+        return dir.toAbsolutePath().normalize();
+    }
+
+    /** สถานะของโฟลเดอร์หนึ่ง (refs แก้ภายใต้ compute ของ path นั้นเท่านั้น) */
+    private static final class Slot {
+        private volatile int refs;
+        private volatile Instant lastUsed = Instant.now();
+        private volatile long size;
+    }
+
+    /** lease ของ working copy: ระหว่างนี้ห้าม evict */
+    public final class Lease implements AutoCloseable {
+        private final Path dir;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(Path dir) {
+            this.dir = dir;
+        }
+
+        public Path dir() {
+            return dir;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(dir);
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.automate.CodeReview.Service.git;
+
+/**
+ * ผลของ checkout ลง working copy
+ * files/bytes = ไฟล์ที่อยู่บน disk หลัง checkout, skipped = ตัดออกด้วย sparse pattern,
+ * missing = blob ไม่ได้ถูกโหลดมา (partial clone ที่ blob ใหญ่เกิน limit) จึงไม่ได้เขียนลง disk
+ */
+public record GitCheckout(int files, long bytes, int skipped, int missing) {
+}
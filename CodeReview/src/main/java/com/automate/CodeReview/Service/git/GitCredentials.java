@@ -0,0 +1,19 @@
+package com.automate.CodeReview.Service.git;
+
+import jakarta.annotation.Nullable;
+
+public record GitCredentials(String username, String password) {
+
+    /** null = public repo (ไม่มี username/password) */
+    public static @Nullable GitCredentials of(@Nullable String username, @Nullable String password) {
+        if (username == null || username.isBlank() || password == null || password.isBlank()) {
+            return null;
+        }
+        return new GitCredentials(username, password);
+    }
+
+    @Override
+    public String toString() {
+        return "GitCredentials[username=" + username + ", password=***]";
+    }
+}
@@ -0,0 +1,14 @@
+package com.automate.CodeReview.Service.git;
+
+import java.util.List;
+
+/**
+ * ไฟล์ที่ต่างกันระหว่าง 2 commit (path เทียบกับรากของ repo, คั่นด้วย '/')
+ * changed = เพิ่ม/แก้ (rename นับ path ใหม่), deleted = ลบ (rename นับ path เดิม)
+ */
+public record GitDiff(List<String> changed, List<String> deleted) {
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && deleted.isEmpty();
+    }
+}
@@ -0,0 +1,76 @@
+package com.automate.CodeReview.Service.git;
+
+import jakarta.annotation.Nullable;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * คำสั่ง git ที่ระบบใช้ (clone/fetch/ls-remote/rev-parse ...)
+ * - implementation หลักคือ JGitEngine (in-process ไม่ต้องมี git.exe / cmd.exe)
+ * - งานที่ต้องใช้ network รันบน transport executor ที่จำกัดจำนวน และยกเลิกได้ผ่าน GitProgress / interrupt
+ * - error ทั้งหมดโยนเป็น GitOperationException
+ */
+public interface GitEngine {
+
+    /** ref → commit sha ที่ remote ประกาศ (รวม HEAD) */
+    Map<String, String> lsRemote(String url, @Nullable GitCredentials credentials, GitProgress progress);
+
+    /**
+     * สร้าง working copy ว่าง (git init) ที่มี origin = originUrl
+     * reference != null → ใช้ object store ของ repo นั้นผ่าน alternates (เหมือน clone --shared)
+     */
+    void init(Path dir, String originUrl, @Nullable Path reference);
+
+    /** fetch HEAD ของ source (URL หรือ path) คืน sha ที่ได้; depth <= 0 = ไม่จำกัด */
+    default String fetchHead(Path repoDir, String source, @Nullable GitCredentials credentials, int depth, GitProgress progress) {
+        return fetchHead(repoDir, source, credentials, depth, 0, progress).head();
+    }
+
+    /**
+     * blobLimitBytes > 0 = partial clone: ไม่โหลด blob ที่ใหญ่กว่านี้ (filter blob:limit)
+     * server ไม่รองรับ filter → fetch เต็มแทน (GitFetch.filtered = false)
+     */
+    GitFetch fetchHead(Path repoDir, String source, @Nullable GitCredentials credentials, int depth, long blobLimitBytes,
+                     GitProgress progress);
+
+    void resetHard(Path repoDir, String commit);
+
+    /**
+     * reset --hard ไป commit แต่เขียนลง disk เฉพาะไฟล์ที่ต้องใช้
+     * - path ที่ตรง excludeGlobs (glob เทียบ "/" + path เช่น node_modules, dist) ไม่เขียน/ไม่ลบ บน disk
+     * - allowMissingBlobs = repo เป็น partial clone: blob ที่ไม่มีใน object store ข้ามไป (ไม่ใช่ error)
+     * ไม่มีทั้งสองอย่าง = resetHard ปกติ
+     * entry ที่ข้ามถูกตั้ง assume-unchanged ใน index (status/clean ไม่มองว่าถูกลบ)
+     */
+    GitCheckout checkout(Path repoDir, String commit, List<String> excludeGlobs, boolean allowMissingBlobs);
+
+    /** ขนาดรวมของ object store ของ repo (.git/objects ไม่นับ alternates) */
+    long objectStoreBytes(Path repoDir);
+
+    /** ลบไฟล์ที่ไม่ถูก track (เก็บไฟล์ที่ ignore ไว้ เช่น node_modules/target) */
+    void clean(Path repoDir);
+
+    /** null ถ้า resolve ไม่ได้ */
+    @Nullable String revParse(Path repoDir, String rev);
+
+    boolean isRepository(Path dir);
+
+    /** ไฟล์ที่เปลี่ยนจาก fromCommit ถึง toCommit (ทั้งคู่ต้องมีใน object store ของ repoDir) */
+    GitDiff diff(Path repoDir, String fromCommit, String toCommit);
+
+    /** bare mirror (refs ทั้งหมด) ของ url */
+    void cloneMirror(String url, Path mirrorDir, @Nullable GitCredentials credentials, GitProgress progress);
+
+    /** fetch branch/tag ทั้งหมดเข้า mirror (prune ref ที่ถูกลบ); source null = origin */
+    void fetchMirror(Path mirrorDir, @Nullable String source, @Nullable GitCredentials credentials, GitProgress progress);
+
+    /**
+     * git gc --auto: repack/prune เฉพาะเมื่อ loose object / pack เกินเกณฑ์ gc.auto / gc.autopacklimit
+     * prune หลัง force-push อาจลบ object ที่ working copy (alternates) ยังอ้างอยู่:
+     * fetchHead + checkout รอบถัดไปย้ายไป HEAD ใหม่ได้เอง (ถ้า fetch ล้ม RepositoryService clone ใหม่)
+     * ส่วน diff กับ commit ที่หายไป throw GitOperationException → DiffScanService ถอยไป full scan
+     */
+    void gc(Path repoDir);
+}
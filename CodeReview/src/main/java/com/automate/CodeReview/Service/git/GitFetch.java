@@ -0,0 +1,8 @@
+package com.automate.CodeReview.Service.git;
+
+/**
+ * ผลของ fetch HEAD
+ * filtered = ส่ง filter blob:limit ไปจริง (partial clone) — false เมื่อไม่ได้ขอ หรือ server ไม่รองรับแล้ว fetch เต็มแทน
+ */
+public record GitFetch(String head, boolean filtered) {
+}
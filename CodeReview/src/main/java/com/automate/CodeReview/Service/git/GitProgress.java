@@ -0,0 +1,16 @@
+package com.automate.CodeReview.Service.git;
+
+/**
+ * รับ progress ของงาน git (ส่งต่อเข้า scan log / SSE) และเป็นช่องทางยกเลิกงาน
+ */
+public interface GitProgress {
+
+    GitProgress NONE = (task, completed, total) -> { };
+
+    /** total = 0 ถ้าไม่รู้จำนวนทั้งหมด */
+    void onProgress(String task, int completed, int total);
+
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,578 @@
+package com.automate.CodeReview.Service.git;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.exception.GitOperationException;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.FetchCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.dircache.Checkout;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.BatchingProgressMonitor;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeOptions;
+import org.eclipse.jgit.util.FS;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * GitEngine บน JGit: ไม่ fork process ทำงานได้ทั้ง Windows/Linux
+ * - credential ส่งผ่าน CredentialsProvider (ไม่ฝังใน URL / ไม่ลง .git/config)
+ * - clone/fetch/ls-remote รันบน gitTransportExecutor (จำกัดจำนวน transfer พร้อมกัน)
+ * - timeout / interrupt ของผู้เรียก / GitProgress.isCancelled() → JGit หยุดที่ checkpoint ถัดไป
+ */
+@Slf4j
+@Component
+public class JGitEngine implements GitEngine {
+
+    private static final String ORIGIN = "origin";
+
+    private final ThreadPoolTaskExecutor transportExecutor;
+    private final ScanProperties.Git props;
+
+    public JGitEngine(@Qualifier("gitTransportExecutor") ThreadPoolTaskExecutor transportExecutor,
+                      ScanProperties scanProperties) {
+        this.transportExecutor = transportExecutor;
+        this.props = scanProperties.getGit();
+    }
+
+    @Override
+    public Map<String, String> lsRemote(String url, @Nullable GitCredentials credentials, GitProgress progress) {
+        return onTransport("ls-remote", progress, monitor -> {
+            Map<String, Ref> refs = Git.lsRemoteRepository()
+                    .setRemote(url)
+                    .setCredentialsProvider(credentialsProvider(credentials))
+                    .setTimeout(props.getIoTimeoutSeconds())
+                    .callAsMap();
+            Map<String, String> out = new LinkedHashMap<>();
+            refs.forEach((name, ref) -> {
+                ObjectId id = ref.getObjectId();
+                if (id != null) out.put(name, id.name());
+            });
+            return out;
+        });
+    }
+
+    @Override
+    public void init(Path dir, String originUrl, @Nullable Path reference) {
+        try (Git git = Git.init().setDirectory(dir.toFile()).call()) {
+            if (reference != null) {
+                Path alternates = dir.resolve(".git").resolve("objects").resolve("info").resolve("alternates");
+                Files.createDirectories(alternates.getParent());
+                Files.writeString(alternates,
+                        reference.resolve("objects").toAbsolutePath().toString().replace('\\', '/') + "\n",
+                        StandardCharsets.UTF_8);
+            }
+            StoredConfig config = git.getRepository().getConfig();
+            config.setString("remote", ORIGIN, "url", originUrl);
+            config.setString("remote", ORIGIN, "fetch", "+refs/heads/*:refs/remotes/origin/*");
+            config.save();
+        } catch (Exception e) {
+            throw failure("init " + dir, e);
+        }
+    }
+
+    @Override
+    public GitFetch fetchHead(Path repoDir, String source, @Nullable GitCredentials credentials, int depth,
+                            long blobLimitBytes, GitProgress progress) {
+        return onTransport("fetch", progress, monitor -> {
+            try (Git git = Git.open(repoDir.toFile())) {
+                FetchCommand fetch = git.fetch()
+                        .setRemote(source)
+                        .setRefSpecs(new RefSpec("HEAD"))
+                        .setForceUpdate(true)
+                        .setCredentialsProvider(credentialsProvider(credentials))
+                        .setTimeout(props.getIoTimeoutSeconds())
+                        .setProgressMonitor(monitor);
+                if (depth > 0) {
+                    fetch.setDepth(depth);
+                }
+                FetchResult result;
+                boolean filtered = false;
+                if (blobLimitBytes > 0) {
+                    FilterSpec filter = FilterSpec.fromFilterLine("blob:limit=" + blobLimitBytes);
+                    try {
+                        result = fetch.setTransportConfigCallback(t -> t.setFilterSpec(filter)).call();
+                        filtered = true;
+                    } catch (TransportException e) {
+                        if (e.getMessage() == null || !e.getMessage().contains(JGitText.get().filterRequiresCapability)) {
+                            throw e;
+                        }
+                        log.info("{} does not support partial clone filter, fetching all blobs", source);
+                        result = fetch.setTransportConfigCallback(null).call();
+                    }
+                } else {
+                    result = fetch.call();
+                }
+                Ref head = result.getAdvertisedRef("HEAD");
+                if (head == null || head.getObjectId() == null) {
+                    throw new GitOperationException("remote has no HEAD: " + source);
+                }
+                return new GitFetch(head.getObjectId().name(), filtered);
+            }
+        });
+    }
+
+    @Override
+    public void resetHard(Path repoDir, String commit) {
+        try (Git git = Git.open(repoDir.toFile())) {
+            git.reset().setMode(ResetCommand.ResetType.HARD).setRef(commit).call();
+        } catch (Exception e) {
+            throw failure("reset " + commit, e);
+        }
+    }
+
+    @Override
+    public GitCheckout checkout(Path repoDir, String commit, List<String> excludeGlobs, boolean allowMissingBlobs) {
+        // รอบก่อน checkout แบบเลือกไฟล์ → reset --hard มองว่า entry ที่ข้ามไว้ไม่เปลี่ยน ต้องเขียนเองให้ครบ
+        if (excludeGlobs.isEmpty() && !allowMissingBlobs && !hasSkippedEntries(repoDir)) {
+            resetHard(repoDir, commit);
+            return indexStats(repoDir);
+        }
+        List<Pattern> excludes = excludeGlobs.stream().map(JGitEngine::globToRegex).toList();
+        try (Git git = Git.open(repoDir.toFile());
+             ObjectReader reader = git.getRepository().newObjectReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            Repository repo = git.getRepository();
+            ObjectId commitId = repo.resolve(commit + "^{commit}");
+            if (commitId == null) {
+                throw new GitOperationException("commit not found: " + commit);
+            }
+            RevCommit target = revWalk.parseCommit(commitId);
+            Checkout checkout = new Checkout(repo, repo.getConfig().get(WorkingTreeOptions.KEY))
+                    .setRecursiveDeletion(true);
+
+            int files = 0, skipped = 0, missing = 0;
+            long bytes = 0;
+            DirCache index = repo.lockDirCache();
+            try {
+                Map<String, DirCacheEntry> previous = new HashMap<>();
+                for (int i = 0; i < index.getEntryCount(); i++) {
+                    DirCacheEntry e = index.getEntry(i);
+                    if (e.getStage() == DirCacheEntry.STAGE_0) {
+                        previous.put(e.getPathString(), e);
+                    }
+                }
+                DirCacheBuilder builder = index.builder();
+                try (TreeWalk walk = new TreeWalk(repo, reader)) {
+                    walk.setOperationType(TreeWalk.OperationType.CHECKOUT_OP);
+                    walk.setRecursive(true);
+                    walk.addTree(target.getTree());
+                    while (walk.next()) {
+                        String path = walk.getPathString();
+                        FileMode mode = walk.getFileMode(0);
+                        ObjectId id = walk.getObjectId(0);
+                        DirCacheEntry old = previous.remove(path);
+                        DirCacheEntry entry = new DirCacheEntry(path);
+                        entry.setFileMode(mode);
+                        entry.setObjectId(id);
+
+                        if (matchesAny(excludes, path)) {
+                            skipped++;
+                            entry.setAssumeValid(true);
+                        } else if (mode == FileMode.GITLINK) {
+                            // submodule: ไม่ checkout (เหมือน reset --hard ที่ไม่ได้ init submodule)
+                        } else if (!reader.has(id)) {
+                            if (!allowMissingBlobs) {
+                                throw new GitOperationException("missing object " + id.name() + " for " + path);
+                            }
+                            missing++;
+                            entry.setAssumeValid(true);
+                        } else {
+                            if (isUnchangedOnDisk(repoDir.resolve(path), old, id, mode)) {
+                                entry.copyMetaData(old);
+                            } else {
+                                checkout.checkout(entry,
+                                        new DirCacheCheckout.CheckoutMetadata(
+                                                walk.getEolStreamType(TreeWalk.OperationType.CHECKOUT_OP),
+                                                walk.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE)),
+                                        reader, path);
+                            }
+                            files++;
+                            bytes += entry.getLength();
+                        }
+                        builder.add(entry);
+                    }
+                }
+                // ไฟล์ที่ commit ใหม่ไม่มีแล้ว (entry ที่ข้ามไว้ไม่เคยถูกเขียนโดยเรา → ไม่ลบ)
+                for (DirCacheEntry gone : previous.values()) {
+                    if (!gone.isAssumeValid() && !matchesAny(excludes, gone.getPathString())) {
+                        deleteTracked(repoDir, gone.getPathString());
+                    }
+                }
+                builder.commit();
+            } finally {
+                index.unlock();
+            }
+
+            RefUpdate head = repo.updateRef(Constants.HEAD);
+            head.setNewObjectId(commitId);
+            RefUpdate.Result updated = head.forceUpdate();
+            if (updated != RefUpdate.Result.NEW && updated != RefUpdate.Result.FORCED
+                    && updated != RefUpdate.Result.NO_CHANGE && updated != RefUpdate.Result.FAST_FORWARD) {
+                throw new GitOperationException("cannot move HEAD to " + commit + ": " + updated);
+            }
+            return new GitCheckout(files, bytes, skipped, missing);
+        } catch (Exception e) {
+            throw failure("checkout " + commit, e);
+        }
+    }
+
+    @Override
+    public long objectStoreBytes(Path repoDir) {
+        Path objects = repoDir.resolve(".git").resolve("objects");
+        if (!Files.isDirectory(objects)) {
+            return 0;
+        }
+        try (Stream<Path> walk = Files.walk(objects)) {
+            return walk.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Cannot measure object store of {}: {}", repoDir, e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public void clean(Path repoDir) {
+        try (Git git = Git.open(repoDir.toFile())) {
+            git.clean().setCleanDirectories(true).setForce(true).call();
+        } catch (Exception e) {
+            throw failure("clean " + repoDir, e);
+        }
+    }
+
+    @Override
+    public @Nullable String revParse(Path repoDir, String rev) {
+        try (Git git = Git.open(repoDir.toFile())) {
+            ObjectId id = git.getRepository().resolve(rev);
+            return id != null ? id.name() : null;
+        } catch (Exception e) {
+            log.warn("rev-parse {} failed in {}: {}", rev, repoDir, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isRepository(Path dir) {
+        Path gitDir = dir.resolve(".git");
+        if (!RepositoryCache.FileKey.isGitRepository(gitDir.toFile(), FS.DETECTED)) {
+            return false;
+        }
+        try (Git git = Git.open(dir.toFile())) {
+            Repository repo = git.getRepository();
+            return !repo.isBare() && repo.getObjectDatabase().exists();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public GitDiff diff(Path repoDir, String fromCommit, String toCommit) {
+        try (Git git = Git.open(repoDir.toFile());
+             ObjectReader reader = git.getRepository().newObjectReader()) {
+            Repository repo = git.getRepository();
+            ObjectId fromTree = repo.resolve(fromCommit + "^{tree}");
+            ObjectId toTree = repo.resolve(toCommit + "^{tree}");
+            if (fromTree == null || toTree == null) {
+                throw new GitOperationException("commit not found: " + (fromTree == null ? fromCommit : toCommit));
+            }
+            CanonicalTreeParser oldTree = new CanonicalTreeParser();
+            oldTree.reset(reader, fromTree);
+            CanonicalTreeParser newTree = new CanonicalTreeParser();
+            newTree.reset(reader, toTree);
+
+            List<String> changed = new ArrayList<>();
+            List<String> deleted = new ArrayList<>();
+            for (DiffEntry entry : git.diff().setOldTree(oldTree).setNewTree(newTree).setShowNameAndStatusOnly(true).call()) {
+                switch (entry.getChangeType()) {
+                    case DELETE -> deleted.add(entry.getOldPath());
+                    case RENAME -> {
+                        deleted.add(entry.getOldPath());
+                        changed.add(entry.getNewPath());
+                    }
+                    default -> changed.add(entry.getNewPath());
+                }
+            }
+            return new GitDiff(changed, deleted);
+        } catch (Exception e) {
+            throw failure("diff " + fromCommit + ".." + toCommit, e);
+        }
+    }
+
+    @Override
+    public void cloneMirror(String url, Path mirrorDir, @Nullable GitCredentials credentials, GitProgress progress) {
+        onTransport("clone --mirror", progress, monitor -> {
+            Git.cloneRepository()
+                    .setURI(url)
+                    .setDirectory(mirrorDir.toFile())
+                    .setMirror(true)
+                    .setCredentialsProvider(credentialsProvider(credentials))
+                    .setTimeout(props.getIoTimeoutSeconds())
+                    .setProgressMonitor(monitor)
+                    .call()
+                    .close();
+            return null;
+        });
+    }
+
+    @Override
+    public void fetchMirror(Path mirrorDir, @Nullable String source, @Nullable GitCredentials credentials, GitProgress progress) {
+        onTransport("fetch mirror", progress, monitor -> {
+            try (Git git = Git.open(mirrorDir.toFile())) {
+                git.fetch()
+                        .setRemote(source != null ? source : ORIGIN)
+                        .setRefSpecs(new RefSpec("+refs/heads/*:refs/heads/*"), new RefSpec("+refs/tags/*:refs/tags/*"))
+                        .setRemoveDeletedRefs(true)
+                        .setCredentialsProvider(credentialsProvider(credentials))
+                        .setTimeout(props.getIoTimeoutSeconds())
+                        .setProgressMonitor(monitor)
+                        .call();
+            }
+            return null;
+        });
+    }
+
+    /** GarbageCollectCommand ไม่มีโหมด auto → ใช้ GC ของ JGit ตรงๆ (setAuto = git gc --auto) */
+    @Override
+    public void gc(Path repoDir) {
+        try (Git git = Git.open(repoDir.toFile())) {
+            GC gc = new GC((FileRepository) git.getRepository());
+            gc.setAuto(true);
+            gc.gc();
+        } catch (Exception e) {
+            throw failure("gc " + repoDir, e);
+        }
+    }
+
+    // ---------- Helpers ----------
+
+    @FunctionalInterface
+    private interface TransportCall<T> {
+        T call(ProgressMonitor monitor) throws Exception;
+    }
+
+    /**
+     * รันงาน network บน transport executor แล้วรอผล
+     * ผู้เรียกถูก interrupt / เกิน timeout → ตั้ง cancelled ให้ JGit หยุดเอง
+     */
+    private <T> T onTransport(String op, GitProgress progress, TransportCall<T> call) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ProgressMonitor monitor = new MonitorAdapter(progress, cancelled);
+
+        Future<T> future;
+        try {
+            future = transportExecutor.submit(() -> call.call(monitor));
+        } catch (TaskRejectedException e) {
+            throw new GitOperationException(op + " rejected, git transport pool is full");
+        }
+
+        try {
+            return future.get(props.getOperationTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw failure(op, e.getCause());
+        } catch (TimeoutException e) {
+            cancelled.set(true);
+            future.cancel(true);
+            throw new GitOperationException(op + " timed out after " + Duration.ofMillis(props.getOperationTimeoutMs()));
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new GitOperationException(op + " cancelled");
+        }
+    }
+
+    /** จำนวน/ขนาดไฟล์ที่ checkout อยู่ (length ใน index = ขนาดบน disk หลัง reset --hard) */
+    private GitCheckout indexStats(Path repoDir) {
+        try (Git git = Git.open(repoDir.toFile())) {
+            DirCache index = git.getRepository().readDirCache();
+            int files = 0;
+            long bytes = 0;
+            for (int i = 0; i < index.getEntryCount(); i++) {
+                DirCacheEntry e = index.getEntry(i);
+                if (e.getFileMode() != FileMode.GITLINK) {
+                    files++;
+                    bytes += e.getLength();
+                }
+            }
+            return new GitCheckout(files, bytes, 0, 0);
+        } catch (IOException e) {
+            log.warn("Cannot read index of {}: {}", repoDir, e.getMessage());
+            return new GitCheckout(0, 0, 0, 0);
+        }
+    }
+
+    private static boolean hasSkippedEntries(Path repoDir) {
+        try (Git git = Git.open(repoDir.toFile())) {
+            DirCache index = git.getRepository().readDirCache();
+            for (int i = 0; i < index.getEntryCount(); i++) {
+                if (index.getEntry(i).isAssumeValid()) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** ไฟล์บน disk ยังเป็นของ checkout ครั้งก่อน (object/mode เดิม และ size/mtime ตรงกับ index) → ไม่ต้องเขียนซ้ำ */
+    private static boolean isUnchangedOnDisk(Path file, @Nullable DirCacheEntry old, ObjectId id, FileMode mode) {
+        if (old == null || old.isAssumeValid() || !id.equals(old.getObjectId()) || mode != old.getFileMode()) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return attrs.size() == old.getLength()
+                    && attrs.lastModifiedTime().toMillis() == old.getLastModifiedInstant().toEpochMilli();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** ลบไฟล์ที่เคย track แล้วไล่ลบโฟลเดอร์แม่ที่ว่าง (ไม่เกินรากของ repo) */
+    private static void deleteTracked(Path repoDir, String path) throws IOException {
+        Path file = repoDir.resolve(path);
+        Files.deleteIfExists(file);
+        for (Path dir = file.getParent(); dir != null && !dir.equals(repoDir); dir = dir.getParent()) {
+            try (Stream<Path> children = Files.list(dir)) {
+                if (children.findAny().isPresent()) {
+                    break;
+                }
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /** glob แบบ Sonar/Ant (** = กี่ชั้นก็ได้, * และ ? ไม่ข้าม '/') เทียบกับ "/" + path */
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        String g = glob.startsWith("/") || glob.startsWith("**") ? glob : "/" + glob;
+        for (int i = 0; i < g.length(); i++) {
+            char c = g.charAt(i);
+            if (c == '*' && i + 1 < g.length() && g.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String path) {
+        String rooted = "/" + path;
+        for (Pattern p : patterns) {
+            if (p.matcher(rooted).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static @Nullable CredentialsProvider credentialsProvider(@Nullable GitCredentials credentials) {
+        return credentials != null
+                ? new UsernamePasswordCredentialsProvider(credentials.username(), credentials.password())
+                : null;
+    }
+
+    private static GitOperationException failure(String op, Throwable cause) {
+        if (cause instanceof GitOperationException goe) {
+            return goe;
+        }
+        return new GitOperationException(op + ": " + cause.getMessage(), cause);
+    }
+
+    /** แปลง ProgressMonitor ของ JGit (batch ~1 ครั้ง/วินาที) → GitProgress */
+    private static final class MonitorAdapter extends BatchingProgressMonitor {
+        private final GitProgress progress;
+        private final AtomicBoolean cancelled;
+
+        private MonitorAdapter(GitProgress progress, AtomicBoolean cancelled) {
+            this.progress = progress;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void onUpdate(String taskName, int workCurr, Duration duration) {
+            progress.onProgress(taskName, workCurr, 0);
+        }
+
+        @Override
+        protected void onEndTask(String taskName, int workCurr, Duration duration) {
+            progress.onProgress(taskName, workCurr, 0);
+        }
+
+        @Override
+        protected void onUpdate(String taskName, int workCurr, int workTotal, int percentDone, Duration duration) {
+            progress.onProgress(taskName, workCurr, workTotal);
+        }
+
+        @Override
+        protected void onEndTask(String taskName, int workCurr, int workTotal, int percentDone, Duration duration) {
+            progress.onProgress(taskName, workCurr, workTotal);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled.get() || progress.isCancelled();
+        }
+    }
+}
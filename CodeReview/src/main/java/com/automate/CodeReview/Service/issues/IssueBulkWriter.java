@@ -0,0 +1,136 @@
+package com.automate.CodeReview.Service.issues;
+
+import com.automate.CodeReview.Config.SonarProperties;
+import com.automate.CodeReview.Models.IssueImportStatsModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * เขียน issue จาก Sonar ลงตาราง issues แบบ batch แทน find + save ทีละตัว
+ * - INSERT ... ON CONFLICT (scan_id, issue_key) DO UPDATE (unique index สร้างใน schema.sql)
+ * - ส่งทีละ sonar.import-batch-size แถวผ่าน JDBC batch (reWriteBatchedInserts รวมเป็น multi-row insert)
+ * - throughput (แถว/วินาที) สะสมไว้ดูที่ GET /api/scans/issue-import
+ */
+@Slf4j
+@Service
+public class IssueBulkWriter {
+
+    /** เหมือน upsert เดิม: import ซ้ำใน scan เดิมทับค่าจาก Sonar และล้างผู้รับผิดชอบ */
+    private static final String UPSERT_SQL = """
+            INSERT INTO issues (issues_id, scan_id, issue_key, type, severity, component, message, status, created_at)
+            VALUES (gen_random_uuid(), ?, ?, ?, ?, ?, ?, ?, now())
+            ON CONFLICT (scan_id, issue_key) DO UPDATE
+            SET type = EXCLUDED.type, severity = EXCLUDED.severity, component = EXCLUDED.component,
+                message = EXCLUDED.message, status = EXCLUDED.status, assigned_to = NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SonarProperties props;
+
+    private final AtomicLong imports = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private volatile IssueImportStatsModel.Last last;
+
+    public IssueBulkWriter(JdbcTemplate jdbcTemplate, SonarProperties props) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.props = props;
+    }
+
+    /** import ของ scan หนึ่งครั้ง: add ทีละ issue แล้ว close() เพื่อเขียนส่วนที่เหลือ + บันทึก throughput */
+    public Session open(UUID scanId) {
+        return new Session(scanId, props.getImportBatchSize());
+    }
+
+    public IssueImportStatsModel snapshot() {
+        long ms = TimeUnit.NANOSECONDS.toMillis(writeNanos.get());
+        IssueImportStatsModel m = new IssueImportStatsModel();
+        m.setBatchSize(props.getImportBatchSize());
+        m.setImports(imports.get());
+        m.setRows(rows.get());
+        m.setBatches(batches.get());
+        m.setWriteMs(ms);
+        m.setRowsPerSecond(rowsPerSecond(rows.get(), ms));
+        m.setLast(last);
+        return m;
+    }
+
+    private void write(Map<String, Object[]> batch) {
+        long t = System.nanoTime();
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new ArrayList<>(batch.values()));
+        writeNanos.addAndGet(System.nanoTime() - t);
+        rows.addAndGet(batch.size());
+        batches.incrementAndGet();
+    }
+
+    private static double rowsPerSecond(long rows, long ms) {
+        return ms > 0 ? Math.round(rows * 1000.0 / ms * 10) / 10.0 : 0;
+    }
+
+    /** ไม่ thread-safe: ใช้ใน thread ที่ import เท่านั้น */
+    public final class Session implements AutoCloseable {
+        private final UUID scanId;
+        private final int batchSize;
+        private final long started = System.nanoTime();
+        /** key เดียวกันซ้ำใน batch เดียว → ON CONFLICT แตะแถวเดิมสองครั้งไม่ได้ เก็บตัวหลังสุด */
+        private Map<String, Object[]> pending = new LinkedHashMap<>();
+        private int written;
+        private boolean closed;
+
+        private Session(UUID scanId, int batchSize) {
+            this.scanId = scanId;
+            this.batchSize = batchSize;
+        }
+
+        public void add(SonarIssue issue) {
+            pending.put(issue.key(), new Object[]{
+                    scanId,
+                    issue.key(),
+                    issue.type(),
+                    issue.severity(),
+                    issue.component(),
+                    issue.message(),
+                    issue.status()
+            });
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        public int written() {
+            return written;
+        }
+
+        private void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            write(pending);
+            written += pending.size();
+            pending = new LinkedHashMap<>();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flush();
+            long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            imports.incrementAndGet();
+            last = new IssueImportStatsModel.Last(scanId, written, ms, rowsPerSecond(written, ms));
+            log.info("Imported {} issues into scan {} in {} ms ({} rows/s, batch {})",
+                    written, scanId, ms, rowsPerSecond(written, ms), batchSize);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.automate.CodeReview.Service.issues;
+
+import java.util.List;
+
+/**
+ * หน้าหนึ่งของ /api/issues/search หลัง parse แล้ว
+ * total = paging.total (หรือ total แบบเก่า), -1 = response ไม่มีบอก
+ */
+public record IssuePage(int number, int total, List<SonarIssue> issues) {
+}
@@ -0,0 +1,123 @@
+package com.automate.CodeReview.Service.issues;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * parse response ของ /api/issues/search แบบ streaming (Jackson non-blocking parser)
+ * - ป้อน body ทีละ chunk ตามที่มาจาก network ด้วย feed() ไม่ต้องรวมทั้ง body หรือสร้าง JsonNode tree
+ * - เก็บเฉพาะ field ระดับบนสุดของแต่ละ issue ลง SonarIssue ส่วน object/array ซ้อน (textRange, flows, impacts ...) ข้ามไป
+ * - ใช้กับ response เดียว ไม่ thread-safe
+ */
+final class IssuePageParser {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // root object = ระดับ 1, array issues = ระดับ 2, issue แต่ละตัว = ระดับ 3
+    private static final int ROOT = 1;
+    private static final int ISSUE = 3;
+
+    private final int number;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final List<SonarIssue> issues = new ArrayList<>();
+
+    private int depth;
+    private String rootField;
+    private String field;
+    private boolean inIssues;
+    private int total = -1;
+
+    private String key, project, type, severity, component, message, status, creationDate, updateDate;
+
+    IssuePageParser(int number) {
+        this.number = number;
+        try {
+            this.parser = JSON.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /** ใช้ bytes หมดก่อน return → caller นำ buffer ไปใช้ต่อ/คืนได้ทันที */
+    void feed(byte[] bytes) throws IOException {
+        feeder.feedInput(bytes, 0, bytes.length);
+        drain();
+    }
+
+    IssuePage finish() throws IOException {
+        feeder.endOfInput();
+        drain();
+        parser.close();
+        return new IssuePage(number, total, issues);
+    }
+
+    private void drain() throws IOException {
+        JsonToken t;
+        while ((t = parser.nextToken()) != null && t != JsonToken.NOT_AVAILABLE) {
+            switch (t) {
+                case START_OBJECT, START_ARRAY -> {
+                    depth++;
+                    if (depth == ROOT + 1 && t == JsonToken.START_ARRAY && "issues".equals(rootField)) {
+                        inIssues = true;
+                    } else if (depth == ISSUE && inIssues && t == JsonToken.START_OBJECT) {
+                        key = project = type = severity = component = message = status = creationDate = updateDate = null;
+                    }
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    if (depth == ISSUE && inIssues && t == JsonToken.END_OBJECT) {
+                        issues.add(new SonarIssue(nz(key), nz(project), nz(type), nz(severity),
+                                nz(component), nz(message), nz(status), nz(creationDate), nz(updateDate)));
+                    } else if (depth == ROOT + 1 && inIssues) {
+                        inIssues = false;
+                    }
+                    depth--;
+                }
+                case FIELD_NAME -> {
+                    field = parser.currentName();
+                    if (depth == ROOT) {
+                        rootField = field;
+                    }
+                }
+                case VALUE_NULL -> {
+                }
+                default -> scalar();
+            }
+        }
+    }
+
+    private void scalar() throws IOException {
+        if (depth == ISSUE && inIssues) {
+            String v = parser.getText();
+            switch (field) {
+                case "key" -> key = v;
+                case "project" -> project = v;
+                case "type" -> type = v;
+                case "severity" -> severity = v;
+                case "component" -> component = v;
+                case "message" -> message = v;
+                case "status" -> status = v;
+                case "creationDate" -> creationDate = v;
+                case "updateDate" -> updateDate = v;
+                default -> {
+                }
+            }
+        } else if (depth == ROOT + 1 && "paging".equals(rootField) && "total".equals(field)) {
+            total = parser.getValueAsInt(-1);
+        } else if (depth == ROOT && "total".equals(field) && total < 0) {
+            // response แบบเก่ามี total ที่ root แทน paging.total
+            total = parser.getValueAsInt(-1);
+        }
+    }
+
+    private static String nz(String s) {
+        return s != null ? s : "";
+    }
+}
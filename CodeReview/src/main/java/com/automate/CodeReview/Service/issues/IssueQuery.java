@@ -0,0 +1,80 @@
+package com.automate.CodeReview.Service.issues;
+
+import jakarta.annotation.Nullable;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * เงื่อนไขของ /api/issues/search หนึ่งช่วง (slice)
+ * ช่วงเวลาเป็นแบบ [createdAfter, createdBefore) ตาม Sonar (after = inclusive, before = exclusive)
+ * จึงแบ่งครึ่งแล้วไม่มี issue ซ้ำหรือตกหล่นระหว่างช่วง
+ */
+record IssueQuery(String projectKey,
+                  @Nullable OffsetDateTime createdAfter,
+                  @Nullable OffsetDateTime createdBefore,
+                  @Nullable String severity,
+                  @Nullable String type) {
+
+    /** รูปแบบวันที่ที่ Sonar ใช้ทั้งใน response และ parameter เช่น 2024-03-01T10:20:30+0000 */
+    static final DateTimeFormatter SONAR_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+
+    private static final List<String> SEVERITIES = List.of("BLOCKER", "CRITICAL", "MAJOR", "MINOR", "INFO");
+    private static final List<String> TYPES = List.of("BUG", "VULNERABILITY", "CODE_SMELL");
+
+    static IssueQuery of(String projectKey) {
+        return new IssueQuery(projectKey, null, null, null, null);
+    }
+
+    static OffsetDateTime parseDate(String s) {
+        return OffsetDateTime.parse(s, SONAR_DATE).withOffsetSameInstant(ZoneOffset.UTC);
+    }
+
+    IssueQuery between(OffsetDateTime after, OffsetDateTime before) {
+        return new IssueQuery(projectKey, after, before, severity, type);
+    }
+
+    /**
+     * แบ่งเป็นช่วงย่อย: ครึ่งช่วงเวลาก่อน พอเหลือไม่ถึง 2 วินาทีแบ่งตาม severity แล้วตาม type
+     * คืน list ว่าง = แบ่งต่อไม่ได้แล้ว
+     */
+    List<IssueQuery> split() {
+        if (createdAfter != null && createdBefore != null) {
+            long seconds = Duration.between(createdAfter, createdBefore).toSeconds();
+            if (seconds >= 2) {
+                OffsetDateTime mid = createdAfter.plusSeconds(seconds / 2);
+                return List.of(between(createdAfter, mid), between(mid, createdBefore));
+            }
+        }
+        if (severity == null) {
+            return SEVERITIES.stream()
+                    .map(s -> new IssueQuery(projectKey, createdAfter, createdBefore, s, type)).toList();
+        }
+        if (type == null) {
+            return TYPES.stream()
+                    .map(t -> new IssueQuery(projectKey, createdAfter, createdBefore, severity, t)).toList();
+        }
+        return List.of();
+    }
+
+    /** query parameter (ยังไม่ encode) ไม่รวม p / ps */
+    Map<String, String> params() {
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("projects", projectKey);
+        if (createdAfter != null) m.put("createdAfter", SONAR_DATE.format(createdAfter));
+        if (createdBefore != null) m.put("createdBefore", SONAR_DATE.format(createdBefore));
+        if (severity != null) m.put("severities", severity);
+        if (type != null) m.put("types", type);
+        return m;
+    }
+
+    @Override
+    public String toString() {
+        return params().toString();
+    }
+}
@@ -0,0 +1,10 @@
+package com.automate.CodeReview.Service.issues;
+
+/**
+ * issue จาก /api/issues/search เฉพาะ field ที่เก็บลงตาราง issues (field ที่ไม่มีใน response = "")
+ * creationDate / updateDate ใช้แบ่งช่วง query และหาจุดตัดของ incremental import เท่านั้น ไม่ได้เก็บลง DB
+ */
+public record SonarIssue(String key, String project, String type, String severity,
+                         String component, String message, String status,
+                         String creationDate, String updateDate) {
+}
@@ -0,0 +1,310 @@
+package com.automate.CodeReview.Service.issues;
+
+import com.automate.CodeReview.Config.SonarProperties;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * import issue ของ project จาก Sonar ลงตาราง issues
+ * - body ของแต่ละหน้า parse แบบ streaming ตาม chunk ที่เข้ามา (IssuePageParser) ไม่ถือ JSON ทั้งหน้าหรือ tree ไว้
+ * - Sonar เลื่อนหน้าได้ไม่เกิน sonar.issue-search-window (10k) → project ที่ issue เกินจะถูกแบ่งเป็น slice
+ *   ตามช่วงวันที่สร้าง (แบ่งครึ่งซ้ำจนแต่ละช่วงไม่เกิน) แล้วตาม severity / type ถ้าช่วงเวลาแบ่งไม่ได้อีก
+ * - slice ดึงพร้อมกันไม่เกิน sonar.issue-slice-concurrency ส่วนในแต่ละ slice ดึงหน้าถัดไปไว้ระหว่างที่หน้าปัจจุบันถูกเขียน
+ * - เขียน DB จาก thread ที่เรียกเพียง thread เดียว issue key ซ้ำระหว่าง slice ถูกรวมด้วย upsert (scan_id, issue_key)
+ * - หน่วยความจำสูงสุด ≈ (2 × concurrency + 1) หน้า + 1 batch ของ IssueBulkWriter ไม่ขึ้นกับจำนวน issue ทั้งหมด
+ * - syncIssues (scan หลัก): ถ้ามี scan ก่อนหน้าที่ sync แล้ว copy issue ของ scan นั้นใน DB
+ *   แล้วดึงเฉพาะ issue ที่ updateDate ตั้งแต่ analysis นั้น (สร้างใหม่ / แก้ / ปิด) มา upsert ทับ
+ */
+@Slf4j
+@Service
+public class SonarIssueImporter {
+
+    /** scan ล่าสุดของ project เดียวกันที่ issue sync แล้ว */
+    private static final String BASE_SCAN_SQL = """
+            SELECT scan_id, issues_synced_at FROM scans
+            WHERE project_id = (SELECT project_id FROM scans WHERE scan_id = ?)
+              AND scan_id <> ? AND issues_synced_at IS NOT NULL
+            ORDER BY issues_synced_at DESC LIMIT 1
+            """;
+    /** issue ที่ปิดไปแล้วไม่ copy: ถ้ายังปิดอยู่ Sonar ไม่ได้แตะ (และจะ purge ทิ้ง) ถ้าถูกเปิดใหม่จะมาในชุดที่เปลี่ยน */
+    private static final String COPY_BASE_SQL = """
+            INSERT INTO issues (issues_id, scan_id, issue_key, type, severity, component, message, status, created_at)
+            SELECT gen_random_uuid(), ?, issue_key, type, severity, component, message, status, now()
+            FROM issues WHERE scan_id = ? AND status <> 'CLOSED'
+            ON CONFLICT (scan_id, issue_key) DO NOTHING
+            """;
+
+    private final WebClient sonarWebClient;
+    private final SonarProperties props;
+    private final IssueBulkWriter issueBulkWriter;
+    private final JdbcTemplate jdbcTemplate;
+
+    public SonarIssueImporter(WebClient sonarWebClient, SonarProperties props, IssueBulkWriter issueBulkWriter,
+                              JdbcTemplate jdbcTemplate) {
+        this.sonarWebClient = sonarWebClient;
+        this.props = props;
+        this.issueBulkWriter = issueBulkWriter;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * import ของ scan หลัก (project key เดียว): incremental จาก scan ก่อนหน้าถ้ามี ไม่งั้น import ทั้งหมด
+     * recordSyncPoint = ใช้ scan นี้เป็นฐานของครั้งถัดไปได้ (ต้องรู้ analysedAt ด้วย)
+     */
+    public int syncIssues(String projectKey, UUID scanId, @Nullable String analysedAt, boolean recordSyncPoint) {
+        BaseScan base = props.isIncrementalImport() ? findBase(scanId) : null;
+        int written = base != null ? importChanges(projectKey, scanId, base) : -1;
+        if (written < 0) {
+            written = importIssues(projectKey, scanId);
+        }
+        OffsetDateTime syncedAt = parseDate(analysedAt);
+        if (recordSyncPoint && syncedAt != null) {
+            jdbcTemplate.update("UPDATE scans SET issues_synced_at = ? WHERE scan_id = ?", syncedAt, scanId);
+        }
+        return written;
+    }
+
+    /** blocking: เรียกจาก worker thread (webhook / reconcile) เท่านั้น คืนจำนวนแถวที่เขียน */
+    public int importIssues(String projectKey, UUID scanId) {
+        List<IssueQuery> slices = plan(IssueQuery.of(projectKey));
+        IssueBulkWriter.Session writer = issueBulkWriter.open(scanId);
+        try (writer; Stream<IssuePage> pages = pages(slices).toStream(1)) {
+            pages.forEach(page -> write(writer, projectKey, page));
+        }
+        return writer.written();
+    }
+
+    private static void write(IssueBulkWriter.Session writer, String projectKey, IssuePage page) {
+        for (SonarIssue issue : page.issues()) {
+            // ข้าม issue ของ project อื่น (ชื่อ field ต่างกันตามเวอร์ชัน)
+            if (projectKey.equals(issue.project())) {
+                writer.add(issue);
+            }
+        }
+    }
+
+    /* ---------------- incremental ---------------- */
+
+    private record BaseScan(UUID scanId, OffsetDateTime syncedAt) {}
+
+    @Nullable
+    private BaseScan findBase(UUID scanId) {
+        return jdbcTemplate.query(BASE_SCAN_SQL, (rs, i) -> new BaseScan(
+                        rs.getObject("scan_id", UUID.class),
+                        rs.getObject("issues_synced_at", OffsetDateTime.class)),
+                scanId, scanId).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * copy issue ของ base แล้วไล่ issue เรียง updateDate ใหม่→เก่า จนเจอตัวที่เก่ากว่า analysis ของ base
+     * คืนจำนวนแถวของ scan หลังรวมแล้ว หรือ -1 ถ้าเปลี่ยนเกิน search window (ไล่ไม่ถึงจุดตัด)
+     * → ลบแถวที่รอบนี้ copy/เขียนเพิ่มออกก่อน ให้ caller import ทั้งหมดใหม่ (issue ที่ Sonar purge ไปแล้วไม่ค้างเป็น OPEN)
+     */
+    private int importChanges(String projectKey, UUID scanId, BaseScan base) {
+        long started = System.nanoTime();
+        // แถวที่รอบนี้สร้าง created_at = now() ของ transaction ที่เริ่มหลังจากนี้ทั้งหมด
+        OffsetDateTime importStart = jdbcTemplate.queryForObject("SELECT now()", OffsetDateTime.class);
+        int copied = jdbcTemplate.update(COPY_BASE_SQL, scanId, base.scanId());
+
+        Map<String, String> params = new LinkedHashMap<>(IssueQuery.of(projectKey).params());
+        params.put("s", "UPDATE_DATE");
+        params.put("asc", "false");
+        int ps = Math.min(props.getPageSize(), props.getIssueSearchWindow());
+        int lastPage = Math.max(1, props.getIssueSearchWindow() / ps);
+
+        IssueBulkWriter.Session writer = issueBulkWriter.open(scanId);
+        IssuePage last = null;
+        try (writer; Stream<IssuePage> pages = fetchPage(params, 1, ps)
+                .expand(p -> !reachedCutoff(p, base.syncedAt()) && hasNext(p, ps, lastPage)
+                        ? fetchPage(params, p.number() + 1, ps)
+                        : Mono.empty())
+                .toStream(1)) {
+            for (IssuePage page : (Iterable<IssuePage>) pages::iterator) {
+                write(writer, projectKey, page);
+                last = page;
+            }
+        }
+
+        if (last != null && !reachedCutoff(last, base.syncedAt()) && last.number() >= lastPage
+                && last.number() * ps < last.total()) {
+            int discarded = jdbcTemplate.update("DELETE FROM issues WHERE scan_id = ? AND created_at >= ?",
+                    scanId, importStart);
+            log.info("Issues of {} changed beyond the search window since {}; discarded {} carried rows, "
+                    + "falling back to a full import", projectKey, base.syncedAt(), discarded);
+            return -1;
+        }
+        // key ที่อยู่ทั้งใน base และชุดที่เปลี่ยนถูก upsert เป็นแถวเดียว → นับจากตารางจริง
+        Integer rows = jdbcTemplate.queryForObject("SELECT count(*) FROM issues WHERE scan_id = ?", Integer.class, scanId);
+        log.info("Incremental issue import for scan {}: {} carried from scan {}, {} changed since {}, {} rows ({} ms)",
+                scanId, copied, base.scanId(), writer.written(), base.syncedAt(), rows,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return rows != null ? rows : 0;
+    }
+
+    /** เรียง updateDate ใหม่→เก่า: ตัวสุดท้ายของหน้าเก่ากว่าจุดตัด = หน้าถัดไปไม่มีอะไรเปลี่ยนแล้ว */
+    private static boolean reachedCutoff(IssuePage page, OffsetDateTime since) {
+        if (page.issues().isEmpty()) {
+            return true;
+        }
+        OffsetDateTime updated = parseDate(page.issues().get(page.issues().size() - 1).updateDate());
+        return updated != null && updated.isBefore(since);
+    }
+
+    @Nullable
+    private static OffsetDateTime parseDate(@Nullable String s) {
+        if (s == null || s.isBlank()) {
+            return null;
+        }
+        try {
+            return IssueQuery.parseDate(s);
+        } catch (DateTimeParseException e) {
+            log.warn("Unexpected Sonar date '{}'", s);
+            return null;
+        }
+    }
+
+    /* ---------------- แบ่ง slice ---------------- */
+
+    /** นับจำนวนด้วย ps=1 ทีละชั้น (นับพร้อมกัน) ช่วงที่เกิน window แบ่งต่อในชั้นถัดไป */
+    private List<IssueQuery> plan(IssueQuery all) {
+        int window = props.getIssueSearchWindow();
+        int total = count(all).block();
+        if (total <= window) {
+            return List.of(all);
+        }
+
+        OffsetDateTime oldest = edge(all, true);
+        OffsetDateTime newest = edge(all, false);
+        // createdBefore เป็น exclusive → +1 วินาทีให้ครอบ issue ล่าสุด
+        List<IssueQuery> pending = (oldest != null && newest != null)
+                ? List.of(all.between(oldest, newest.plusSeconds(1)))
+                : all.split();
+
+        List<IssueQuery> slices = new ArrayList<>();
+        int probes = 3;
+        while (!pending.isEmpty()) {
+            List<Tuple2<IssueQuery, Integer>> counted = Flux.fromIterable(pending)
+                    .flatMapSequential(q -> count(q).map(n -> Tuples.of(q, n)), props.getIssueSliceConcurrency())
+                    .collectList().block();
+            probes += pending.size();
+
+            List<IssueQuery> next = new ArrayList<>();
+            for (Tuple2<IssueQuery, Integer> c : counted) {
+                IssueQuery q = c.getT1();
+                int n = c.getT2();
+                if (n == 0) {
+                    continue;
+                }
+                List<IssueQuery> parts = n > window ? q.split() : List.of();
+                if (!parts.isEmpty()) {
+                    next.addAll(parts);
+                    continue;
+                }
+                if (n > window) {
+                    log.warn("Issue slice {} still has {} issues (window {}); importing the first {} only",
+                            q, n, window, window);
+                }
+                slices.add(q);
+            }
+            pending = next;
+        }
+        log.info("Project {} has {} issues, importing in {} slices ({} count queries)",
+                all.projectKey(), total, slices.size(), probes);
+        return slices;
+    }
+
+    /** total ไม่รู้ (-1) ถือว่าไม่เกิน window */
+    private Mono<Integer> count(IssueQuery q) {
+        return fetchPage(q.params(), 1, 1).map(IssuePage::total);
+    }
+
+    /** วันที่สร้างของ issue เก่าสุด / ใหม่สุด (null = ไม่มีข้อมูล) */
+    @Nullable
+    private OffsetDateTime edge(IssueQuery q, boolean oldest) {
+        Map<String, String> params = new LinkedHashMap<>(q.params());
+        params.put("s", "CREATION_DATE");
+        params.put("asc", String.valueOf(oldest));
+        IssuePage page = fetchPage(params, 1, 1).block();
+        if (page == null || page.issues().isEmpty()) {
+            return null;
+        }
+        return parseDate(page.issues().get(0).creationDate());
+    }
+
+    /* ---------------- ดึงหน้า ---------------- */
+
+    private Flux<IssuePage> pages(List<IssueQuery> slices) {
+        int ps = Math.min(props.getPageSize(), props.getIssueSearchWindow());
+        int lastPage = Math.max(1, props.getIssueSearchWindow() / ps);
+        return Flux.fromIterable(slices)
+                .flatMap(q -> fetchPage(q.params(), 1, ps)
+                                .expand(p -> hasNext(p, ps, lastPage)
+                                        ? fetchPage(q.params(), p.number() + 1, ps)
+                                        : Mono.empty()),
+                        props.getIssueSliceConcurrency(), 1);
+    }
+
+    private static boolean hasNext(IssuePage page, int ps, int lastPage) {
+        return !page.issues().isEmpty()
+                && page.number() < lastPage
+                && page.number() * ps < page.total();
+    }
+
+    private Mono<IssuePage> fetchPage(Map<String, String> params, int page, int ps) {
+        return Mono.defer(() -> {
+            IssuePageParser parser = new IssuePageParser(page);
+            return sonarWebClient.get()
+                    .uri(uri -> searchUri(uri, params, page, ps))
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .doOnNext(buf -> feed(parser, buf))
+                    .then(Mono.fromCallable(parser::finish));
+        });
+    }
+
+    /** ค่าส่งเป็น uri variable เพื่อให้ encode ครบ (วันที่มี '+' ของ timezone) */
+    private static URI searchUri(UriBuilder uri, Map<String, String> params, int page, int ps) {
+        Map<String, Object> vars = new HashMap<>(params);
+        vars.put("p", page);
+        vars.put("ps", ps);
+        uri.path("/api/issues/search");
+        vars.keySet().forEach(k -> uri.queryParam(k, "{" + k + "}"));
+        return uri.build(vars);
+    }
+
+    private static void feed(IssuePageParser parser, DataBuffer buf) {
+        try {
+            byte[] bytes = new byte[buf.readableByteCount()];
+            buf.read(bytes);
+            parser.feed(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DataBufferUtils.release(buf);
+        }
+    }
+}
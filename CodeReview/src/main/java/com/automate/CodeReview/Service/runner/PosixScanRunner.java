@@ -0,0 +1,318 @@
+package com.automate.CodeReview.Service.runner;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * runner สำหรับ Linux/macOS: run_sonar.sh ผ่าน bash
+ * - มี setsid (Linux) → สคริปต์เป็นหัวของ process group ใหม่ (pgid = pid) ตอนฆ่าส่ง TERM/KILL ให้ทั้ง group ทีเดียว
+ *   ไม่ต้องไล่ต้นไม้ และจับได้แม้ลูกที่ถูก re-parent ไปแล้ว
+ * - ไม่มี setsid (macOS) → ไล่ descendants() แทน
+ */
+@Slf4j
+public class PosixScanRunner implements ScanRunner {
+
+    private final boolean useSetsid;
+
+    public PosixScanRunner() {
+        this.useSetsid = onPath("setsid");
+        log.info("POSIX scan runner: process groups via setsid {}", useSetsid ? "enabled" : "unavailable, killing by descendants");
+    }
+
+    @Override
+    public String name() {
+        return "posix";
+    }
+
+    @Override
+    public String scriptFileName() {
+        return "run_sonar.sh";
+    }
+
+    @Override
+    public List<String> command(Path script) {
+        String path = script.toAbsolutePath().toString();
+        return useSetsid ? List.of("setsid", "bash", path) : List.of("bash", path);
+    }
+
+    @Override
+    public String mavenScript(String projectKey, String projectName, String sonarToken,
+                              String profileLabel, String buildGoals, boolean analysisInBuild) {
+        return String.format(
+                "#!/usr/bin/env bash\n" +
+                        "# Script created at %s\n" +
+                        "set -u\n" +
+                        "\n" +
+                        "# ===== Default values from generator (override by args) =====\n" +
+                        "DEFAULT_TOKEN=%s\n" +
+                        "DEFAULT_KEY=%s\n" +
+                        "DEFAULT_NAME=%s\n" +
+                        "SONAR_TOKEN=\"${1:-$DEFAULT_TOKEN}\"\n" +
+                        "PROJECT_KEY=\"${2:-$DEFAULT_KEY}\"\n" +
+                        "PROJECT_NAME=\"${3:-$DEFAULT_NAME}\"\n" +
+                        "\n" +
+                        "# ===== Find pom.xml (root first, else first one with src/ next to it) =====\n" +
+                        "ROOT=\"$(cd \"$(dirname \"$0\")\" && pwd)\"\n" +
+                        "POM=\"\"\n" +
+                        "if [ -f \"$ROOT/pom.xml\" ]; then\n" +
+                        "  POM=\"$ROOT/pom.xml\"\n" +
+                        "else\n" +
+                        "  while IFS= read -r f; do\n" +
+                        "    [ -z \"$POM\" ] && POM=\"$f\"\n" +
+                        "    if [ -d \"$(dirname \"$f\")/src\" ]; then POM=\"$f\"; break; fi\n" +
+                        "  done < <(find \"$ROOT\" -name pom.xml -not -path '*/node_modules/*' -not -path '*/target/*' | sort)\n" +
+                        "fi\n" +
+                        "if [ -z \"$POM\" ]; then\n" +
+                        "  echo \"[ERROR] No pom.xml found under \\\"$ROOT\\\"\"\n" +
+                        "  exit 1\n" +
+                        "fi\n" +
+                        "echo \"Using POM: \\\"$POM\\\"\"\n" +
+                        "\n" +
+                        "# ===== Prefer mvnw if present or fall back to mvn =====\n" +
+                        "POM_DIR=\"$(dirname \"$POM\")\"\n" +
+                        "MVN=mvn\n" +
+                        "if [ -f \"$POM_DIR/mvnw\" ]; then\n" +
+                        "  MVN=\"$POM_DIR/mvnw\"\n" +
+                        "  chmod +x \"$MVN\" 2>/dev/null\n" +
+                        "else\n" +
+                        "  echo \"INFO: Using system Maven. Make sure it is installed and in PATH.\"\n" +
+                        "fi\n" +
+                        "\n" +
+                        "echo\n" +
+                        "echo \"Starting Maven Build [%s] and SonarQube Analysis (Tests SKIPPED)\"\n" +
+                        "echo \"Project Key : $PROJECT_KEY\"\n" +
+                        "echo \"Project Name: $PROJECT_NAME\"\n" +
+                        "echo \"Host URL    : http://localhost:9000\"\n" +
+                        "echo\n" +
+                        "\n" +
+                        "%s" +
+                        "exit 0\n",
+                LocalDateTime.now(),
+                shellQuote(sonarToken),
+                shellQuote(projectKey),
+                shellQuote(projectName),
+                profileLabel,
+                analysisInBuild ? singleMavenRun(buildGoals) : separateMavenRuns(buildGoals)
+        );
+    }
+
+    private static final String SONAR_ARGS =
+            "-Dsonar.token=\"$SONAR_TOKEN\" -Dsonar.host.url=http://localhost:9000 -Dsonar.projectKey=\"$PROJECT_KEY\" " +
+                    "-Dsonar.projectName=\"$PROJECT_NAME\" -Dsonar.projectBaseDir=\"$POM_DIR\"";
+
+    /** build แล้วค่อย sonar:sonar อีกคำสั่ง (ใช้ได้เพราะ build install module ลง local repo แล้ว) */
+    private static String separateMavenRuns(String buildGoals) {
+        return "echo \"##scan-stage build begin\"\n" +
+                "\"$MVN\" -f \"$POM\" " + buildGoals + " -DskipTests\n" +
+                "BUILD_EXIT=$?\n" +
+                "echo \"##scan-stage build end\"\n" +
+                "if [ $BUILD_EXIT -ne 0 ]; then\n" +
+                "  echo\n" +
+                "  echo \"[ERROR] Build FAILED! Exit Code: $BUILD_EXIT\"\n" +
+                "  exit $BUILD_EXIT\n" +
+                "fi\n" +
+                "\n" +
+                "echo \"##scan-stage analysis begin\"\n" +
+                "\"$MVN\" -f \"$POM\" sonar:sonar " + SONAR_ARGS + "\n" +
+                "SONAR_EXIT=$?\n" +
+                "echo \"##scan-stage analysis end\"\n" +
+                "\n" +
+                "if [ $SONAR_EXIT -ne 0 ]; then\n" +
+                "  echo\n" +
+                "  echo \"[ERROR] Sonar Analysis FAILED! Exit Code: $SONAR_EXIT\"\n" +
+                "  exit $SONAR_EXIT\n" +
+                "fi\n";
+    }
+
+    /**
+     * build + sonar:sonar ใน reactor เดียว (ไม่ install → sibling module resolve ได้จาก reactor เท่านั้น)
+     * ช่วง build → analysis แบ่งจากบรรทัดเริ่ม goal sonar ของ maven เอง ดู {@link ScanRunner#SONAR_GOAL_LINE}
+     */
+    private static String singleMavenRun(String buildGoals) {
+        return "echo \"##scan-stage build begin\"\n" +
+                "\"$MVN\" -f \"$POM\" " + buildGoals + " sonar:sonar -DskipTests " + SONAR_ARGS + "\n" +
+                "MVN_EXIT=$?\n" +
+                "echo \"##scan-stage build end\"\n" +
+                "echo \"##scan-stage analysis end\"\n" +
+                "\n" +
+                "if [ $MVN_EXIT -ne 0 ]; then\n" +
+                "  echo\n" +
+                "  echo \"[ERROR] Build/Sonar Analysis FAILED! Exit Code: $MVN_EXIT\"\n" +
+                "  exit $MVN_EXIT\n" +
+                "fi\n";
+    }
+
+    @Override
+    public String angularScript() {
+        return "#!/usr/bin/env bash\n" +
+                "# Script created for Angular project\n" +
+                "set -u\n" +
+                "\n" +
+                "PROJECT_DIR=\"$(cd \"$(dirname \"$0\")\" && pwd)\"\n" +
+                "echo \"[INFO] PROJECT_DIR=[$PROJECT_DIR]\"\n" +
+                "\n" +
+                NPM_CHECK +
+                "\n" +
+                "cd \"$PROJECT_DIR\" || { echo \"[ERROR] Cannot cd to $PROJECT_DIR\"; exit 1; }\n" +
+                "\n" +
+                NPM_INSTALL +
+                "\n" +
+                "# --- ตรวจสอบและติดตั้ง sonarqube-scanner ---\n" +
+                "if ! command -v sonar-scanner >/dev/null 2>&1; then\n" +
+                "  echo \"[INFO] sonar-scanner not found. Installing sonarqube-scanner globally...\"\n" +
+                "  if ! npm install -g sonarqube-scanner; then\n" +
+                "    echo \"[ERROR] Failed to install sonarqube-scanner!\"\n" +
+                "    echo \"Please install manually: npm install -g sonarqube-scanner\"\n" +
+                "    exit 1\n" +
+                "  fi\n" +
+                "  echo \"[INFO] sonarqube-scanner installed successfully.\"\n" +
+                "fi\n" +
+                "\n" +
+                SCANNER_RUN;
+    }
+
+    @Override
+    public String nodeScript() {
+        return String.format(
+                "#!/usr/bin/env bash\n" +
+                        "# Script created at %s\n" +
+                        "set -u\n" +
+                        "\n" +
+                        "# ===== Find project directory (root first, else first package.json with src/) =====\n" +
+                        "ROOT=\"$(cd \"$(dirname \"$0\")\" && pwd)\"\n" +
+                        "PROJECT_DIR=\"\"\n" +
+                        "if [ -f \"$ROOT/package.json\" ]; then\n" +
+                        "  PROJECT_DIR=\"$ROOT\"\n" +
+                        "else\n" +
+                        "  while IFS= read -r f; do\n" +
+                        "    d=\"$(dirname \"$f\")\"\n" +
+                        "    [ -z \"$PROJECT_DIR\" ] && PROJECT_DIR=\"$d\"\n" +
+                        "    if [ -d \"$d/src\" ]; then PROJECT_DIR=\"$d\"; break; fi\n" +
+                        "  done < <(find \"$ROOT\" -name package.json -not -path '*/node_modules/*' | sort)\n" +
+                        "fi\n" +
+                        "if [ -z \"$PROJECT_DIR\" ]; then\n" +
+                        "  echo \"[ERROR] No Node.js project found under \\\"$ROOT\\\"\"\n" +
+                        "  exit 1\n" +
+                        "fi\n" +
+                        "echo \"Using Project Directory: \\\"$PROJECT_DIR\\\"\"\n" +
+                        "cd \"$PROJECT_DIR\" || exit 1\n" +
+                        "\n" +
+                        NPM_CHECK +
+                        "\n" +
+                        NPM_INSTALL +
+                        "\n" +
+                        "if ! command -v sonar-scanner >/dev/null 2>&1; then\n" +
+                        "  echo \"[ERROR] sonar-scanner not found in PATH.\"\n" +
+                        "  echo \"Please install: npm install -g sonarqube-scanner\"\n" +
+                        "  echo \"Or download from: https://docs.sonarqube.org/latest/analysis/scan/sonarscanner/\"\n" +
+                        "  exit 1\n" +
+                        "fi\n" +
+                        "\n" +
+                        SCANNER_RUN,
+                LocalDateTime.now()
+        );
+    }
+
+    private static final String NPM_CHECK =
+            "if ! command -v npm >/dev/null 2>&1; then\n" +
+                    "  echo \"[ERROR] npm not found in PATH.\"\n" +
+                    "  echo \"Please install Node.js from: https://nodejs.org/\"\n" +
+                    "  exit 1\n" +
+                    "fi\n";
+
+    private static final String NPM_INSTALL =
+            "if [ ! -d node_modules ]; then\n" +
+                    "  echo \"[INFO] node_modules not found. Running npm install...\"\n" +
+                    "  echo \"##scan-stage build begin\"\n" +
+                    "  npm install --prefer-offline --no-audit --no-fund\n" +
+                    "  NPM_EXIT=$?\n" +
+                    "  echo \"##scan-stage build end\"\n" +
+                    "  if [ $NPM_EXIT -ne 0 ]; then\n" +
+                    "    echo \"[ERROR] npm install FAILED!\"\n" +
+                    "    exit 1\n" +
+                    "  fi\n" +
+                    "  echo \"[INFO] npm install completed.\"\n" +
+                    "fi\n";
+
+    private static final String SCANNER_RUN =
+            "if [ ! -f sonar-project.properties ]; then\n" +
+                    "  echo \"[ERROR] sonar-project.properties not found!\"\n" +
+                    "  exit 1\n" +
+                    "fi\n" +
+                    "\n" +
+                    "echo \"[INFO] Starting Sonar Analysis in $(pwd)\"\n" +
+                    "echo \"##scan-stage analysis begin\"\n" +
+                    "sonar-scanner\n" +
+                    "SONAR_EXIT=$?\n" +
+                    "echo \"##scan-stage analysis end\"\n" +
+                    "if [ $SONAR_EXIT -ne 0 ]; then\n" +
+                    "  echo \"[ERROR] Sonar Analysis FAILED! Exit Code: $SONAR_EXIT\"\n" +
+                    "  exit 1\n" +
+                    "fi\n" +
+                    "echo \"[SUCCESS] Sonar Analysis COMPLETED.\"\n" +
+                    "exit 0\n";
+
+    @Override
+    public int destroyTree(Process process, Duration grace) {
+        List<ProcessHandle> tree = ScanRunner.snapshotDescendants(process);
+        long pid = process.pid();
+
+        // TERM ก่อนให้ maven/scanner ปิด lock file เอง ครบ grace แล้วค่อย KILL
+        if (useSetsid) {
+            signalGroup("TERM", pid);
+        } else {
+            tree.forEach(ProcessHandle::destroy);
+            process.destroy();
+        }
+        try {
+            process.waitFor(grace.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (useSetsid) {
+            signalGroup("KILL", pid);
+        }
+        ScanRunner.forceKill(process, tree);
+        return tree.size() + 1;
+    }
+
+    /** kill -SIG -- -pgid : ส่งให้ทุก process ใน group (group หายไปแล้ว kill จะคืน exit != 0 เฉย ๆ) */
+    private static void signalGroup(String signal, long pgid) {
+        try {
+            Process kill = new ProcessBuilder("kill", "-" + signal, "--", "-" + pgid)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            kill.waitFor(5, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            log.warn("kill -{} for process group {} failed: {}", signal, pgid, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** ค่าใน single quote ของ bash: ' → '\'' (กัน $ ` " ในชื่อโปรเจกต์/token) */
+    static String shellQuote(String value) {
+        return "'" + String.valueOf(value).replace("'", "'\\''") + "'";
+    }
+
+    private static boolean onPath(String executable) {
+        String path = System.getenv("PATH");
+        if (path == null) return false;
+        for (String dir : path.split(File.pathSeparator)) {
+            if (!dir.isEmpty() && Files.isExecutable(Paths.get(dir, executable))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package com.automate.CodeReview.Service.runner;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * ส่วนที่ขึ้นกับ OS ของการรัน scan: สคริปต์ build + sonar ที่ generate ลง working copy, คำสั่งที่ใช้รันสคริปต์,
+ * และการฆ่าทั้งต้นไม้ของ process ตอน timeout/ยกเลิก (การลบโฟลเดอร์ clone อยู่ที่ WorkspaceManager)
+ * - WindowsScanRunner: run_sonar.bat ผ่าน cmd.exe (ของเดิม)
+ * - PosixScanRunner: run_sonar.sh ผ่าน bash สำหรับ Linux/macOS
+ * ทุกสคริปต์ต้องพิมพ์ marker "##scan-stage build|analysis begin|end" และจบด้วย exit code ของขั้นที่ล้ม
+ * (maven คำสั่งเดียว: analysis เริ่มที่บรรทัด SONAR_GOAL_LINE แทน marker)
+ * เลือกตัวไหนดู ScanRunnerConfig (scan.runner.os)
+ */
+public interface ScanRunner {
+
+    String name();
+
+    String scriptFileName();
+
+    /** argv สำหรับ ProcessBuilder ที่รันสคริปต์ */
+    List<String> command(Path script);
+
+    /**
+     * บรรทัดที่ maven เริ่ม goal sonar เช่น "[INFO] --- sonar:3.11.0.3922:sonar (default-cli) @ app ---"
+     * (maven เก่าพิมพ์ sonar-maven-plugin:...) ใช้แบ่ง build/analysis เมื่อทั้งสองอยู่ในคำสั่ง mvn เดียว
+     */
+    Pattern SONAR_GOAL_LINE = Pattern.compile("---.*?(?:sonar|sonar-maven-plugin):[\\w.-]+:sonar\\b");
+
+    /**
+     * profileLabel = ชื่อ AnalysisProfile ที่พิมพ์ลง log, buildGoals = goal ของ maven ขั้น build
+     * analysisInBuild = รัน buildGoals + sonar:sonar ใน mvn คำสั่งเดียว (build ที่ไม่ install ต้องใช้แบบนี้
+     * ไม่งั้น sonar:sonar อีกคำสั่ง resolve module พี่น้องใน reactor ไม่เจอ)
+     */
+    String mavenScript(String projectKey, String projectName, String sonarToken, String profileLabel, String buildGoals,
+                       boolean analysisInBuild);
+
+    /** ค่าโปรเจกต์อ่านจาก sonar-project.properties ที่สร้างไว้ข้างสคริปต์ */
+    String angularScript();
+
+    String nodeScript();
+
+    /** ฆ่า process พร้อมลูกหลานทั้งหมด (mvn/java/node ที่สคริปต์ spawn) ให้เวลาจบเองได้ไม่เกิน grace คืนจำนวน process ในต้นไม้ */
+    int destroyTree(Process process, Duration grace);
+
+    /** เก็บรายชื่อลูกหลานไว้ก่อนฆ่า (ฆ่าพ่อแล้วลูกจะถูกย้ายไปอยู่ใต้ init หาผ่าน descendants() ไม่เจออีก) */
+    static List<ProcessHandle> snapshotDescendants(Process process) {
+        return process.descendants().toList();
+    }
+
+    static void forceKill(Process process, List<ProcessHandle> tree) {
+        tree.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+        if (process.isAlive()) {
+            process.destroyForcibly();
+        }
+    }
+}
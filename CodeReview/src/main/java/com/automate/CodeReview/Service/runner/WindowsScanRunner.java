@@ -0,0 +1,343 @@
+package com.automate.CodeReview.Service.runner;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * runner เดิมบน Windows: run_sonar.bat ผ่าน cmd.exe
+ * ฆ่าทั้งต้นไม้ด้วย taskkill /T (cmd → mvn → java) แล้วเก็บตกลูกหลานที่ยังเหลือด้วย ProcessHandle
+ */
+@Slf4j
+public class WindowsScanRunner implements ScanRunner {
+
+    @Override
+    public String name() {
+        return "windows";
+    }
+
+    @Override
+    public String scriptFileName() {
+        return "run_sonar.bat";
+    }
+
+    @Override
+    public List<String> command(Path script) {
+        return List.of("cmd.exe", "/c", "\"" + script.toAbsolutePath() + "\"");
+    }
+
+    @Override
+    public String mavenScript(String projectKey, String projectName, String sonarToken,
+                              String profileLabel, String buildGoals, boolean analysisInBuild) {
+        return String.format(
+                "@echo off\r\n" +
+                        "setlocal EnableExtensions EnableDelayedExpansion\r\n" +
+                        "REM Script created at %s\r\n" +
+                        "\r\n" +
+                        "REM ===== Default values from generator =====\r\n" +
+                        "set \"SONAR_TOKEN=%s\"\r\n" +
+                        "set \"PROJECT_KEY=%s\"\r\n" +
+                        "set \"PROJECT_NAME=%s\"\r\n" +
+                        "\r\n" +
+                        "REM ===== Allow override by args =====\r\n" +
+                        "if not \"%%~1\"==\"\" set \"SONAR_TOKEN=%%~1\"\r\n" +
+                        "if not \"%%~2\"==\"\" set \"PROJECT_KEY=%%~2\"\r\n" +
+                        "if not \"%%~3\"==\"\" set \"PROJECT_NAME=%%~3\"\r\n" +
+                        "\r\n" +
+                        "REM ===== Find pom.xml =====\r\n" +
+                        "set \"ROOT=%%~dp0\"\r\n" +
+                        "set \"POM=\"\r\n" +
+                        "if exist \"%%ROOT%%pom.xml\" (\r\n" +
+                        "  set \"POM=%%ROOT%%pom.xml\"\r\n" +
+                        ") else (\r\n" +
+                        "  for /r \"%%ROOT%%\" %%%%F in (pom.xml) do (\r\n" +
+                        "    if exist \"%%%%~dpFsrc\" (\r\n" +
+                        "      set \"POM=%%%%~fF\"\r\n" +
+                        "      goto :pom_found\r\n" +
+                        "    )\r\n" +
+                        "    if not defined POM set \"POM=%%%%~fF\"\r\n" +
+                        "  )\r\n" +
+                        ")\r\n" +
+                        ":pom_found\r\n" +
+                        "if not defined POM (\r\n" +
+                        "  echo [ERROR] No pom.xml found under \"%%ROOT%%\"\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "echo Using POM: \"%%POM%%\"\r\n" +
+                        "\r\n" +
+                        "REM ===== Prefer mvnw if present or fall back to mvn =====\r\n" +
+                        "set \"MVN=mvn\"\r\n" +
+                        "set \"POM_DIR=\"\r\n" +
+                        "set \"USING_WRAPPER=0\"\r\n" +
+                        "for %%%%X in (\"!POM!\") do (\r\n" +
+                        "  set \"POM_DIR=%%%%~dpX\"\r\n" +
+                        ")\r\n" +
+                        "if exist \"!POM_DIR!mvnw.cmd\" (\r\n" +
+                        "  set \"MVN=!POM_DIR!mvnw.cmd\"\r\n" +
+                        "  set \"USING_WRAPPER=1\"\r\n" +
+                        ")\r\n" +
+                        "if not defined POM_DIR set \"POM_DIR=!ROOT!\"\r\n" +
+                        "if \"!USING_WRAPPER!\"==\"0\" echo INFO: Using system Maven. Make sure it is installed and in PATH.\r\n" +
+                        "\r\n" +
+                        "echo.\r\n" +
+                        "echo Starting Maven Build [%s] and SonarQube Analysis (Tests SKIPPED)\r\n" +
+                        "echo Project Key : !PROJECT_KEY!\r\n" +
+                        "echo Project Name: !PROJECT_NAME!\r\n" +
+                        "echo Host URL    : http://localhost:9000\r\n" +
+                        "echo.\r\n" +
+                        "\r\n" +
+                        "%s" +
+                        "pause\r\n" +
+                        "endlocal & exit /b 0\r\n",
+                LocalDateTime.now(),
+                sonarToken,
+                projectKey,
+                projectName,
+                profileLabel,
+                analysisInBuild ? singleMavenRun(buildGoals) : separateMavenRuns(buildGoals)
+        );
+    }
+
+    private static final String SONAR_ARGS =
+            "-Dsonar.token=\"!SONAR_TOKEN!\" -Dsonar.host.url=http://localhost:9000 -Dsonar.projectKey=\"!PROJECT_KEY!\" " +
+                    "-Dsonar.projectName=\"!PROJECT_NAME!\" -Dsonar.projectBaseDir=\"!POM_DIR!\"";
+
+    /** build แล้วค่อย sonar:sonar อีกคำสั่ง (ใช้ได้เพราะ build install module ลง local repo แล้ว) */
+    private static String separateMavenRuns(String buildGoals) {
+        return "echo ##scan-stage build begin\r\n" +
+                "call \"!MVN!\" -f \"!POM!\" " + buildGoals + " -DskipTests\r\n" +
+                "set \"BUILD_EXIT=!errorlevel!\"\r\n" +
+                "echo ##scan-stage build end\r\n" +
+                "if !BUILD_EXIT! neq 0 (\r\n" +
+                "  echo.\r\n" +
+                "  echo [ERROR] Build FAILED! Exit Code: !BUILD_EXIT!\r\n" +
+                "  pause\r\n" +
+                "  exit /b !BUILD_EXIT!\r\n" +
+                ")\r\n" +
+                "\r\n" +
+                "echo ##scan-stage analysis begin\r\n" +
+                "call \"!MVN!\" -f \"!POM!\" sonar:sonar " + SONAR_ARGS + "\r\n" +
+                "set \"SONAR_EXIT=!errorlevel!\"\r\n" +
+                "echo ##scan-stage analysis end\r\n" +
+                "\r\n" +
+                "if !SONAR_EXIT! neq 0 (\r\n" +
+                "  echo.\r\n" +
+                "  echo [ERROR] Sonar Analysis FAILED! Exit Code: !SONAR_EXIT!\r\n" +
+                "  pause\r\n" +
+                "  exit /b !SONAR_EXIT!\r\n" +
+                ")\r\n";
+    }
+
+    /**
+     * build + sonar:sonar ใน reactor เดียว (ไม่ install → sibling module resolve ได้จาก reactor เท่านั้น)
+     * ช่วง build → analysis แบ่งจากบรรทัดเริ่ม goal sonar ของ maven เอง ดู {@link ScanRunner#SONAR_GOAL_LINE}
+     */
+    private static String singleMavenRun(String buildGoals) {
+        return "echo ##scan-stage build begin\r\n" +
+                "call \"!MVN!\" -f \"!POM!\" " + buildGoals + " sonar:sonar -DskipTests " + SONAR_ARGS + "\r\n" +
+                "set \"MVN_EXIT=!errorlevel!\"\r\n" +
+                "echo ##scan-stage build end\r\n" +
+                "echo ##scan-stage analysis end\r\n" +
+                "\r\n" +
+                "if !MVN_EXIT! neq 0 (\r\n" +
+                "  echo.\r\n" +
+                "  echo [ERROR] Build/Sonar Analysis FAILED! Exit Code: !MVN_EXIT!\r\n" +
+                "  pause\r\n" +
+                "  exit /b !MVN_EXIT!\r\n" +
+                ")\r\n";
+    }
+
+    @Override
+    public String angularScript() {
+        return
+                "@echo off\r\n" +
+                        "setlocal EnableExtensions EnableDelayedExpansion\r\n" +
+                        "REM Script created for Angular project\r\n" +
+                        "\r\n" +
+                        "set \"ROOT=%~dp0\"\r\n" +
+                        "set \"PROJECT_DIR=%ROOT%\"\r\n" +
+                        "REM --- sanitize: ลบเครื่องหมายคำพูดเผื่อมี quote แอบติดมา ---\r\n" +
+                        "set \"PROJECT_DIR=!PROJECT_DIR:\"=!\"\r\n" +
+                        "echo [INFO] PROJECT_DIR=[!PROJECT_DIR!]\r\n" +
+                        "\r\n" +
+                        "REM --- ตรวจสอบ npm ---\r\n" +
+                        "where npm >nul 2>&1 || (\r\n" +
+                        "  echo [ERROR] npm not found in PATH.\r\n" +
+                        "  echo Please install Node.js from: https://nodejs.org/\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "REM --- เข้าดิเรกทอรีโปรเจกต์ ---\r\n" +
+                        "cd /d \"!PROJECT_DIR!\" || (\r\n" +
+                        "  echo [ERROR] Cannot CD to !PROJECT_DIR!\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "REM --- ติดตั้ง node_modules ถ้ายังไม่มี ---\r\n" +
+                        "if not exist \"node_modules\" (\r\n" +
+                        "  echo [INFO] node_modules not found. Running npm install...\r\n" +
+                        "  echo ##scan-stage build begin\r\n" +
+                        "  call npm install --prefer-offline --no-audit --no-fund\r\n" +
+                        "  echo ##scan-stage build end\r\n" +
+                        "  if errorlevel 1 (\r\n" +
+                        "    echo [ERROR] npm install FAILED!\r\n" +
+                        "    pause\r\n" +
+                        "    exit /b 1\r\n" +
+                        "  )\r\n" +
+                        "  echo [INFO] npm install completed.\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "REM --- ตรวจสอบและติดตั้ง sonarqube-scanner ---\r\n" +
+                        "where sonar-scanner >nul 2>&1\r\n" +
+                        "if errorlevel 1 (\r\n" +
+                        "  echo [INFO] sonar-scanner not found. Installing sonarqube-scanner globally...\r\n" +
+                        "  call npm install -g sonarqube-scanner\r\n" +
+                        "  if errorlevel 1 (\r\n" +
+                        "    echo [ERROR] Failed to install sonarqube-scanner!\r\n" +
+                        "    echo Please install manually: npm install -g sonarqube-scanner\r\n" +
+                        "    pause\r\n" +
+                        "    exit /b 1\r\n" +
+                        "  )\r\n" +
+                        "  echo [INFO] sonarqube-scanner installed successfully.\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "REM --- ตรวจสอบไฟล์ config ---\r\n" +
+                        "if not exist \"sonar-project.properties\" (\r\n" +
+                        "  echo [ERROR] sonar-project.properties not found!\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "REM --- รันสแกน Sonar ---\r\n" +
+                        "echo [INFO] Starting Sonar Analysis for Angular project...\r\n" +
+                        "echo [INFO] Using sonar-project.properties in !CD!\r\n" +
+                        "echo ##scan-stage analysis begin\r\n" +
+                        "call sonar-scanner\r\n" +
+                        "set \"SONAR_EXIT=!errorlevel!\"\r\n" +
+                        "echo ##scan-stage analysis end\r\n" +
+                        "\r\n" +
+                        "if !SONAR_EXIT! neq 0 (\r\n" +
+                        "  echo [ERROR] Sonar Analysis FAILED! ExitCode=!SONAR_EXIT!\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "echo [SUCCESS] Sonar Analysis COMPLETED.\r\n" +
+                        "pause\r\n" +
+                        "exit /b 0\r\n";
+    }
+
+    @Override
+    public String nodeScript() {
+        return String.format(
+                "@echo off\r\n" +
+                        "setlocal EnableExtensions EnableDelayedExpansion\r\n" +
+                        "REM Script created at %s\r\n" +
+                        "\r\n" +
+                        "REM ===== Find project directory =====\r\n" +
+                        "set \"ROOT=%%~dp0\"\r\n" +
+                        "set \"PROJECT_DIR=\"\r\n" +
+                        "if exist \"%%ROOT%%package.json\" (\r\n" +
+                        "  set \"PROJECT_DIR=%%ROOT%%\"\r\n" +
+                        ") else (\r\n" +
+                        "  for /r \"%%ROOT%%\" %%%%F in (package.json) do (\r\n" +
+                        "    if exist \"%%%%~dpFsrc\" (\r\n" +
+                        "      set \"PROJECT_DIR=%%%%~dpF\"\r\n" +
+                        "      goto :project_found\r\n" +
+                        "    )\r\n" +
+                        "    if not defined PROJECT_DIR set \"PROJECT_DIR=%%%%~dpF\"\r\n" +
+                        "  )\r\n" +
+                        ")\r\n" +
+                        ":project_found\r\n" +
+                        "if not defined PROJECT_DIR (\r\n" +
+                        "  echo [ERROR] No Node.js project found under \"%%ROOT%%\"\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "echo Using Project Directory: \"%%PROJECT_DIR%%\"\r\n" +
+                        "\r\n" +
+                        "REM ===== Change to project directory =====\r\n" +
+                        "cd /d \"%%PROJECT_DIR%%\"\r\n" +
+                        "\r\n" +
+                        "REM ===== Check if npm is installed =====\r\n" +
+                        "where npm >nul 2>&1\r\n" +
+                        "if errorlevel 1 (\r\n" +
+                        "  echo [ERROR] npm not found in PATH.\r\n" +
+                        "  echo Please install Node.js from: https://nodejs.org/\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "REM ===== Check if node_modules exists =====\r\n" +
+                        "if not exist \"node_modules\" (\r\n" +
+                        "  echo node_modules not found. Running npm install...\r\n" +
+                        "  echo ##scan-stage build begin\r\n" +
+                        "  call npm install --prefer-offline --no-audit --no-fund\r\n" +
+                        "  echo ##scan-stage build end\r\n" +
+                        "  if errorlevel 1 (\r\n" +
+                        "    echo [ERROR] npm install FAILED!\r\n" +
+                        "    pause\r\n" +
+                        "    exit /b 1\r\n" +
+                        "  )\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "REM ===== Check if sonar-scanner is installed =====\r\n" +
+                        "where sonar-scanner >nul 2>&1\r\n" +
+                        "if errorlevel 1 (\r\n" +
+                        "  echo [ERROR] sonar-scanner not found in PATH.\r\n" +
+                        "  echo Please install: npm install -g sonarqube-scanner\r\n" +
+                        "  echo Or download from: https://docs.sonarqube.org/latest/analysis/scan/sonarscanner/\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "REM ===== Check if sonar-project.properties exists =====\r\n" +
+                        "if not exist \"sonar-project.properties\" (\r\n" +
+                        "  echo [ERROR] sonar-project.properties not found!\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "\r\n" +
+                        "echo Starting Sonar Analysis for Node.js project...\r\n" +
+                        "echo Using sonar-project.properties for configuration\r\n" +
+                        "\r\n" +
+                        "echo ##scan-stage analysis begin\r\n" +
+                        "call sonar-scanner\r\n" +
+                        "set \"SONAR_EXIT=!errorlevel!\"\r\n" +
+                        "echo ##scan-stage analysis end\r\n" +
+                        "\r\n" +
+                        "if !SONAR_EXIT! neq 0 (\r\n" +
+                        "  echo [ERROR] Sonar Analysis FAILED! Exit Code: !SONAR_EXIT!\r\n" +
+                        "  pause\r\n" +
+                        "  exit /b 1\r\n" +
+                        ")\r\n" +
+                        "echo Sonar Analysis COMPLETED successfully.\r\n" +
+                        "pause\r\n" +
+                        "exit /b 0\r\n",
+                LocalDateTime.now()
+        );
+    }
+
+    @Override
+    public int destroyTree(Process process, Duration grace) {
+        List<ProcessHandle> tree = ScanRunner.snapshotDescendants(process);
+        try {
+            Process kill = new ProcessBuilder("taskkill", "/T", "/F", "/PID", String.valueOf(process.pid()))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            kill.waitFor(grace.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("taskkill failed for pid {}: {}", process.pid(), e.getMessage());
+        }
+        ScanRunner.forceKill(process, tree);
+        return tree.size() + 1;
+    }
+}
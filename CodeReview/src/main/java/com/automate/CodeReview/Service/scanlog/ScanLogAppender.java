@@ -0,0 +1,288 @@
+package com.automate.CodeReview.Service.scanlog;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * log ของ scan แบบ async: thread ที่อ่าน output ของ process แค่วางบรรทัดลง ring buffer (lock-free)
+ * แล้ว writer thread ตัวเดียวเขียนลงไฟล์เป็นก้อน
+ * - ring เต็ม → ทิ้งบรรทัดและนับ dropped (ไม่ block process) แล้วเขียน marker จำนวนที่หายลงไฟล์
+ * - flush เมื่อค้างเกิน flushBytes หรือเกิน flushIntervalMs
+ * - หน่วยความจำสูงสุด ≈ ringCapacity × maxLineLength ตัวอักษร ไม่ขึ้นกับปริมาณ output
+ * - listener (ถ้ามี) ได้รับทุกบรรทัดตามที่เขียนลงไฟล์ จาก writer thread (ใช้ stream log สด)
+ */
+@Slf4j
+public final class ScanLogAppender implements AutoCloseable {
+
+    private static final DateTimeFormatter SECOND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /** time ของ entry ที่ไม่ต้องใส่ timestamp (header/footer) */
+    private static final long RAW = Long.MIN_VALUE;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final String NEWLINE = System.lineSeparator();
+
+    // ring buffer แบบ bounded multi-producer/single-consumer:
+    // slot i ว่างให้ producer ที่ตำแหน่ง pos เมื่อ sequence[i] == pos, มีข้อมูลให้ consumer เมื่อ == pos + 1
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequence;
+    private final String[] lines;
+    private final long[] times;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;                      // writer thread เท่านั้น
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private long droppedReported;           // writer thread เท่านั้น
+
+    private final Path file;
+    private final Writer out;
+    private final int maxLineLength;
+    private final long flushBytes;
+    private final long flushIntervalNanos;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Thread writer;
+    private final @Nullable Consumer<String> listener;
+    private volatile boolean closed;
+
+    // timestamp "yyyy-MM-dd HH:mm:ss" ของวินาทีล่าสุด (writer thread เท่านั้น)
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedPrefix;
+
+    private ScanLogAppender(Path file, Writer out, ScanProperties.Logs cfg, @Nullable Consumer<String> listener) {
+        this.capacity = Integer.highestOneBit(Math.max(2, cfg.getRingCapacity() - 1) << 1);
+        this.mask = capacity - 1;
+        this.sequence = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequence.set(i, i);
+        }
+        this.lines = new String[capacity];
+        this.times = new long[capacity];
+        this.file = file;
+        this.out = out;
+        this.maxLineLength = cfg.getMaxLineLength();
+        this.flushBytes = cfg.getFlushBytes();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(cfg.getFlushIntervalMs());
+        this.listener = listener;
+        this.writer = new Thread(this::runWriter, "scan-log-" + file.getFileName());
+        this.writer.setDaemon(true);
+    }
+
+    /** เปิดไฟล์ (append) และเริ่ม writer thread; listener รับบรรทัดที่เขียนแล้ว (ต้องไม่ block) */
+    public static ScanLogAppender open(Path file, ScanProperties.Logs cfg, @Nullable Consumer<String> listener) throws IOException {
+        Files.createDirectories(file.getParent());
+        Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        ScanLogAppender appender = new ScanLogAppender(file, out, cfg, listener);
+        appender.writer.start();
+        return appender;
+    }
+
+    /** 1 บรรทัด (ใส่ timestamp ตอนรับเข้า); false = ถูกทิ้งเพราะ buffer เต็มหรือปิดแล้ว */
+    public boolean append(String line) {
+        return offer(System.currentTimeMillis(), truncate(line));
+    }
+
+    /** ข้อความดิบ (header/footer) เขียนตามที่ให้มา ไม่เติม timestamp / newline */
+    public boolean appendRaw(String text) {
+        return offer(RAW, text);
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /** รอ writer เขียนของที่ค้างใน ring ให้หมดแล้วปิดไฟล์ */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            log.warn("Scan log {} closed: written={}, dropped={} (ring capacity {})",
+                    file.getFileName(), written.get(), dropped.get(), capacity);
+        }
+    }
+
+    // ---------- ring buffer ----------
+
+    private boolean offer(long time, String line) {
+        if (closed) {
+            return false;
+        }
+        long pos = tail.get();
+        for (;;) {
+            int idx = (int) (pos & mask);
+            long diff = sequence.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    lines[idx] = line;
+                    times[idx] = time;
+                    sequence.set(idx, pos + 1);     // publish ให้ writer เห็น
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();          // เต็ม: writer ยังไม่ว่างมาเก็บ slot นี้
+                return false;
+            } else {
+                pos = tail.get();                   // producer อื่นแย่ง slot ไปแล้ว
+            }
+        }
+    }
+
+    // ---------- writer thread ----------
+
+    private void runWriter() {
+        long pendingChars = 0;
+        long lastFlush = System.nanoTime();
+        try {
+            for (;;) {
+                long chars = drain();
+                pendingChars += chars;
+                long now = System.nanoTime();
+                if (pendingChars > 0 && (pendingChars >= flushBytes || now - lastFlush >= flushIntervalNanos)) {
+                    out.flush();
+                    pendingChars = 0;
+                    lastFlush = now;
+                }
+                if (chars == 0) {
+                    if (closed) {
+                        drain();                    // เก็บบรรทัดสุดท้ายที่เข้ามาระหว่างปิด
+                        reportDropped();
+                        break;
+                    }
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            closed = true;
+            log.warn("Scan log writer failed for {}: {}", file, e.getMessage());
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Failed to close scan log {}", file, e);
+            }
+        }
+    }
+
+    /** เขียน entry ที่พร้อมใน ring (ไม่เกิน 1 รอบ ring ต่อครั้ง ให้มีจังหวะ flush) คืนจำนวนตัวอักษรที่เขียน */
+    private long drain() throws IOException {
+        long chars = 0;
+        for (int n = 0; n < capacity; n++) {
+            int idx = (int) (head & mask);
+            if (sequence.get(idx) != head + 1) {
+                break;
+            }
+            String line = lines[idx];
+            long time = times[idx];
+            lines[idx] = null;
+            sequence.set(idx, head + capacity);     // คืน slot ให้รอบถัดไป
+            head++;
+
+            chars += reportDropped();
+            chars += write(time, line);
+        }
+        return chars;
+    }
+
+    private long reportDropped() throws IOException {
+        long total = dropped.get();
+        if (total == droppedReported) {
+            return 0;
+        }
+        long lost = total - droppedReported;
+        droppedReported = total;
+        return write(System.currentTimeMillis(), "[scan-log] " + lost + " lines dropped (log buffer full)");
+    }
+
+    private long write(long time, String line) throws IOException {
+        if (time == RAW) {
+            out.write(line);
+            publishRaw(line);
+            return line.length();
+        }
+        int millis = timestamp(time);
+        out.write(cachedPrefix);
+        out.write('.');
+        out.write('0' + millis / 100);
+        out.write('0' + (millis / 10) % 10);
+        out.write('0' + millis % 10);
+        out.write(" | ");
+        out.write(line);
+        out.write(NEWLINE);
+        written.incrementAndGet();
+        if (listener != null) {
+            publish(cachedPrefix + '.' + (char) ('0' + millis / 100) + (char) ('0' + (millis / 10) % 10)
+                    + (char) ('0' + millis % 10) + " | " + line);
+        }
+        return 26L + line.length() + NEWLINE.length();
+    }
+
+    /** เตรียม cachedPrefix (yyyy-MM-dd HH:mm:ss) โดย format แค่ครั้งละวินาที คืนส่วน millis */
+    private int timestamp(long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedPrefix = SECOND_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone));
+        }
+        return Math.floorMod(epochMillis, 1000);
+    }
+
+    /** header/footer อาจมีหลายบรรทัด → ส่งให้ listener ทีละบรรทัด */
+    private void publishRaw(String text) {
+        if (listener == null) {
+            return;
+        }
+        for (String line : text.split("\\R")) {
+            publish(line);
+        }
+    }
+
+    private void publish(String line) {
+        try {
+            listener.accept(line);
+        } catch (RuntimeException e) {
+            log.debug("Scan log listener failed for {}: {}", file.getFileName(), e.getMessage());
+        }
+    }
+
+    private String truncate(String line) {
+        if (line.length() <= maxLineLength) {
+            return line;
+        }
+        return line.substring(0, maxLineLength) + " ...[" + (line.length() - maxLineLength) + " chars truncated]";
+    }
+}
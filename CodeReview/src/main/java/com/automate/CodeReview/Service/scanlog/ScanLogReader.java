@@ -0,0 +1,239 @@
+package com.automate.CodeReview.Service.scanlog;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.Models.ScanLogModel;
+import jakarta.annotation.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * อ่าน log ของ scan เป็นช่วง (ไม่โหลดทั้งไฟล์)
+ * - อ่านด้วย FileChannel แบบระบุตำแหน่ง (positional read) ทีละ chunk
+ * - index ตำแหน่งเริ่มบรรทัดแบบ sparse (ทุก ๆ indexStride บรรทัด) สร้างครั้งเดียวต่อไฟล์
+ *   แล้วต่อเฉพาะส่วนที่งอกเพิ่ม (log ที่ยังเขียนอยู่)
+ * - นับเฉพาะบรรทัดที่จบด้วย '\n' แล้ว บรรทัดที่ writer ยังเขียนไม่จบจะได้ในรอบถัดไป
+ */
+@Component
+public class ScanLogReader {
+
+    private static final int CHUNK = 64 * 1024;
+
+    private final ScanProperties.Logs props;
+    private final Map<Path, LineIndex> indexes;
+
+    public ScanLogReader(ScanProperties scanProperties) {
+        this.props = scanProperties.getLogs();
+        int maxEntries = props.getIndexCacheSize();
+        this.indexes = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, LineIndex> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * อ่านตั้งแต่ byte offset / บรรทัด fromLine / tail บรรทัดสุดท้าย (ระบุอย่างใดอย่างหนึ่ง ไม่ระบุ = ต้นไฟล์)
+     * ได้ไม่เกิน limit บรรทัดและไม่เกิน readMaxBytes; nextOffset / nextLine ใช้เป็น cursor ของรอบถัดไป
+     */
+    public ScanLogModel read(Path file, @Nullable Long offset, @Nullable Long fromLine,
+                             @Nullable Integer tail, @Nullable Integer limit) throws IOException {
+        int maxLines = Math.min(limit != null && limit > 0 ? limit : props.getReadDefaultLines(), props.getReadMaxLines());
+        Path key = file.toAbsolutePath().normalize();
+
+        try (FileChannel ch = FileChannel.open(key, StandardOpenOption.READ)) {
+            LineIndex index = indexes.computeIfAbsent(key, k -> new LineIndex(props.getIndexStride()));
+            long startOffset;
+            long startLine;
+            long totalLines;
+            long indexedBytes;
+            synchronized (index) {
+                index.extend(ch);
+                totalLines = index.lines;
+                indexedBytes = index.indexedBytes;
+                if (offset != null) {
+                    startOffset = Math.min(offset, indexedBytes);
+                    startLine = index.lineAt(ch, startOffset);
+                } else {
+                    startLine = tail != null ? Math.max(0, totalLines - tail) : (fromLine != null ? fromLine : 0);
+                    startLine = Math.min(startLine, totalLines);
+                    startOffset = index.lineStart(ch, startLine);
+                }
+            }
+
+            List<String> lines = new ArrayList<>(Math.min(maxLines, 1024));
+            long nextOffset = readLines(ch, startOffset, indexedBytes, maxLines, props.getReadMaxBytes(), lines);
+
+            ScanLogModel model = new ScanLogModel();
+            model.setLines(lines);
+            model.setOffset(startOffset);
+            model.setNextOffset(nextOffset);
+            model.setFromLine(startLine);
+            model.setNextLine(startLine + lines.size());
+            model.setTotalLines(totalLines);
+            model.setFileSize(ch.size());
+            model.setEof(nextOffset >= indexedBytes);
+            return model;
+        }
+    }
+
+    /** อ่านบรรทัดที่สมบูรณ์ตั้งแต่ from (ไม่เกิน end) คืนตำแหน่งถัดจากบรรทัดสุดท้ายที่อ่าน */
+    private static long readLines(FileChannel ch, long from, long end, int maxLines, long maxBytes,
+                                  List<String> out) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(CHUNK);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        long pos = from;
+        long next = from;
+        while (pos < end && out.size() < maxLines && next - from < maxBytes) {
+            buf.clear().limit((int) Math.min(CHUNK, end - pos));
+            int n = ch.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            byte[] a = buf.array();
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (a[i] != '\n') {
+                    continue;
+                }
+                line.write(a, start, i - start);
+                out.add(decode(line));
+                line.reset();
+                start = i + 1;
+                next = pos + start;
+                if (out.size() >= maxLines || next - from >= maxBytes) {
+                    return next;
+                }
+            }
+            line.write(a, start, n - start);
+            pos += n;
+        }
+        return next;
+    }
+
+    private static String decode(ByteArrayOutputStream line) {
+        byte[] b = line.toByteArray();
+        int len = b.length;
+        if (len > 0 && b[len - 1] == '\r') {
+            len--;      // log เขียนด้วย line separator ของ OS (Windows = \r\n)
+        }
+        return new String(b, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /** นับ '\n' ในช่วง [from, to) */
+    private static long countNewlines(FileChannel ch, long from, long to) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(CHUNK);
+        long count = 0;
+        for (long pos = from; pos < to; ) {
+            buf.clear().limit((int) Math.min(CHUNK, to - pos));
+            int n = ch.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            byte[] a = buf.array();
+            for (int i = 0; i < n; i++) {
+                if (a[i] == '\n') count++;
+            }
+            pos += n;
+        }
+        return count;
+    }
+
+    /** ข้าม skip บรรทัดจาก from คืนตำแหน่งต้นบรรทัดที่ได้ */
+    private static long skipLines(FileChannel ch, long from, long skip, long end) throws IOException {
+        if (skip <= 0) {
+            return from;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(CHUNK);
+        long pos = from;
+        while (pos < end) {
+            buf.clear().limit((int) Math.min(CHUNK, end - pos));
+            int n = ch.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            byte[] a = buf.array();
+            for (int i = 0; i < n; i++) {
+                if (a[i] == '\n' && --skip == 0) {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return end;
+    }
+
+    /** starts[b] = ตำแหน่งต้นบรรทัดที่ b × stride; ใช้ภายใต้ synchronized(this) */
+    private static final class LineIndex {
+        private final int stride;
+        private long[] starts = new long[16];
+        private int blocks = 1;             // starts[0] = 0
+        private long lines;                 // จำนวนบรรทัดที่จบแล้ว
+        private long indexedBytes;          // ถึงหลัง '\n' ตัวสุดท้าย
+        private long scannedBytes;          // สแกนแล้ว (อาจรวมบรรทัดที่ยังไม่จบ)
+
+        private LineIndex(int stride) {
+            this.stride = stride;
+        }
+
+        /** สแกนเฉพาะส่วนที่ไฟล์งอกเพิ่มจากรอบก่อน; ไฟล์หดลง (ถูกเขียนทับ) = เริ่มใหม่ */
+        private void extend(FileChannel ch) throws IOException {
+            long size = ch.size();
+            if (size < scannedBytes) {
+                blocks = 1;
+                lines = 0;
+                indexedBytes = 0;
+                scannedBytes = 0;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(CHUNK);
+            while (scannedBytes < size) {
+                buf.clear().limit((int) Math.min(CHUNK, size - scannedBytes));
+                int n = ch.read(buf, scannedBytes);
+                if (n <= 0) {
+                    break;
+                }
+                byte[] a = buf.array();
+                for (int i = 0; i < n; i++) {
+                    if (a[i] != '\n') {
+                        continue;
+                    }
+                    lines++;
+                    indexedBytes = scannedBytes + i + 1;
+                    if (lines % stride == 0) {
+                        if (blocks == starts.length) {
+                            starts = Arrays.copyOf(starts, blocks * 2);
+                        }
+                        starts[blocks++] = indexedBytes;
+                    }
+                }
+                scannedBytes += n;
+            }
+        }
+
+        private long lineStart(FileChannel ch, long line) throws IOException {
+            int block = (int) Math.min(line / stride, blocks - 1);
+            return skipLines(ch, starts[block], line - (long) block * stride, indexedBytes);
+        }
+
+        private long lineAt(FileChannel ch, long offset) throws IOException {
+            int block = Arrays.binarySearch(starts, 0, blocks, offset);
+            if (block < 0) {
+                block = -block - 2;
+            }
+            return (long) block * stride + countNewlines(ch, starts[block], offset);
+        }
+    }
+}
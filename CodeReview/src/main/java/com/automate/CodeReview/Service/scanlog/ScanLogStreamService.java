@@ -0,0 +1,266 @@
+package com.automate.CodeReview.Service.scanlog;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * stream log ของ scan ที่กำลังรันผ่าน SSE (1 channel ต่อ scan)
+ * - ScanLogAppender ส่งบรรทัดเข้า replay buffer ของ channel (ring จำกัดขนาด, เลข seq ต่อเนื่อง)
+ * - ทุก streamBatchMs ส่งบรรทัดใหม่เป็นก้อน ("scan-log") ให้ผู้ subscribe แต่ละคน
+ * - ผู้ subscribe เป็นแค่ cursor (nextSeq) ใน replay buffer: มาทีหลังก็ได้ของย้อนหลังเท่าที่ buffer มี
+ * - client ช้า (ส่งรอบก่อนยังไม่เสร็จ) ถูกข้ามรอบ ถ้าตามไม่ทันจนบรรทัดหลุด buffer
+ *   จะได้ "scan-log-skipped" บอกจำนวนที่หายแทน (ดูย้อนหลังได้จาก GET /api/scans/{id}/log)
+ * - scan จบ → ส่งที่เหลือ + "scan-log-end" แล้วปิด emitter
+ */
+@Slf4j
+@Service
+public class ScanLogStreamService {
+
+    private final ScanProperties.Logs props;
+    private final ThreadPoolTaskExecutor sendExecutor;
+    private final Map<UUID, Channel> channels = new ConcurrentHashMap<>();
+
+    public ScanLogStreamService(ScanProperties scanProperties,
+                                @Qualifier("scanLogStreamExecutor") ThreadPoolTaskExecutor sendExecutor) {
+        this.props = scanProperties.getLogs();
+        this.sendExecutor = sendExecutor;
+    }
+
+    /** เปิด channel ของ scan ที่เริ่มรัน คืน listener สำหรับ ScanLogAppender.open */
+    public Consumer<String> open(UUID scanId) {
+        Channel channel = channels.computeIfAbsent(scanId, id -> new Channel(id, props.getStreamReplayLines()));
+        return channel::publish;
+    }
+
+    /** scan จบ (เรียกหลังปิด appender แล้ว ให้บรรทัดสุดท้ายเข้า buffer ครบ) */
+    public void close(UUID scanId, @Nullable String status) {
+        Channel channel = channels.remove(scanId);
+        if (channel == null) {
+            return;
+        }
+        Map<String, Object> end = new LinkedHashMap<>();
+        end.put("scanId", scanId);
+        end.put("status", status);
+        end.put("lastSeq", channel.headSeq() - 1);
+        channel.end = end;
+        channel.closed = true;
+        for (Subscriber sub : channel.subscribers) {
+            finish(channel, sub);
+        }
+    }
+
+    /** ส่งที่เหลือ + "scan-log-end" แล้วปิด emitter (ครั้งเดียวต่อ sub: close กับ subscribe อาจเรียกซ้อนกัน) */
+    private void finish(Channel channel, Subscriber sub) {
+        if (!sub.finished.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable finish = () -> {
+            synchronized (sub) {
+                if (deliver(channel, sub)) {
+                    send(sub, "scan-log-end", null, channel.end);
+                }
+                sub.emitter.complete();
+            }
+        };
+        try {
+            sendExecutor.execute(finish);
+        } catch (TaskRejectedException e) {
+            sub.emitter.complete();
+        }
+    }
+
+    /**
+     * subscribe log สดของ scan; afterSeq = seq สุดท้ายที่ client มีแล้ว (Last-Event-ID ตอน reconnect)
+     * scan ไม่ได้รันอยู่ → ส่ง "scan-log-end" ทันที (ให้ client ไปอ่านจาก GET /api/scans/{id}/log)
+     */
+    public SseEmitter subscribe(UUID scanId, @Nullable Long afterSeq) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Channel channel = channels.get(scanId);
+        if (channel == null) {
+            try {
+                emitter.send(SseEmitter.event().name("scan-log-end").data(Map.of("scanId", scanId, "active", false)));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+            return emitter;
+        }
+
+        // ใหม่ = เริ่มจากบรรทัดเก่าสุดที่ยังอยู่ใน buffer, reconnect = ต่อจากที่มี (หลุด buffer แล้วได้ skipped)
+        Subscriber sub = new Subscriber(emitter, afterSeq != null ? afterSeq + 1 : channel.firstSeq());
+        channel.subscribers.add(sub);
+        emitter.onCompletion(() -> channel.subscribers.remove(sub));
+        emitter.onTimeout(() -> channel.subscribers.remove(sub));
+        emitter.onError(e -> channel.subscribers.remove(sub));
+        log.debug("Scan log stream subscribe scanId={}, subscribers={}", scanId, channel.subscribers.size());
+        // close() อาจเอา channel ออกและไล่ subscribers ไปแล้วระหว่าง get กับ add ด้านบน → ปิดเองที่นี่
+        if (channel.closed) {
+            finish(channel, sub);
+            return emitter;
+        }
+        schedule(channel, sub);
+        return emitter;
+    }
+
+    /** รอบส่งก้อน: ผู้ subscribe ที่มีของใหม่และไม่ติดส่งรอบก่อนอยู่ */
+    @Scheduled(fixedDelayString = "${scan.logs.stream-batch-ms:200}")
+    public void flush() {
+        for (Channel channel : channels.values()) {
+            long head = channel.headSeq();
+            for (Subscriber sub : channel.subscribers) {
+                if (sub.nextSeq < head) {
+                    schedule(channel, sub);
+                }
+            }
+        }
+    }
+
+    private void schedule(Channel channel, Subscriber sub) {
+        if (!sub.busy.compareAndSet(false, true)) {
+            return;     // ส่งรอบก่อนยังไม่เสร็จ (client ช้า) → ไว้รอบหน้า
+        }
+        try {
+            sendExecutor.execute(() -> {
+                try {
+                    synchronized (sub) {
+                        if (!deliver(channel, sub)) {
+                            channel.subscribers.remove(sub);
+                        }
+                    }
+                } finally {
+                    sub.busy.set(false);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            sub.busy.set(false);
+        }
+    }
+
+    /** ส่งทุกอย่างที่ sub ยังไม่ได้ (แบ่งก้อนละไม่เกิน streamMaxBatchLines) คืน false ถ้า connection ตาย */
+    private boolean deliver(Channel channel, Subscriber sub) {
+        long target = channel.headSeq();    // ไม่ไล่ตามบรรทัดที่เข้ามาระหว่างส่ง (ไว้รอบหน้า)
+        while (true) {
+            Batch batch = channel.read(sub.nextSeq, props.getStreamMaxBatchLines());
+            if (batch.skipped > 0) {
+                Map<String, Object> skipped = new LinkedHashMap<>();
+                skipped.put("scanId", channel.scanId);
+                skipped.put("skipped", batch.skipped);
+                skipped.put("fromSeq", sub.nextSeq);
+                skipped.put("toSeq", batch.fromSeq - 1);
+                if (!send(sub, "scan-log-skipped", null, skipped)) {
+                    return false;
+                }
+            }
+            if (batch.lines.isEmpty()) {
+                sub.nextSeq = batch.fromSeq;
+                return true;
+            }
+            long lastSeq = batch.fromSeq + batch.lines.size() - 1;
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("scanId", channel.scanId);
+            data.put("fromSeq", batch.fromSeq);
+            data.put("lines", batch.lines);
+            if (!send(sub, "scan-log", String.valueOf(lastSeq), data)) {
+                return false;
+            }
+            sub.nextSeq = lastSeq + 1;
+            if (sub.nextSeq >= target) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean send(Subscriber sub, String event, @Nullable String id, Object data) {
+        try {
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().name(event).data(data);
+            if (id != null) {
+                builder.id(id);
+            }
+            sub.emitter.send(builder);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Scan log stream subscriber gone: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile long nextSeq;      // เขียนภายใต้ synchronized(this)
+
+        private Subscriber(SseEmitter emitter, long nextSeq) {
+            this.emitter = emitter;
+            this.nextSeq = nextSeq;
+        }
+    }
+
+    private record Batch(long skipped, long fromSeq, List<String> lines) {
+    }
+
+    /** replay buffer ของ scan หนึ่ง: เก็บ capacity บรรทัดล่าสุด บรรทัดที่ seq = s อยู่ slot s % capacity */
+    private static final class Channel {
+        private final UUID scanId;
+        private final String[] ring;
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private long head;                  // seq ถัดไป
+        private volatile boolean closed;
+        private volatile Map<String, Object> end;      // event "scan-log-end" (ตั้งก่อน closed)
+
+        private Channel(UUID scanId, int capacity) {
+            this.scanId = scanId;
+            this.ring = new String[capacity];
+        }
+
+        private synchronized void publish(String line) {
+            if (closed) {
+                return;
+            }
+            ring[(int) (head % ring.length)] = line;
+            head++;
+        }
+
+        private synchronized long firstSeq() {
+            return Math.max(0, head - ring.length);
+        }
+
+        private synchronized long headSeq() {
+            return head;
+        }
+
+        private synchronized Batch read(long fromSeq, int max) {
+            long first = Math.max(0, head - ring.length);
+            long skipped = 0;
+            if (fromSeq < first) {
+                skipped = first - fromSeq;
+                fromSeq = first;
+            }
+            fromSeq = Math.min(fromSeq, head);
+            int n = (int) Math.min(max, head - fromSeq);
+            List<String> lines = new ArrayList<>(n);
+            for (long seq = fromSeq; seq < fromSeq + n; seq++) {
+                lines.add(ring[(int) (seq % ring.length)]);
+            }
+            return new Batch(skipped, fromSeq, lines);
+        }
+    }
+}
@@ -19,6 +19,8 @@ public class SonarWebhookPayload {
     private QualityGate qualityGate;
     private String analysisId;
     private String revision;
+    // sonar.analysis.* ที่ส่งไปตอน scan (เช่น sonar.analysis.referenceId)
+    private java.util.Map<String, String> properties;
 
     @Data
     @JsonIgnoreProperties(ignoreUnknown = true)
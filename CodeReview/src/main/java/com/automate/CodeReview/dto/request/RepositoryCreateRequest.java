@@ -1,5 +1,6 @@
 package com.automate.CodeReview.dto.request;
 
+import com.automate.CodeReview.entity.AnalysisProfile;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -16,6 +17,9 @@ public class RepositoryCreateRequest {
     @NotBlank
     private String repositoryUrl;
     private String projectType;
+    private AnalysisProfile analysisProfile;    // ไม่ระบุ = FULL
+    private Boolean partialClone;               // ไม่ระบุ = ปิด
+    private Boolean sparseCheckout;             // ไม่ระบุ = ปิด
 
 //     one-time credentials
     @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
@@ -10,4 +10,6 @@ import lombok.*;
 public class ScanRequest {
     private String username;
     private String password;
+    private boolean force;      // true = scan ใหม่แม้ commit ไม่เปลี่ยน
+    private boolean diff;       // true = วิเคราะห์เฉพาะไฟล์ที่เปลี่ยนจาก scan สำเร็จล่าสุด
 }
@@ -0,0 +1,13 @@
+package com.automate.CodeReview.entity;
+
+/** วิธี build ก่อนส่ง Sonar (ตอนนี้มีผลกับโปรเจกต์ Maven) */
+public enum AnalysisProfile {
+    /** clean install แบบเดิม */
+    FULL,
+    /** test-compile อย่างเดียว (ไม่ clean ใช้ target/ เดิม, build module ขนานด้วย -T) */
+    COMPILE;
+
+    public static AnalysisProfile orDefault(AnalysisProfile profile) {
+        return profile != null ? profile : FULL;
+    }
+}
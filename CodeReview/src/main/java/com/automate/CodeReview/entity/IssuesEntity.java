@@ -28,6 +28,7 @@ public class IssuesEntity {
     @JoinColumn(name = "scan_id", nullable = false)
     private ScansEntity scan;
 
+    /** ไม่ซ้ำภายใน scan (unique index ux_issues_scan_issue_key ใน schema.sql) */
     @Column(name = "issue_key")
     private String issueKey;
 
@@ -59,4 +59,17 @@ public class ProjectsEntity {
 
     @Column(name = "script")
     private Boolean script;
+
+    /** null = FULL (โปรเจกต์เดิมก่อนมีคอลัมน์นี้) */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "analysis_profile", length = 16)
+    private AnalysisProfile analysisProfile;
+
+    /** partial clone: ไม่โหลด blob ที่ใหญ่เกิน scan.git.partial-blob-limit-kb และไม่ใช้ mirror กลาง (null = ปิด) */
+    @Column(name = "partial_clone")
+    private Boolean partialClone;
+
+    /** sparse checkout: ไม่เขียนไฟล์ที่ Sonar exclude อยู่แล้ว (node_modules, dist, ...) ลง working copy (null = ปิด) */
+    @Column(name = "sparse_checkout")
+    private Boolean sparseCheckout;
 }
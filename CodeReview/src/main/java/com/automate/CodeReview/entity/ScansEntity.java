@@ -14,6 +14,7 @@ import org.hibernate.type.SqlTypes;
 
 
 import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -51,6 +52,10 @@ public class ScansEntity {
     @Column(name="delivery_id")
     private String deliveryId;
 
+    /** CE task ของ report ที่ upload (report-task.txt) ใช้ตามผลกรณี webhook หาย ดู ScanReconciler */
+    @Column(name = "ce_task_id", length = 64)
+    private String ceTaskId;
+
     @Column(name = "reliability_gate")
     private String reliabilityGate;
 
@@ -82,4 +87,70 @@ public class ScansEntity {
 
     @Column(name = "reference_id", length = 200)
     private String referenceId;
+
+    /** commit (HEAD) ที่ถูก scan */
+    @Column(name = "commit_sha", length = 64)
+    private String commitSha;
+
+    /** hash ของ config ที่ใช้ scan (project key/type/script) ถ้าเปลี่ยนต้อง scan ใหม่แม้ commit เดิม */
+    @Column(name = "config_hash", length = 64)
+    private String configHash;
+
+    /** ไม่ได้ scan จริง: ยกผลมาจาก scan นี้เพราะ commit/config ไม่เปลี่ยน */
+    @Column(name = "carried_from_scan_id")
+    private UUID carriedFromScanId;
+
+    /** ผล hit/miss ของ build cache ใน scan นี้ เช่น {maven=HIT, npm=MISS, sonar=HIT, nodeModules=RESTORED} */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "build_cache", columnDefinition = "jsonb")
+    private Map<String, Object> buildCache;
+
+    /** profile ที่ใช้ build ใน scan นี้ (FULL / COMPILE) */
+    @Column(name = "analysis_profile", length = 16)
+    private String analysisProfile;
+
+    /** เวลา build ก่อนส่ง Sonar (mvn install / test-compile, npm install) ms */
+    @Column(name = "build_ms")
+    private Long buildMs;
+
+    /** FULL = วิเคราะห์ทั้ง repo, DIFF = เฉพาะไฟล์ที่เปลี่ยนจาก commit ของ baseScanId (issue ไฟล์อื่นยกมาจาก scan นั้น) */
+    @Column(name = "scan_mode", length = 8)
+    private String scanMode;
+
+    @Column(name = "base_scan_id")
+    private UUID baseScanId;
+
+    /** DIFF: path (เทียบรากของ repo) ที่ถูกแก้/ลบตั้งแต่ base → ใช้ตอนรวม issue */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "changed_files", columnDefinition = "jsonb")
+    private List<String> changedFiles;
+
+    /** ขนาด/เวลา clone ของ scan นี้ {mode, partial, sparse, fetchedBytes, objectStoreBytes, files, bytes, skippedFiles, missingBlobs, ms} */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "clone_stats", columnDefinition = "jsonb")
+    private Map<String, Object> cloneStats;
+
+    /** monorepo: ผลต่อ module [{path, type, sonarProjectKey, status, durationMs, ...}] (null = module เดียว) */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "modules", columnDefinition = "jsonb")
+    private List<Map<String, Object>> modules;
+
+    /**
+     * analysedAt ของ Sonar ที่ issue ของ scan นี้ตรงกับ (null = ใช้เป็นฐาน incremental import ไม่ได้)
+     * เขียนผ่าน SonarIssueImporter (JDBC) เท่านั้น
+     */
+    @Column(name = "issues_synced_at", insertable = false, updatable = false)
+    private OffsetDateTime issuesSyncedAt;
+
+    /** CANCELLED: คนที่สั่งยกเลิก และเวลาตั้งแต่สั่งจนทุก process ของ scan ตายหมด (ms) */
+    @Column(name = "cancelled_by", length = 100)
+    private String cancelledBy;
+
+    @Column(name = "cancel_ms")
+    private Long cancelMs;
+
+    /** เวลาแต่ละขั้น [{stage, type, startedAt, durationMs}] เขียนผ่าน ScanTimelineService (jsonb ||) เท่านั้น */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "timeline", columnDefinition = "jsonb", insertable = false, updatable = false)
+    private List<Map<String, Object>> timeline;
 }
@@ -0,0 +1,14 @@
+package com.automate.CodeReview.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class GitOperationException extends ResponseStatusException {
+    public GitOperationException(String message) {
+        super(HttpStatus.INTERNAL_SERVER_ERROR, "Git operation failed: " + message);
+    }
+
+    public GitOperationException(String message, Throwable cause) {
+        super(HttpStatus.INTERNAL_SERVER_ERROR, "Git operation failed: " + message, cause);
+    }
+}
@@ -0,0 +1,27 @@
+package com.automate.CodeReview.jobs;
+
+import com.automate.CodeReview.Service.BuildCacheService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BuildCacheMaintenanceJob {
+    private static final Logger log = LoggerFactory.getLogger(BuildCacheMaintenanceJob.class);
+    private final BuildCacheService buildCacheService;
+
+    public BuildCacheMaintenanceJob(BuildCacheService buildCacheService) {
+        this.buildCacheService = buildCacheService;
+    }
+    /** ตรวจขนาด build cache แล้ว evict แบบ LRU จนไม่เกินโควตา (ค่าเริ่มต้นทุกชั่วโมง) */
+    @Scheduled(cron = "${scan.cache.evict-cron:0 0 * * * *}", zone = "Asia/Bangkok")
+    public void evictBuildCache() {
+        if (!buildCacheService.isEnabled()) return;
+        int evicted = buildCacheService.evict();
+        if (evicted > 0) {
+            log.info("Build cache eviction removed {} entries (reclaimed {} MB since start)",
+                    evicted, buildCacheService.reclaimedBytes() >> 20);
+        }
+    }
+}
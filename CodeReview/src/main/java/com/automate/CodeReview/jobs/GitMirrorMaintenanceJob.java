@@ -0,0 +1,32 @@
+package com.automate.CodeReview.jobs;
+
+import com.automate.CodeReview.Service.GitMirrorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class GitMirrorMaintenanceJob {
+    private static final Logger log = LoggerFactory.getLogger(GitMirrorMaintenanceJob.class);
+    private final GitMirrorService gitMirrorService;
+
+    public GitMirrorMaintenanceJob(GitMirrorService gitMirrorService) {
+        this.gitMirrorService = gitMirrorService;
+    }
+    /** fetch mirror ทั้งหมดเบื้องหลัง ให้ตอน scan เหลือ object ใหม่น้อยที่สุด */
+    @Scheduled(initialDelayString = "${scan.mirror.refresh-interval-ms:600000}",
+               fixedDelayString = "${scan.mirror.refresh-interval-ms:600000}")
+    public void refreshMirrors() {
+        if (!gitMirrorService.isEnabled()) return;
+        int refreshed = gitMirrorService.refreshAll();
+        log.info("Refreshed {} git mirrors", refreshed);
+    }
+    /** git gc + ลบ mirror ที่ไม่ได้ใช้ (ค่าเริ่มต้น 03:30 Asia/Bangkok) */
+    @Scheduled(cron = "${scan.mirror.gc-cron:0 30 3 * * *}", zone = "Asia/Bangkok")
+    public void gcMirrors() {
+        if (!gitMirrorService.isEnabled()) return;
+        int evicted = gitMirrorService.gcAll();
+        log.info("Git mirror gc done, evicted {} idle mirrors", evicted);
+    }
+}
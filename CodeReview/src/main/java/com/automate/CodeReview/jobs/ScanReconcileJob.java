@@ -0,0 +1,29 @@
+package com.automate.CodeReview.jobs;
+
+import com.automate.CodeReview.Service.ScanReconciler;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ScanReconcileJob {
+    private final ScanReconciler scanReconciler;
+
+    public ScanReconcileJob(ScanReconciler scanReconciler) {
+        this.scanReconciler = scanReconciler;
+    }
+    /** ตอน start: scan ที่ค้างจาก process เดิม (ล่ม/restart กลาง scan) */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        if (!scanReconciler.isEnabled()) return;
+        scanReconciler.trigger("startup");
+    }
+    /** ตามรอบ: webhook หาย / backstop poll ยอมแพ้ */
+    @Scheduled(initialDelayString = "${scan.reconcile.interval-ms:600000}",
+               fixedDelayString = "${scan.reconcile.interval-ms:600000}")
+    public void reconcilePeriodically() {
+        if (!scanReconciler.isEnabled()) return;
+        scanReconciler.trigger("periodic");
+    }
+}
@@ -0,0 +1,19 @@
+package com.automate.CodeReview.jobs;
+
+import com.automate.CodeReview.Service.WorkspaceManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WorkspaceMaintenanceJob {
+    private final WorkspaceManager workspaceManager;
+
+    public WorkspaceMaintenanceJob(WorkspaceManager workspaceManager) {
+        this.workspaceManager = workspaceManager;
+    }
+    /** ลบของค้างใน .trash + evict working copy แบบ LRU จนไม่เกินโควตา (งานจริงรันบน workspaceExecutor) */
+    @Scheduled(cron = "${scan.workspace.evict-cron:0 15 * * * *}", zone = "Asia/Bangkok")
+    public void maintainWorkspaces() {
+        workspaceManager.maintain();
+    }
+}
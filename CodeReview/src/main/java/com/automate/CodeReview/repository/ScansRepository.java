@@ -32,4 +32,9 @@ public interface ScansRepository extends JpaRepository<ScansEntity, UUID> {
 
     List<ScansEntity> findByProject_User_UserId(UUID userId);
 
+    Optional<ScansEntity> findFirstByProject_ProjectIdAndStatusAndCommitShaIsNotNullOrderByCompletedAtDesc(
+            UUID projectId,
+            String status
+    );
+
 }
@@ -72,3 +72,39 @@ CREATE TABLE if not exists public.assign_history (
 -- CREATE INDEX IF NOT EXISTS idx_comments_issue_id       ON public.comments(issue_id);@@
 -- CREATE INDEX IF NOT EXISTS idx_comments_user_id        ON public.comments(user_id);@@
 -- CREATE INDEX IF NOT EXISTS idx_assign_history_issues_id    ON public.assign_history(issues_id);@@
+
+-- issue ไม่ซ้ำ key ภายใน scan (IssueBulkWriter ใช้ ON CONFLICT (scan_id, issue_key))
+-- สร้างครั้งแรก: รวมแถวซ้ำที่ค้างจาก import เดิมเข้าแถวเดียว (แถวที่มี comment/assign history ก่อน แล้วเก่าสุด)
+-- ย้าย comments / assign_history / ผู้รับผิดชอบของแถวซ้ำไปที่แถวที่เก็บไว้ก่อนลบ → ไม่มีอะไรหายไปกับ cascade
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_indexes
+                   WHERE schemaname = 'public' AND indexname = 'ux_issues_scan_issue_key') THEN
+        CREATE TEMP TABLE issue_dups ON COMMIT DROP AS
+        SELECT d.issues_id AS dup_id, d.keep_id
+        FROM (
+            SELECT i.issues_id,
+                   first_value(i.issues_id) OVER w AS keep_id,
+                   row_number() OVER w AS rn
+            FROM public.issues i
+            WHERE i.issue_key IS NOT NULL
+            WINDOW w AS (
+                PARTITION BY i.scan_id, i.issue_key
+                ORDER BY (EXISTS (SELECT 1 FROM public.comments c WHERE c.issue_id = i.issues_id)
+                       OR EXISTS (SELECT 1 FROM public.assign_history h WHERE h.issues_id = i.issues_id)) DESC,
+                         i.created_at, i.issues_id)
+        ) d
+        WHERE d.rn > 1;
+
+        UPDATE public.comments c SET issue_id = d.keep_id
+        FROM issue_dups d WHERE c.issue_id = d.dup_id;
+        UPDATE public.assign_history h SET issues_id = d.keep_id
+        FROM issue_dups d WHERE h.issues_id = d.dup_id;
+        UPDATE public.issues k SET assigned_to = i.assigned_to
+        FROM issue_dups d JOIN public.issues i ON i.issues_id = d.dup_id
+        WHERE k.issues_id = d.keep_id AND k.assigned_to IS NULL AND i.assigned_to IS NOT NULL;
+
+        DELETE FROM public.issues i USING issue_dups d WHERE i.issues_id = d.dup_id;
+        CREATE UNIQUE INDEX ux_issues_scan_issue_key ON public.issues (scan_id, issue_key);
+    END IF;
+END $$;@@
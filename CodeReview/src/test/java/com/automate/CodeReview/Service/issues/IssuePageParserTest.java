@@ -0,0 +1,110 @@
+package com.automate.CodeReview.Service.issues;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IssuePageParserTest {
+
+    // object/array ซ้อนใน issue มี field ชื่อซ้ำกับของ issue (component, severity, key, message) ต้องไม่ทับค่าระดับบน
+    private static final String PAGE = """
+            {"total":999,"p":2,"ps":2,
+             "paging":{"pageIndex":2,"pageSize":2,"total":3},
+             "effortTotal":12,
+             "issues":[
+               {"key":"AX-1","rule":"java:S1068","severity":"MAJOR","component":"app:src/A.java","project":"app",
+                "line":12,"textRange":{"startLine":12,"endLine":12,"startOffset":4,"endOffset":9},
+                "flows":[{"locations":[{"component":"app:src/B.java","msg":"other",
+                          "textRange":{"startLine":1,"endLine":2}}]},{"locations":[]}],
+                "impacts":[{"softwareQuality":"MAINTAINABILITY","severity":"LOW"}],
+                "status":"OPEN","message":"ลบ field ที่ไม่ได้ใช้ \\"x\\"","tags":["unused"],
+                "creationDate":"2024-03-01T10:20:30+0000","updateDate":"2024-03-02T00:00:00+0000",
+                "type":"CODE_SMELL","assignee":null},
+               {"key":"AX-2","project":"app","component":"app:pom.xml","type":"BUG","severity":"BLOCKER",
+                "status":"CLOSED","flows":[],"comments":[{"key":"c1","markdown":"*x*"}],
+                "message":"m2","creationDate":"2024-03-03T00:00:00+0000","updateDate":"2024-03-04T00:00:00+0000"}
+             ],
+             "components":[{"key":"app:src/A.java","name":"A.java"}],
+             "facets":[]}
+            """;
+
+    @Test
+    void parsesIssuesAndPagingTotalInOneChunk() throws IOException {
+        IssuePage page = parse(2, PAGE.getBytes(StandardCharsets.UTF_8), List.of());
+
+        assertExpected(page);
+    }
+
+    @Test
+    void givesSameResultForEverySingleSplitPoint() throws IOException {
+        byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+        for (int cut = 1; cut < body.length; cut++) {
+            assertExpected(parse(2, body, List.of(cut)));
+        }
+    }
+
+    @Test
+    void givesSameResultForRandomChunking() throws IOException {
+        byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            int maxChunk = 1 + random.nextInt(16);
+            List<Integer> cuts = new ArrayList<>();
+            for (int pos = random.nextInt(maxChunk) + 1; pos < body.length; pos += random.nextInt(maxChunk) + 1) {
+                cuts.add(pos);      // ตัดกลางตัวอักษรไทย (UTF-8 หลาย byte) ได้ด้วย
+            }
+            assertExpected(parse(2, body, cuts));
+        }
+    }
+
+    @Test
+    void readsRootLevelTotalOfOlderResponses() throws IOException {
+        String old = """
+                {"total":7,"p":1,"ps":100,"issues":[{"key":"K","project":"app","textRange":{"startLine":1}}]}
+                """;
+        byte[] body = old.getBytes(StandardCharsets.UTF_8);
+        for (int cut = 1; cut < body.length; cut++) {
+            IssuePage page = parse(1, body, List.of(cut));
+            assertThat(page.total()).isEqualTo(7);
+            assertThat(page.issues()).extracting(SonarIssue::key).containsExactly("K");
+        }
+    }
+
+    @Test
+    void missingTotalAndFieldsAreReportedAsUnknown() throws IOException {
+        IssuePage page = parse(1, "{\"issues\":[{\"key\":\"K\"}],\"components\":[]}".getBytes(StandardCharsets.UTF_8),
+                List.of());
+
+        assertThat(page.total()).isEqualTo(-1);
+        assertThat(page.issues()).containsExactly(new SonarIssue("K", "", "", "", "", "", "", "", ""));
+    }
+
+    private static void assertExpected(IssuePage page) {
+        assertThat(page.number()).isEqualTo(2);
+        assertThat(page.total()).isEqualTo(3);
+        assertThat(page.issues()).containsExactly(
+                new SonarIssue("AX-1", "app", "CODE_SMELL", "MAJOR", "app:src/A.java", "ลบ field ที่ไม่ได้ใช้ \"x\"",
+                        "OPEN", "2024-03-01T10:20:30+0000", "2024-03-02T00:00:00+0000"),
+                new SonarIssue("AX-2", "app", "BUG", "BLOCKER", "app:pom.xml", "m2",
+                        "CLOSED", "2024-03-03T00:00:00+0000", "2024-03-04T00:00:00+0000"));
+    }
+
+    /** ป้อน body แบ่งที่ตำแหน่ง cuts (เรียงจากน้อยไปมาก) */
+    private static IssuePage parse(int number, byte[] body, List<Integer> cuts) throws IOException {
+        IssuePageParser parser = new IssuePageParser(number);
+        int from = 0;
+        for (int cut : cuts) {
+            parser.feed(Arrays.copyOfRange(body, from, cut));
+            from = cut;
+        }
+        parser.feed(Arrays.copyOfRange(body, from, body.length));
+        return parser.finish();
+    }
+}
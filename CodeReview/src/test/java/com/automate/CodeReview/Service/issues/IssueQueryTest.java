@@ -0,0 +1,104 @@
+package com.automate.CodeReview.Service.issues;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IssueQueryTest {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2024, 3, 1, 10, 20, 30, 0, ZoneOffset.UTC);
+    private static final List<String> SEVERITIES = List.of("BLOCKER", "CRITICAL", "MAJOR", "MINOR", "INFO");
+    private static final List<String> TYPES = List.of("BUG", "VULNERABILITY", "CODE_SMELL");
+
+    @Test
+    void timeSplitHalvesIntoAdjacentRanges() {
+        IssueQuery q = IssueQuery.of("app").between(T0, T0.plusSeconds(101));
+
+        List<IssueQuery> parts = q.split();
+
+        assertThat(parts).hasSize(2);
+        assertThat(parts.get(0).createdAfter()).isEqualTo(T0);
+        assertThat(parts.get(0).createdBefore()).isEqualTo(parts.get(1).createdAfter());
+        assertThat(parts.get(1).createdBefore()).isEqualTo(T0.plusSeconds(101));
+    }
+
+    @Test
+    void rangeShorterThanTwoSecondsSplitsBySeverityThenType() {
+        IssueQuery q = IssueQuery.of("app").between(T0, T0.plusSeconds(1));
+
+        List<IssueQuery> bySeverity = q.split();
+        assertThat(bySeverity).extracting(IssueQuery::severity).containsExactlyElementsOf(SEVERITIES);
+        assertThat(bySeverity).allSatisfy(p -> {
+            assertThat(p.createdAfter()).isEqualTo(T0);
+            assertThat(p.createdBefore()).isEqualTo(T0.plusSeconds(1));
+        });
+
+        List<IssueQuery> byType = bySeverity.get(0).split();
+        assertThat(byType).extracting(IssueQuery::type).containsExactlyElementsOf(TYPES);
+        assertThat(byType).extracting(IssueQuery::severity).containsOnly("BLOCKER");
+
+        assertThat(byType.get(0).split()).isEmpty();
+    }
+
+    @Test
+    void unboundedQuerySkipsTimeSplit() {
+        assertThat(IssueQuery.of("app").split()).extracting(IssueQuery::severity).containsExactlyElementsOf(SEVERITIES);
+    }
+
+    /** แบ่งซ้ำจนแบ่งไม่ได้ → ทุกจุด (วินาที, severity, type) ในช่วงเดิมตกอยู่ใน slice เดียวพอดี */
+    @Test
+    void recursiveSplitIsDisjointAndCovering() {
+        int seconds = 37;
+        IssueQuery root = IssueQuery.of("app").between(T0, T0.plusSeconds(seconds));
+        List<IssueQuery> leaves = new ArrayList<>();
+        collectLeaves(root, leaves);
+
+        for (int s = -1; s <= seconds; s++) {
+            OffsetDateTime created = T0.plusSeconds(s);
+            boolean inRange = s >= 0 && s < seconds;
+            for (String severity : SEVERITIES) {
+                for (String type : TYPES) {
+                    long matches = leaves.stream().filter(q -> contains(q, created, severity, type)).count();
+                    assertThat(matches).as("%s %s %s", created, severity, type).isEqualTo(inRange ? 1 : 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    void paramsUseSonarDateFormat() {
+        IssueQuery q = IssueQuery.of("app").between(T0, T0.plusSeconds(1)).split().get(2);
+
+        assertThat(q.params()).containsExactly(
+                Map.entry("projects", "app"),
+                Map.entry("createdAfter", "2024-03-01T10:20:30+0000"),
+                Map.entry("createdBefore", "2024-03-01T10:20:31+0000"),
+                Map.entry("severities", "MAJOR"));
+        assertThat(IssueQuery.parseDate("2024-03-01T17:20:30+0700")).isEqualTo(T0);
+    }
+
+    private static void collectLeaves(IssueQuery q, List<IssueQuery> out) {
+        List<IssueQuery> parts = q.split();
+        if (parts.isEmpty()) {
+            out.add(q);
+            return;
+        }
+        for (IssueQuery p : parts) {
+            collectLeaves(p, out);
+        }
+    }
+
+    /** createdAfter inclusive / createdBefore exclusive ตาม Sonar, null = ไม่จำกัด */
+    private static boolean contains(IssueQuery q, OffsetDateTime created, String severity, String type) {
+        return (q.createdAfter() == null || !created.isBefore(q.createdAfter()))
+                && (q.createdBefore() == null || created.isBefore(q.createdBefore()))
+                && (q.severity() == null || q.severity().equals(severity))
+                && (q.type() == null || q.type().equals(type));
+    }
+}
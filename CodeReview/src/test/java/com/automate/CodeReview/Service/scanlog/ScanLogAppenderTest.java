@@ -0,0 +1,137 @@
+package com.automate.CodeReview.Service.scanlog;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanLogAppenderTest {
+
+    private static final Pattern LINE = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3} \\| (.*)");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void dropsAndCountsLinesWhenRingIsFull() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Path file = dir.resolve("full.log");
+
+        // listener ค้างที่บรรทัดแรก → writer ไม่มาเก็บ ring จนกว่าจะปล่อย
+        try (ScanLogAppender appender = ScanLogAppender.open(file, logs(4), blockOnFirst(entered, release))) {
+            assertThat(appender.append("first")).isTrue();
+            assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+            for (int i = 0; i < 4; i++) {
+                assertThat(appender.append("kept-" + i)).isTrue();
+            }
+            for (int i = 0; i < 3; i++) {
+                assertThat(appender.append("lost-" + i)).isFalse();
+            }
+            assertThat(appender.dropped()).isEqualTo(3);
+
+            release.countDown();
+        }
+
+        assertThat(messages(file)).containsExactly(
+                "first",
+                "[scan-log] 3 lines dropped (log buffer full)",
+                "kept-0", "kept-1", "kept-2", "kept-3");
+    }
+
+    @Test
+    void closeDrainsEverythingStillInRing() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Path file = dir.resolve("drain.log");
+        List<String> expected = IntStream.range(0, 500).mapToObj(i -> "line " + i).toList();
+
+        ScanLogAppender appender = ScanLogAppender.open(file, logs(512), blockOnFirst(entered, release));
+        for (String line : expected) {
+            assertThat(appender.append(line)).isTrue();
+        }
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // ปล่อย writer หลัง close() เริ่มรอแล้ว: บรรทัดที่ค้างใน ring ต้องถูกเขียนครบก่อน close() คืน
+        Thread releaser = new Thread(() -> {
+            sleep(200);
+            release.countDown();
+        });
+        releaser.start();
+        appender.close();
+        releaser.join();
+
+        assertThat(messages(file)).isEqualTo(expected);
+        assertThat(appender.written()).isEqualTo(500);
+        assertThat(appender.dropped()).isZero();
+        assertThat(appender.append("late")).isFalse();
+        assertThat(appender.dropped()).isZero();
+    }
+
+    @Test
+    void writesRawTextAndTruncatesLongLines() throws IOException {
+        Path file = dir.resolve("raw.log");
+        ScanProperties.Logs cfg = logs(64);
+        cfg.setMaxLineLength(80);
+
+        try (ScanLogAppender appender = ScanLogAppender.open(file, cfg, null)) {
+            appender.appendRaw("=== header ===" + System.lineSeparator());
+            appender.append("y".repeat(100));
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertThat(lines.get(0)).isEqualTo("=== header ===");
+        assertThat(message(lines.get(1))).isEqualTo("y".repeat(80) + " ...[20 chars truncated]");
+    }
+
+    private static ScanProperties.Logs logs(int ringCapacity) {
+        ScanProperties.Logs cfg = new ScanProperties().getLogs();
+        cfg.setRingCapacity(ringCapacity);
+        return cfg;
+    }
+
+    private static Consumer<String> blockOnFirst(CountDownLatch entered, CountDownLatch release) {
+        return line -> {
+            if (entered.getCount() > 0) {
+                entered.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static List<String> messages(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream().map(ScanLogAppenderTest::message).toList();
+    }
+
+    private static String message(String line) {
+        Matcher m = LINE.matcher(line);
+        assertThat(m.matches()).as(line).isTrue();
+        return m.group(1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.automate.CodeReview.Service.scanlog;
+
+import com.automate.CodeReview.Config.ScanProperties;
+import com.automate.CodeReview.Models.ScanLogModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanLogReaderTest {
+
+    private static final int STRIDE = 3;
+
+    @TempDir
+    Path dir;
+
+    private ScanLogReader reader;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        ScanProperties props = new ScanProperties();
+        props.getLogs().setIndexStride(STRIDE);     // stride เล็ก ให้ทุก cursor ข้ามขอบ block
+        reader = new ScanLogReader(props);
+        file = dir.resolve("scan.log");
+    }
+
+    @Test
+    void tailReturnsLastLinesAcrossBlocks() throws IOException {
+        write(lines(0, 20));
+
+        for (int tail = 0; tail <= 22; tail++) {
+            ScanLogModel m = reader.read(file, null, null, tail, null);
+            int from = Math.max(0, 20 - tail);
+            assertThat(m.getLines()).as("tail=%d", tail).isEqualTo(lines(from, 20));
+            assertThat(m.getFromLine()).isEqualTo(from);
+            assertThat(m.getNextLine()).isEqualTo(20);
+            assertThat(m.getTotalLines()).isEqualTo(20);
+            assertThat(m.isEof()).isTrue();
+        }
+    }
+
+    @Test
+    void fromLineStartsAtExactLine() throws IOException {
+        write(lines(0, 20));
+
+        for (int from = 0; from <= 21; from++) {
+            ScanLogModel m = reader.read(file, null, (long) from, null, 2);
+            int start = Math.min(from, 20);
+            assertThat(m.getLines()).as("fromLine=%d", from).isEqualTo(lines(start, Math.min(start + 2, 20)));
+            assertThat(m.getFromLine()).isEqualTo(start);
+            assertThat(m.getOffset()).isEqualTo(bytesBefore(start));
+        }
+    }
+
+    @Test
+    void offsetOfEveryLineStartMapsBackToItsLineNumber() throws IOException {
+        write(lines(0, 20));
+
+        for (int line = 0; line <= 20; line++) {
+            ScanLogModel m = reader.read(file, bytesBefore(line), null, null, 1);
+            assertThat(m.getFromLine()).as("line=%d", line).isEqualTo(line);
+            assertThat(m.getLines()).isEqualTo(lines(line, Math.min(line + 1, 20)));
+        }
+    }
+
+    @Test
+    void nextOffsetCursorWalksWholeFile() throws IOException {
+        write(lines(0, 20));
+
+        List<String> all = new ArrayList<>();
+        long offset = 0;
+        long expectedLine = 0;
+        ScanLogModel m;
+        do {
+            m = reader.read(file, offset, null, null, 4);
+            assertThat(m.getFromLine()).isEqualTo(expectedLine);
+            all.addAll(m.getLines());
+            offset = m.getNextOffset();
+            expectedLine = m.getNextLine();
+        } while (!m.isEof());
+
+        assertThat(all).isEqualTo(lines(0, 20));
+        assertThat(offset).isEqualTo(Files.size(file));
+    }
+
+    @Test
+    void partialTrailingLineIsReturnedOnceTerminated() throws IOException {
+        write(lines(0, 4));
+        append("partial");
+
+        ScanLogModel m = reader.read(file, null, null, null, null);
+        assertThat(m.getLines()).isEqualTo(lines(0, 4));
+        assertThat(m.getTotalLines()).isEqualTo(4);
+        assertThat(m.getNextOffset()).isEqualTo(bytesBefore(4));
+        assertThat(m.getFileSize()).isGreaterThan(m.getNextOffset());
+        assertThat(m.isEof()).isTrue();
+
+        append(" line\n");
+        m = reader.read(file, m.getNextOffset(), null, null, null);
+        assertThat(m.getLines()).containsExactly("partial line");
+        assertThat(m.getFromLine()).isEqualTo(4);
+        assertThat(m.getTotalLines()).isEqualTo(5);
+        assertThat(m.getNextOffset()).isEqualTo(Files.size(file));
+    }
+
+    @Test
+    void stripsCarriageReturnOfWindowsLineEndings() throws IOException {
+        Files.writeString(file, "a\r\n\r\nบรรทัด c\r\n", StandardCharsets.UTF_8);
+
+        ScanLogModel m = reader.read(file, null, null, null, null);
+
+        assertThat(m.getLines()).containsExactly("a", "", "บรรทัด c");
+        assertThat(m.getTotalLines()).isEqualTo(3);
+        assertThat(m.getNextOffset()).isEqualTo(Files.size(file));
+        assertThat(reader.read(file, null, 2L, null, null).getLines()).containsExactly("บรรทัด c");
+    }
+
+    @Test
+    void indexExtendsWhenFileGrowsBetweenReads() throws IOException {
+        write(lines(0, 5));
+        assertThat(reader.read(file, null, null, 2, null).getLines()).isEqualTo(lines(3, 5));
+
+        write(lines(5, 17));
+        ScanLogModel m = reader.read(file, null, 13L, null, 3);
+        assertThat(m.getLines()).isEqualTo(lines(13, 16));
+        assertThat(m.getTotalLines()).isEqualTo(17);
+        assertThat(m.getOffset()).isEqualTo(bytesBefore(13));
+        assertThat(reader.read(file, bytesBefore(10), null, null, 1).getFromLine()).isEqualTo(10);
+        assertThat(reader.read(file, null, null, 1, null).getLines()).isEqualTo(lines(16, 17));
+    }
+
+    @Test
+    void truncatedFileRebuildsIndex() throws IOException {
+        write(lines(0, 12));
+        assertThat(reader.read(file, null, null, null, null).getTotalLines()).isEqualTo(12);
+
+        Files.writeString(file, "x\ny\n", StandardCharsets.UTF_8);
+        ScanLogModel m = reader.read(file, null, null, null, null);
+
+        assertThat(m.getLines()).containsExactly("x", "y");
+        assertThat(m.getTotalLines()).isEqualTo(2);
+    }
+
+    /** บรรทัดยาวไม่เท่ากัน เพื่อให้ offset ของแต่ละบรรทัดไม่เป็นผลคูณตายตัว */
+    private static String line(int i) {
+        return "line-" + i + "-" + "x".repeat(i % 5);
+    }
+
+    private static List<String> lines(int from, int to) {
+        return IntStream.range(from, to).mapToObj(ScanLogReaderTest::line).toList();
+    }
+
+    private static long bytesBefore(int line) {
+        return IntStream.range(0, line).mapToLong(i -> line(i).length() + 1).sum();
+    }
+
+    private void write(List<String> lines) throws IOException {
+        append(String.join("\n", lines) + "\n");
+    }
+
+    private void append(String text) throws IOException {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}